@@ -0,0 +1,77 @@
+package me.charlesj.benchmark;
+
+import me.charlesj.apu.SimpleAPU;
+import me.charlesj.cpu.SimpleCPU;
+import me.charlesj.speaker.DefaultSpeaker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cycles per second of the APU with pulse, triangle and noise playing into a DefaultSpeaker.
+ * The samples are taken after every frame like the audio thread does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class APUBenchmark {
+
+    private static final int CYCLES_PER_FRAME = 29781;
+
+    @Param({"true", "false"})
+    public boolean eventDriven;
+
+    private SimpleAPU apu;
+    private SimpleCPU cpu;
+    private DefaultSpeaker speaker;
+    private final byte[] samples = new byte[DefaultSpeaker.BUFFER_CAPACITY];
+
+    @Setup
+    public void setUp() {
+        apu = new SimpleAPU();
+        apu.setEventDriven(eventDriven);
+        apu.powerUp();
+        apu.getRegister().setByte(0x15, 0x0F);
+        // Pulses, constant volume, long notes
+        apu.getRegister().setByte(0x00, 0xBF);
+        apu.getRegister().setByte(0x02, 0xFD);
+        apu.getRegister().setByte(0x03, 0x08);
+        apu.getRegister().setByte(0x04, 0x7F);
+        apu.getRegister().setByte(0x06, 0x80);
+        apu.getRegister().setByte(0x07, 0x09);
+        // Triangle
+        apu.getRegister().setByte(0x08, 0xFF);
+        apu.getRegister().setByte(0x0A, 0x80);
+        apu.getRegister().setByte(0x0B, 0x08);
+        // Noise
+        apu.getRegister().setByte(0x0C, 0x3F);
+        apu.getRegister().setByte(0x0E, 0x04);
+        apu.getRegister().setByte(0x0F, 0x08);
+
+        cpu = new SimpleCPU();
+        speaker = new DefaultSpeaker(44100);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES_PER_FRAME)
+    public int frame() {
+        for (int i = 0; i < CYCLES_PER_FRAME; i++) {
+            apu.cycle(speaker, cpu);
+        }
+        return speaker.output(samples, 0, samples.length);
+    }
+}
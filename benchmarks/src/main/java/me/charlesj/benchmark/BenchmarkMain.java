@@ -0,0 +1,39 @@
+package me.charlesj.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks like the JMH main, but writes results to jmh-result.json unless -rf or -rff is given,
+ * so runs on different commits can be compared.
+ */
+public class BenchmarkMain {
+
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp()) {
+            options.showHelp();
+            return;
+        }
+        Runner runner;
+        if (options.getResultFormat().hasValue() || options.getResult().hasValue()) {
+            runner = new Runner(options);
+        } else {
+            ChainedOptionsBuilder builder = new OptionsBuilder()
+                    .parent(options)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(DEFAULT_RESULT_FILE);
+            runner = new Runner(builder.build());
+        }
+        if (options.shouldList()) {
+            runner.list();
+            return;
+        }
+        runner.run();
+    }
+}
@@ -0,0 +1,181 @@
+package me.charlesj.benchmark;
+
+import me.charlesj.util.NesBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Builds small games for the benchmarks.
+ * The game fills palettes and name tables, turns on background, sprites and NMI,
+ * then crunches numbers in a loop. The NMI handler does sprite DMA and switches banks,
+ * MMC3 also raises a scanline IRQ every 32 lines.
+ */
+final class BenchmarkRoms {
+
+    static final int NROM = 0;
+    static final int UXROM = 2;
+    static final int MMC3 = 4;
+    static final int VRC2 = 23;
+
+    private BenchmarkRoms() {}
+
+    static int mapperFromName(String name) {
+        if (name.equals("NROM")) {
+            return NROM;
+        } else if (name.equals("UxROM")) {
+            return UXROM;
+        } else if (name.equals("MMC3")) {
+            return MMC3;
+        } else if (name.equals("VRC2")) {
+            return VRC2;
+        }
+        throw new IllegalArgumentException("Unknown mapper: " + name);
+    }
+
+    /**
+     * @return a temporary .nes file, deleted on exit
+     */
+    static File build(int mapper) throws IOException {
+        int prgPageCount = mapper == NROM ? 1 : 4;
+        int chrPageCount = mapper == MMC3 || mapper == VRC2 ? 2 : 1;
+        Random random = new Random(mapper);
+
+        NesBuilder builder = new NesBuilder()
+                .setMapper(mapper)
+                .setVerticalMirroring()
+                .setPrgPageCount(prgPageCount)
+                .setChrPageCount(chrPageCount);
+        for (int i = 0; i < prgPageCount - 1; i++) {
+            byte[] page = new byte[0x4000];
+            random.nextBytes(page);
+            builder.setPrgRomPage(i, page);
+        }
+        builder.setPrgRomPage(prgPageCount - 1, buildCode(mapper));
+        for (int i = 0; i < chrPageCount; i++) {
+            byte[] page = new byte[0x2000];
+            random.nextBytes(page);
+            builder.setChrRomPage(i, page);
+        }
+
+        File file = File.createTempFile("benchmark", ".nes");
+        file.deleteOnExit();
+        builder.build(file.getPath());
+        return file;
+    }
+
+    /**
+     * @return the last PRG page, code starts at $E000
+     */
+    private static byte[] buildCode(int mapper) {
+        Code c = new Code(0xE000);
+        int reset = c.here();
+        c.emit(0x78, 0xD8, 0xA2, 0xFF, 0x9A);               // SEI, CLD, LDX #$FF, TXS
+        c.emit(0xA9, 0x40, 0x8D, 0x17, 0x40);               // no APU frame IRQ
+
+        // Palettes
+        c.emit(0xA9, 0x3F, 0x8D, 0x06, 0x20, 0xA9, 0x00, 0x8D, 0x06, 0x20);
+        c.emit(0xA2, 0x00);                                 // LDX #0
+        int palette = c.here();
+        c.emit(0x8E, 0x07, 0x20, 0xE8, 0xE0, 0x20);         // STX $2007, INX, CPX #$20
+        c.branch(0xD0, palette);                            // BNE
+
+        // Name tables
+        c.emit(0xA9, 0x20, 0x8D, 0x06, 0x20, 0xA9, 0x00, 0x8D, 0x06, 0x20);
+        c.emit(0xA0, 0x08, 0xA2, 0x00);                     // LDY #8, LDX #0
+        int nameTable = c.here();
+        c.emit(0x8E, 0x07, 0x20, 0xE8);                     // STX $2007, INX
+        c.branch(0xD0, nameTable);
+        c.emit(0x88);                                       // DEY
+        c.branch(0xD0, nameTable);
+
+        // Sprites at $0200
+        c.emit(0xA2, 0x00);
+        int sprite = c.here();
+        c.emit(0x8A, 0x9D, 0x00, 0x02, 0xE8);               // TXA, STA $0200,X, INX
+        c.branch(0xD0, sprite);
+
+        if (mapper == MMC3) {
+            // IRQ every 32 scanlines
+            c.emit(0xA9, 0x20, 0x8D, 0x00, 0xC0, 0x8D, 0x01, 0xC0, 0x8D, 0x01, 0xE0);
+        }
+        c.emit(0xA9, 0x80, 0x8D, 0x00, 0x20);               // NMI on
+        c.emit(0xA9, 0x1E, 0x8D, 0x01, 0x20);               // background and sprites on
+        c.emit(0x58);                                       // CLI
+
+        int main = c.here();
+        c.emit(0xE6, 0x10, 0xA5, 0x10, 0x65, 0x11, 0x85, 0x11);   // INC $10, LDA $10, ADC $11, STA $11
+        c.emit(0xA6, 0x11, 0xBD, 0x00, 0x03, 0x49, 0x55, 0x9D, 0x00, 0x03);  // LDX $11, LDA $0300,X, EOR #$55, STA $0300,X
+        c.emit(0x4C, main & 0xFF, main >> 8);               // JMP main
+
+        int nmi = c.here();
+        c.emit(0x48, 0x8A, 0x48);                           // PHA, TXA, PHA
+        c.emit(0xA9, 0x02, 0x8D, 0x14, 0x40);               // sprite DMA from $0200
+        c.emit(0xA9, 0x00, 0x8D, 0x05, 0x20, 0x8D, 0x05, 0x20);   // scroll 0, 0
+        c.emit(0xE6, 0x00);                                 // INC $00
+        switch (mapper) {
+            case UXROM:
+                c.emit(0xA5, 0x00, 0x29, 0x03, 0x8D, 0x00, 0x80);
+                break;
+            case MMC3:
+                c.emit(0xA9, 0x06, 0x8D, 0x00, 0x80, 0xA5, 0x00, 0x29, 0x07, 0x8D, 0x01, 0x80);   // PRG R6
+                c.emit(0xA9, 0x02, 0x8D, 0x00, 0x80, 0xA5, 0x00, 0x29, 0x0F, 0x8D, 0x01, 0x80);   // CHR R2
+                break;
+            case VRC2:
+                c.emit(0xA5, 0x00, 0x29, 0x07, 0x8D, 0x00, 0x80);   // PRG $8000
+                c.emit(0xA5, 0x00, 0x29, 0x0F, 0x8D, 0x00, 0xB0);   // CHR 0
+                break;
+            default:
+                break;
+        }
+        c.emit(0x68, 0xAA, 0x68, 0x40);                     // PLA, TAX, PLA, RTI
+
+        int irq = c.here();
+        if (mapper == MMC3) {
+            c.emit(0x8D, 0x00, 0xE0, 0x8D, 0x01, 0xE0);     // acknowledge and enable again
+        }
+        c.emit(0x40);                                       // RTI
+
+        c.vector(0xFFFA, nmi);
+        c.vector(0xFFFC, reset);
+        c.vector(0xFFFE, irq);
+        return c.page;
+    }
+
+    /**
+     * Writes code into a 16KB page mapped at $C000.
+     */
+    private static class Code {
+        final byte[] page = new byte[0x4000];
+        private int address;
+
+        Code(int address) {
+            this.address = address;
+        }
+
+        int here() {
+            return address;
+        }
+
+        void emit(int... bytes) {
+            for (int b : bytes) {
+                page[address - 0xC000] = (byte) b;
+                address++;
+            }
+        }
+
+        void branch(int opcode, int target) {
+            int offset = target - (address + 2);
+            if (offset < -128 || offset > 127) {
+                throw new IllegalStateException("Branch out of range");
+            }
+            emit(opcode, offset & 0xFF);
+        }
+
+        void vector(int at, int target) {
+            page[at - 0xC000] = (byte) target;
+            page[at - 0xC000 + 1] = (byte) (target >> 8);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package me.charlesj.benchmark;
+
+import me.charlesj.cpu.SimpleCPU;
+import me.charlesj.memory.PagedMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instructions per second of the CPU alone, running a loop of loads, stores, arithmetic, branches and calls
+ * from 2KB RAM and 16KB ROM, decoding each instruction or running decoded blocks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CPUBenchmark {
+
+    private static final int[] CODE = {
+            0xA2, 0x00,         // $8000 LDX #0
+            0xBD, 0x00, 0x03,   // $8002 loop: LDA $0300,X
+            0x69, 0x13,         // ADC #$13
+            0x9D, 0x00, 0x03,   // STA $0300,X
+            0x45, 0x10,         // EOR $10
+            0x85, 0x10,         // STA $10
+            0x0A,               // ASL A
+            0x66, 0x11,         // ROR $11
+            0xE8,               // INX
+            0xD0, 0xEE,         // BNE loop
+            0xE6, 0x12,         // INC $12
+            0x20, 0x1C, 0x80,   // JSR sub
+            0x4C, 0x02, 0x80,   // JMP loop
+            0xA4, 0x12,         // $801C sub: LDY $12
+            0x88,               // DEY
+            0x84, 0x13,         // STY $13
+            0x60,               // RTS
+    };
+
+    @Param({"false", "true"})
+    public boolean blockCache;
+
+    private SimpleCPU cpu;
+
+    @Setup
+    public void setUp() {
+        byte[] ram = new byte[0x800];
+        byte[] rom = new byte[0x4000];
+        for (int i = 0; i < CODE.length; i++) {
+            rom[i] = (byte) CODE[i];
+        }
+        rom[0x3FFC] = 0x00;
+        rom[0x3FFD] = (byte) 0x80;
+
+        PagedMemory memory = new PagedMemory(0x10000);
+        for (int i = 0; i < 0x2000; i += ram.length) {
+            memory.mapBytes(i, ram.length, ram, 0);
+        }
+        memory.mapRead(0x8000, rom.length, rom, 0);
+        memory.mapRead(0xC000, rom.length, rom, 0);
+
+        cpu = new SimpleCPU();
+        cpu.setBlockCache(blockCache);
+        cpu.setMemory(memory);
+        cpu.powerUp();
+    }
+
+    @Benchmark
+    public long execute() {
+        return cpu.execute();
+    }
+}
@@ -0,0 +1,68 @@
+package me.charlesj.benchmark;
+
+import me.charlesj.Machine;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.nesloader.FileNesLoader;
+import me.charlesj.screen.HeadlessScreen;
+import me.charlesj.speaker.MuteSpeaker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames per second of a whole machine running a generated game, see BenchmarkRoms,
+ * rendering every frame or skipping rendering as for frames not displayed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameBenchmark {
+
+    @Param({"NROM", "UxROM", "MMC3", "VRC2"})
+    public String mapper;
+
+    @Param({"false", "true"})
+    public boolean skipRendering;
+
+    private File rom;
+    private Machine machine;
+    private HeadlessScreen screen;
+    private MuteSpeaker speaker;
+
+    @Setup
+    public void setUp() throws IOException {
+        rom = BenchmarkRoms.build(BenchmarkRoms.mapperFromName(mapper));
+        machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+        machine.setBlockCache(true);
+        machine.setSkipRendering(skipRendering);
+        screen = new HeadlessScreen();
+        speaker = new MuteSpeaker();
+    }
+
+    @TearDown
+    public void tearDown() {
+        rom.delete();
+    }
+
+    @Benchmark
+    public long frame() {
+        machine.runFrame(screen, speaker);
+        return machine.getFrame();
+    }
+}
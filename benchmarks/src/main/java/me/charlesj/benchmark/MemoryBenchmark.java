@@ -0,0 +1,103 @@
+package me.charlesj.benchmark;
+
+import me.charlesj.memory.CompositeMemory;
+import me.charlesj.memory.DefaultMemory;
+import me.charlesj.memory.Memory;
+import me.charlesj.memory.MirrorMemory;
+import me.charlesj.memory.PagedMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads per second through a CPU-like memory map: mirrored RAM, I/O registers, SRAM and two ROM banks.
+ * CompositeMemory searches for the region on every access, PagedMemory looks up a page table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemoryBenchmark {
+
+    private static final int ACCESSES = 4096;
+
+    @Param({"composite", "paged"})
+    public String type;
+
+    private Memory memory;
+    private final int[] addresses = new int[ACCESSES];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+        byte[] ram = new byte[0x800];
+        byte[] registers = new byte[0x20];
+        byte[] sram = new byte[0x2000];
+        byte[] rom = new byte[0x8000];
+        random.nextBytes(rom);
+
+        if (type.equals("composite")) {
+            CompositeMemory composite = new CompositeMemory(0x10000);
+            DefaultMemory ramMemory = new DefaultMemory(ram);
+            composite.setMemory(0, ramMemory);
+            composite.setMemory(0x800, new MirrorMemory(ramMemory, 0x1800));
+            DefaultMemory ppuRegisters = new DefaultMemory(8);
+            composite.setMemory(0x2000, ppuRegisters);
+            composite.setMemory(0x2008, new MirrorMemory(ppuRegisters, 0x1FF8));
+            composite.setMemory(0x4000, new DefaultMemory(registers));
+            composite.setMemory(0x4020, new DefaultMemory(0x1FE0));
+            composite.setMemory(0x6000, new DefaultMemory(sram));
+            composite.setMemory(0x8000, new DefaultMemory(rom, 0, 0x4000));
+            composite.setMemory(0xC000, new DefaultMemory(rom, 0x4000, 0x4000));
+            memory = composite;
+        } else {
+            PagedMemory paged = new PagedMemory(0x10000);
+            for (int i = 0; i < 0x2000; i += ram.length) {
+                paged.mapBytes(i, ram.length, ram, 0);
+            }
+            paged.mapHandler(0x2000, 0x2000, new DefaultMemory(8));
+            paged.mapHandler(0x4000, 0x100, new DefaultMemory(registers));
+            paged.mapBytes(0x6000, sram.length, sram, 0);
+            paged.mapRead(0x8000, rom.length, rom, 0);
+            memory = paged;
+        }
+
+        // Mostly code and RAM, like a game
+        for (int i = 0; i < ACCESSES; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 5) {
+                addresses[i] = 0x8000 + random.nextInt(0x8000);
+            } else if (kind < 8) {
+                addresses[i] = random.nextInt(0x800);
+            } else if (kind < 9) {
+                addresses[i] = 0x6000 + random.nextInt(0x2000);
+            } else {
+                addresses[i] = 0x4000 + random.nextInt(0x18);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int read() {
+        int sum = 0;
+        for (int address : addresses) {
+            sum += memory.getByte(address);
+        }
+        return sum;
+    }
+}
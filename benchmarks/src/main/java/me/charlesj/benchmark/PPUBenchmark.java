@@ -0,0 +1,83 @@
+package me.charlesj.benchmark;
+
+import me.charlesj.cpu.SimpleCPU;
+import me.charlesj.memory.DefaultMemory;
+import me.charlesj.ppu.PPU;
+import me.charlesj.ppu.SimplePPU;
+import me.charlesj.screen.HeadlessScreen;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames per second of the PPU alone, rendering background and 64 sprites from random patterns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PPUBenchmark {
+
+    private static final int DOTS_PER_FRAME = 341 * 262;
+
+    @Param({"true", "false"})
+    public boolean catchUp;
+
+    private SimplePPU ppu;
+    private SimpleCPU cpu;
+    private HeadlessScreen screen;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+        byte[] chr = new byte[0x2000];
+        random.nextBytes(chr);
+
+        ppu = new SimplePPU();
+        ppu.setCHRMemory(new DefaultMemory(chr));
+        ppu.setMirroringType(PPU.VERTICAL_MIRRORING);
+        ppu.setCatchUp(catchUp);
+        ppu.powerUp();
+
+        // Palettes, then name tables and attributes
+        ppu.writeRegister(6, 0x3F);
+        ppu.writeRegister(6, 0x00);
+        for (int i = 0; i < 0x20; i++) {
+            ppu.writeRegister(7, random.nextInt(0x40));
+        }
+        ppu.writeRegister(6, 0x20);
+        ppu.writeRegister(6, 0x00);
+        for (int i = 0; i < 0x800; i++) {
+            ppu.writeRegister(7, random.nextInt(0x100));
+        }
+        for (int i = 0; i < 0x100; i++) {
+            ppu.getSprRam().setByte(i, random.nextInt(0x100));
+        }
+        ppu.writeRegister(5, 0);
+        ppu.writeRegister(5, 0);
+        ppu.writeRegister(1, 0x1E);
+
+        cpu = new SimpleCPU();
+        screen = new HeadlessScreen();
+    }
+
+    @Benchmark
+    public long frame() {
+        ppu.advance(screen, cpu, DOTS_PER_FRAME);
+        ppu.catchUp();
+        return ppu.getFrameCount();
+    }
+}
@@ -0,0 +1,242 @@
+package me.charlesj;
+
+import me.charlesj.input.InputMovie;
+import me.charlesj.input.InputScript;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.nesloader.RomCache;
+import me.charlesj.screen.HeadlessScreen;
+import me.charlesj.speaker.MuteSpeaker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs games headless and unthrottled on a fixed pool of worker threads.
+ * Every job builds its own Machine, screen and speaker, so jobs share nothing mutable.
+ * Games are loaded through RomCache, so jobs of the same game share its ROM.
+ * Machines are seeded, by the movie if the script is one, so a job gives the same result every time.
+ */
+public class BatchRunner {
+
+    private final int threads;
+
+    public BatchRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchRunner(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Runs all jobs and waits for them.
+     * @return results in the same order as jobs
+     */
+    public List<Result> run(List<Job> jobs) throws InterruptedException {
+        List<Result> results = new ArrayList<Result>(jobs.size());
+        if (jobs.isEmpty()) {
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, jobs.size()));
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>(jobs.size());
+            for (final Job job : jobs) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    public Result call() {
+                        return runJob(job);
+                    }
+                }));
+            }
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // runJob catches its own failures
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Runs one job on the calling thread.
+     */
+    public static Result runJob(Job job) {
+        long time = System.nanoTime();
+        Machine machine = null;
+        try {
+            StandardControllers controllers = new StandardControllers();
+            machine = new Machine(RomCache.getDefault().load(job.getRomPath()), controllers);
+            machine.setBlockCache(true);
+            HeadlessScreen screen = new HeadlessScreen();
+            MuteSpeaker speaker = new MuteSpeaker();
+            InputScript script = job.getInputScript();
+            machine.setRandomSeed(script instanceof InputMovie ? ((InputMovie) script).getSeed() : 0);
+
+            while (machine.getFrame() < job.getFrames()) {
+                if (script != null) {
+                    controllers.setButtons(0, script.getButtons(machine.getFrame(), 0));
+                    controllers.setButtons(1, script.getButtons(machine.getFrame(), 1));
+                }
+                machine.runFrame(screen, speaker);
+            }
+
+            return new Result(job, machine.getFrame(), machine.getCPU().getCycle(), screen.hash(),
+                    machine.getRam(), System.nanoTime() - time, null);
+        } catch (Exception e) {
+            long frames = machine == null ? 0 : machine.getFrame();
+            long cycles = machine == null ? 0 : machine.getCPU().getCycle();
+            return new Result(job, frames, cycles, 0, null, System.nanoTime() - time, e);
+        }
+    }
+
+    public static class Job {
+        private final String romPath;
+        private final long frames;
+        private final InputScript inputScript;
+
+        public Job(String romPath, long frames) {
+            this(romPath, frames, null);
+        }
+
+        /**
+         * @param inputScript buttons are applied before each frame starts, null for no input
+         */
+        public Job(String romPath, long frames, InputScript inputScript) {
+            this.romPath = romPath;
+            this.frames = frames;
+            this.inputScript = inputScript;
+        }
+
+        public String getRomPath() {
+            return romPath;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public InputScript getInputScript() {
+            return inputScript;
+        }
+    }
+
+    public static class Result {
+        private final Job job;
+        private final long frames;
+        private final long cycles;
+        private final long frameHash;
+        private final byte[] ram;
+        private final long nanos;
+        private final Exception error;
+
+        Result(Job job, long frames, long cycles, long frameHash, byte[] ram, long nanos, Exception error) {
+            this.job = job;
+            this.frames = frames;
+            this.cycles = cycles;
+            this.frameHash = frameHash;
+            this.ram = ram;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+
+        /**
+         * @return frames actually emulated
+         */
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getCycles() {
+            return cycles;
+        }
+
+        /**
+         * @return hash of the last frame, see HeadlessScreen.hash()
+         */
+        public long getFrameHash() {
+            return frameHash;
+        }
+
+        /**
+         * @return internal RAM after the last frame, null if failed
+         */
+        public byte[] getRam() {
+            return ram;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return null if succeeded
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        public boolean isSucceeded() {
+            return error == null;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long frames = 600;
+        List<Job> jobs = new ArrayList<Job>();
+        for (int pos = 0; pos < args.length; pos++) {
+            if (args[pos].equals("-t") && pos + 1 < args.length) {
+                threads = Integer.parseInt(args[++pos]);
+            } else if (args[pos].equals("-f") && pos + 1 < args.length) {
+                frames = Long.parseLong(args[++pos]);
+            } else if (args[pos].startsWith("-")) {
+                usage();
+                return;
+            } else {
+                jobs.add(new Job(args[pos], frames));
+            }
+        }
+        if (jobs.isEmpty()) {
+            usage();
+            return;
+        }
+
+        long time = System.nanoTime();
+        List<Result> results = new BatchRunner(threads).run(jobs);
+        long totalFrames = 0;
+        for (Result result : results) {
+            totalFrames += result.getFrames();
+            if (result.isSucceeded()) {
+                System.out.printf("%s\t%d frames\t%016x\t%.1fms%n", result.getJob().getRomPath(),
+                        result.getFrames(), result.getFrameHash(), result.getNanos() / 1e6);
+            } else {
+                System.out.printf("%s\tfailed at frame %d: %s%n", result.getJob().getRomPath(),
+                        result.getFrames(), result.getError());
+            }
+        }
+        double seconds = (System.nanoTime() - time) / 1e9;
+        System.out.printf("%d games, %d frames in %.2fs, %.1f fps%n", results.size(), totalFrames, seconds, totalFrames / seconds);
+    }
+
+    private static void usage() {
+        System.out.println("Usage:   java BatchRunner [-t <threads>] [-f <frames>] <rom1> [<rom2> ...]");
+        System.out.println("   -f applies to the roms after it");
+    }
+}
@@ -1,12 +1,16 @@
 package me.charlesj;
 
+import me.charlesj.input.InputMovie;
 import me.charlesj.input.StandardControllers;
+import me.charlesj.metrics.Metrics;
+import me.charlesj.pacing.FramePacer;
 import me.charlesj.ppu.PPU;
 import me.charlesj.screen.DefaultScreen;
 import me.charlesj.screen.Screen;
 import me.charlesj.speaker.DefaultSpeaker;
-import me.charlesj.speaker.Speaker;
+import me.charlesj.state.RewindBuffer;
 
+import javax.management.JMException;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
@@ -23,14 +27,34 @@ import java.util.Map;
  */
 public class Emulator extends JFrame implements Runnable, KeyListener {
 
-    public static double CPU_CYCLE_PER_SECOND = 1789772.5;
-    public static int SPEAKER_SAMPLE_RATE = 44100;
+    public static final double CPU_CYCLE_PER_SECOND = 1789772.5;
+    public static final int SPEAKER_SAMPLE_RATE = 44100;
+    public static final int REWIND_BUFFER_SIZE = 16 << 20;
+    public static final int REWIND_KEY = KeyEvent.VK_BACK_SPACE;
+    public static final int FAST_FORWARD_KEY = KeyEvent.VK_SPACE;
+    /**
+     * Set to true to publish counters of the running game over JMX.
+     */
+    public static final String METRICS_PROPERTY = "nes.metrics";
+    /**
+     * Set to a file to record the buttons of every frame into, written when the emulator exits.
+     */
+    public static final String RECORD_MOVIE_PROPERTY = "nes.movie.record";
+    /**
+     * Set to a recorded file to replay it instead of reading the keyboard.
+     */
+    public static final String PLAY_MOVIE_PROPERTY = "nes.movie.play";
+    /**
+     * Set to the frames to run ahead, see GameRunner.setRunAhead().
+     */
+    public static final String RUN_AHEAD_PROPERTY = "nes.runahead";
 
     private GameRunner gameRunner;
+    private Thread gameThread;
 
     private StandardControllers controllers = new StandardControllers();
     private Screen screen = new DefaultScreen();
-    private Speaker speaker = new DefaultSpeaker(SPEAKER_SAMPLE_RATE);
+    private DefaultSpeaker speaker = new DefaultSpeaker(SPEAKER_SAMPLE_RATE);
     private EmulatorScreen emulatorScreen = new EmulatorScreen();
     private EmulatorSpeaker emulatorSpeaker = new EmulatorSpeaker(SPEAKER_SAMPLE_RATE);
 
@@ -55,8 +79,24 @@ public class Emulator extends JFrame implements Runnable, KeyListener {
     public void startGame(String game) {
         try {
             gameRunner = new GameRunner(game, controllers, screen, speaker, this);
+            gameRunner.setRewindBuffer(new RewindBuffer(REWIND_BUFFER_SIZE));
+            gameRunner.getPacer().setSpeaker(speaker);
+            gameRunner.setRunAhead(Integer.getInteger(RUN_AHEAD_PROPERTY, 0));
+            if (Boolean.getBoolean(METRICS_PROPERTY)) {
+                Metrics metrics = new Metrics();
+                metrics.setSpeaker(speaker);
+                metrics.register(new File(game).getName());
+                gameRunner.setMetrics(metrics);
+            }
+            if (System.getProperty(PLAY_MOVIE_PROPERTY) != null) {
+                gameRunner.setMovie(MoviePlayer.readMovie(System.getProperty(PLAY_MOVIE_PROPERTY)), false);
+            } else if (System.getProperty(RECORD_MOVIE_PROPERTY) != null) {
+                recordMovie(System.getProperty(RECORD_MOVIE_PROPERTY));
+            }
         } catch (IOException e) {
             e.printStackTrace();
+        } catch (JMException e) {
+            e.printStackTrace();
         }
 
         emulatorSpeaker.setSpeaker(speaker);
@@ -68,7 +108,24 @@ public class Emulator extends JFrame implements Runnable, KeyListener {
             e.printStackTrace();
         }
 
-        new Thread(gameRunner).start();
+        gameThread = new Thread(gameRunner);
+        gameThread.start();
+    }
+
+    private void recordMovie(final String filename) {
+        final InputMovie movie = new InputMovie(0);
+        gameRunner.setMovie(movie, true);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                gameRunner.stop();
+                try {
+                    gameThread.join(1000);
+                    MoviePlayer.writeMovie(movie, filename);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        });
     }
 
     private void initFrame() {
@@ -91,6 +148,12 @@ public class Emulator extends JFrame implements Runnable, KeyListener {
     }
 
     public void keyPressed(KeyEvent e) {
+        if (e.getKeyCode() == REWIND_KEY && gameRunner != null) {
+            gameRunner.setRewinding(true);
+        }
+        if (e.getKeyCode() == FAST_FORWARD_KEY && gameRunner != null) {
+            gameRunner.getPacer().setMode(FramePacer.FAST_FORWARD);
+        }
         Integer r = keyBindings.get(e.getKeyCode());
         if (r != null) {
             controllers.press((r >> 8) & 1, r & 0xFF);
@@ -98,6 +161,12 @@ public class Emulator extends JFrame implements Runnable, KeyListener {
     }
 
     public void keyReleased(KeyEvent e) {
+        if (e.getKeyCode() == REWIND_KEY && gameRunner != null) {
+            gameRunner.setRewinding(false);
+        }
+        if (e.getKeyCode() == FAST_FORWARD_KEY && gameRunner != null) {
+            gameRunner.getPacer().setMode(FramePacer.REAL_TIME);
+        }
         Integer r = keyBindings.get(e.getKeyCode());
         if (r != null) {
             controllers.release((r >> 8) & 1, r & 0xFF);
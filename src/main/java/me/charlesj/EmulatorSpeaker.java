@@ -3,12 +3,19 @@ package me.charlesj;
 import me.charlesj.speaker.Speaker;
 
 import javax.sound.sampled.*;
+import java.util.concurrent.locks.LockSupport;
 
 /**
+ * Audio thread, moves samples from the speaker to the sound card.
+ * Polls the speaker and parks briefly when nothing is ready, so the emulation thread never has to notify it.
  * 2020/2/3.
  */
 public class EmulatorSpeaker implements Runnable {
 
+    private static final int CHUNK_MILLIS = 5;
+    private static final int LINE_CHUNKS = 4;
+    private static final long IDLE_PARK_NANOS = 1000000;
+
     private volatile boolean stop = false;
 
     private final int sampleRate;
@@ -31,17 +38,30 @@ public class EmulatorSpeaker implements Runnable {
     }
 
     public void runImpl() throws LineUnavailableException {
-        AudioFormat format = new AudioFormat(sampleRate, 8, 1, true, true);
+        AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, true);
 
         DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
         SourceDataLine sourceLine = (SourceDataLine) AudioSystem.getLine(info);
-        sourceLine.open(format);
+        byte[] chunk = new byte[sampleRate * CHUNK_MILLIS / 1000 * 2];
+        // A small line buffer keeps latency low, the speaker buffers the rest
+        sourceLine.open(format, chunk.length * LINE_CHUNKS);
 
         sourceLine.start();
 
+        // Frames arrive in bursts, so an empty speaker is an underrun only once the line has played everything
+        boolean dry = false;
         while (!stop) {
-            byte[] b = speaker.output();
-            sourceLine.write(b, 0, b.length);
+            int length = speaker.output(chunk, 0, chunk.length);
+            if (length == 0) {
+                if (!dry && sourceLine.available() == sourceLine.getBufferSize()) {
+                    dry = true;
+                    speaker.underrun();
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } else {
+                dry = false;
+                sourceLine.write(chunk, 0, length);
+            }
         }
 
         sourceLine.drain();
@@ -1,20 +1,21 @@
 package me.charlesj;
 
-import me.charlesj.apu.APU;
-import me.charlesj.apu.SimpleAPU;
-import me.charlesj.cpu.SimpleCPU;
 import me.charlesj.cpu.CPU;
 import me.charlesj.input.Input;
-import me.charlesj.mapper.Mapper;
-import me.charlesj.mapper.MapperFactory;
+import me.charlesj.input.InputMovie;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.metrics.Metrics;
 import me.charlesj.nesloader.FileNesLoader;
 import me.charlesj.nesloader.NesLoader;
-import me.charlesj.ppu.PPU;
-import me.charlesj.ppu.SimplePPU;
+import me.charlesj.pacing.FramePacer;
+import me.charlesj.screen.NullScreen;
 import me.charlesj.screen.Screen;
+import me.charlesj.speaker.MuteSpeaker;
 import me.charlesj.speaker.Speaker;
+import me.charlesj.state.RewindBuffer;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Game thread.
@@ -26,13 +27,23 @@ public class GameRunner implements Runnable {
     private final byte[] pauseLock = new byte[0];
 
     private final NesLoader loader;
-    private final CPU cpu = new SimpleCPU();
-    private final PPU ppu = new SimplePPU();
-    private final APU apu = new SimpleAPU();
     private final Screen screen;
     private final Speaker speaker;
     private final Input input;
     private final Runnable repaintListener;
+    private final FramePacer pacer = new FramePacer();
+
+    // Frames run ahead are output here
+    private final Screen hiddenScreen = new NullScreen();
+    private final Speaker muteSpeaker = new MuteSpeaker();
+
+    private volatile Metrics metrics;
+    private volatile InputMovie movie;
+    private volatile boolean recording;
+    private volatile RewindBuffer rewindBuffer;
+    private volatile boolean rewinding = false;
+    private volatile int runAhead = 0;
+    private volatile int frameSkip = 0;
 
     private double fps = 60;
     private double cps = 1.7e6;
@@ -46,34 +57,28 @@ public class GameRunner implements Runnable {
     }
 
     public void run() {
-        if (loader.isFourScreenMirroring()) {
-            ppu.setMirroringType(PPU.FOUR_SCREEN_MIRRORING);
-        } else if (loader.isHorizontalMirroring()) {
-            ppu.setMirroringType(PPU.HORIZONTAL_MIRRORING);
-        } else if (loader.isVerticalMirroring()) {
-            ppu.setMirroringType(PPU.VERTICAL_MIRRORING);
-        } else {
-            ppu.setMirroringType(PPU.ONE_SCREEN_MIRRORING);
-        }
-
-        Mapper mapper = MapperFactory.createMapperFromId(loader.getMapper());
-        if (mapper == null) {
-            throw new RuntimeException("Unimplemented mapper: " + loader.getMapper());
+        InputMovie movie = this.movie;
+        // With a movie, buttons only change between frames so they can be recorded or replayed exactly
+        StandardControllers movieControllers = movie != null ? new StandardControllers() : null;
+        Machine machine = new Machine(loader, movie != null ? movieControllers : input);
+        machine.setMetrics(metrics);
+        if (movie != null) {
+            machine.setRandomSeed(movie.getSeed());
         }
-        mapper.mapMemory(loader, cpu, ppu, apu, input);
-
-        ppu.powerUp();
-        cpu.powerUp();
+        CPU cpu = machine.getCPU();
 
         long time = System.nanoTime();
-        long oldCycle = 0;
         long frame = 0;
-        boolean oldInBlank = false;
+        // Cycles taken back by rewinding, so they still count as emulated
+        long rewoundCycles = 0;
+        ByteBuffer runAheadState = ByteBuffer.allocateDirect(Machine.MAX_STATE_SIZE);
+        int skipped = 0;
+        pacer.reset();
 
         while (!stop) {
-            for (int k = 0; k < 100; k++) {
-                if (pause) {
-                    synchronized (pauseLock) {
+            if (pause) {
+                synchronized (pauseLock) {
+                    while (pause) {
                         try {
                             pauseLock.wait();
                         } catch (InterruptedException e) {
@@ -81,33 +86,82 @@ public class GameRunner implements Runnable {
                         }
                     }
                 }
-                int cycle = (int) (cpu.execute() - oldCycle);
-                oldCycle = cpu.getCycle();
-                for (int j = 0; j < cycle; j++) {
-                    mapper.cycle(cpu);
-                    apu.cycle(speaker, cpu);
-                    ppu.cycle(screen, cpu);
-                    ppu.cycle(screen, cpu);
-                    ppu.cycle(screen, cpu);
-                    if (!oldInBlank && ppu.inVerticalBlank()) {
-                        repaintListener.run();
-                        frame++;
+                pacer.reset();
+            }
+            if (movie != null) {
+                applyMovie(machine, movie, movieControllers);
+            }
+            // Rewinding shows the frames stepped back to
+            int runAhead = rewinding ? 0 : this.runAhead;
+            boolean render = skipped >= currentFrameSkip();
+            skipped = render ? 0 : skipped + 1;
+            machine.setSkipRendering(runAhead > 0 || !render);
+            machine.runFrame(runAhead > 0 ? hiddenScreen : screen, speaker);
+            RewindBuffer rewindBuffer = this.rewindBuffer;
+            if (rewindBuffer != null) {
+                if (rewinding) {
+                    long cycle = cpu.getCycle();
+                    if (rewindBuffer.stepBack(machine)) {
+                        rewoundCycles += cycle - cpu.getCycle();
                     }
-                    oldInBlank = ppu.inVerticalBlank();
+                } else {
+                    rewindBuffer.onFrame(machine);
                 }
             }
+            if (runAhead > 0) {
+                runAhead(machine, runAhead, runAheadState, render);
+            }
+            if (render) {
+                repaintListener.run();
+            }
+            frame++;
+
             long timeDiff = System.nanoTime() - time;
             fps = frame * 1e9 / timeDiff;
-            cps = cpu.getCycle() * 1e9 / timeDiff;
-            while (cps > Emulator.CPU_CYCLE_PER_SECOND) {
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                cps = cpu.getCycle() * 1e9 / (System.nanoTime() - time);
-            }
+            cps = (cpu.getCycle() + rewoundCycles) * 1e9 / timeDiff;
+            pacer.frameFinished();
+        }
+    }
+
+    /**
+     * Shows the frame the given frames after the current one, emulated muted with the buttons held now,
+     * and restores the machine to the current frame.
+     * @param render false to skip rendering the frame shown as well
+     */
+    private void runAhead(Machine machine, int frames, ByteBuffer state, boolean render) {
+        state.clear();
+        machine.saveState(state);
+        machine.setSkipRendering(true);
+        for (int i = 1; i < frames; i++) {
+            machine.runFrame(hiddenScreen, muteSpeaker);
+        }
+        machine.setSkipRendering(!render);
+        machine.runFrame(screen, muteSpeaker);
+        state.flip();
+        machine.loadState(state);
+    }
+
+    /**
+     * @return frames not rendered after each one rendered
+     */
+    private int currentFrameSkip() {
+        if (pacer.getMode() == FramePacer.FAST_FORWARD) {
+            // Frames beyond the display rate would not be seen
+            return Math.max(frameSkip, (int) Math.ceil(pacer.getFastForwardMultiplier()) - 1);
+        }
+        return frameSkip;
+    }
+
+    private void applyMovie(Machine machine, InputMovie movie, StandardControllers controllers) {
+        int frame = (int) machine.getFrame();
+        if (recording) {
+            // Frames rewound are recorded again
+            movie.truncate(frame);
+            StandardControllers keyboard = (StandardControllers) input;
+            movie.addFrame(keyboard.getButtons(0), keyboard.getButtons(1));
         }
+        controllers.setButtons(0, movie.getButtons(frame, 0));
+        controllers.setButtons(1, movie.getButtons(frame, 1));
     }
 
     public void stop() {
@@ -127,6 +181,81 @@ public class GameRunner implements Runnable {
         }
     }
 
+    /**
+     * @param metrics counters of the machine, null to disable. Set before starting.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Seeds the machine by the movie and drives it by the movie. Set before starting.
+     * @param recording true to record the buttons of input, which must be StandardControllers, into the movie
+     *                  every frame instead of replaying it
+     */
+    public void setMovie(InputMovie movie, boolean recording) {
+        if (recording && !(input instanceof StandardControllers)) {
+            throw new IllegalArgumentException("Only StandardControllers can be recorded");
+        }
+        this.movie = movie;
+        this.recording = recording;
+    }
+
+    /**
+     * @param rewindBuffer records every frame when not rewinding, null to disable rewinding
+     */
+    public void setRewindBuffer(RewindBuffer rewindBuffer) {
+        this.rewindBuffer = rewindBuffer;
+    }
+
+    /**
+     * @param rewinding true to step one frame back at every frame boundary instead of recording
+     */
+    public void setRewinding(boolean rewinding) {
+        this.rewinding = rewinding;
+    }
+
+    /**
+     * Hides the latency of games reacting to buttons a few frames late. Every frame is emulated as usual,
+     * then the given frames more are emulated and the last one is shown, which costs as many frames of emulation.
+     * Metrics count the frames run ahead as well.
+     * @param frames frames to run ahead, 0 to disable
+     */
+    public void setRunAhead(int frames) {
+        if (frames < 0) {
+            throw new IllegalArgumentException("frames must not be negative");
+        }
+        this.runAhead = frames;
+    }
+
+    public int getRunAhead() {
+        return runAhead;
+    }
+
+    /**
+     * Renders one frame of every frames + 1, e.g. for bots not looking at most frames.
+     * Frames not rendered still run sprite 0 hit and sprite overflow, and are not repainted.
+     * While fast-forwarding, frames beyond the display rate are skipped as well.
+     * @param frames frames to skip after each one rendered, 0 to render all
+     */
+    public void setFrameSkip(int frames) {
+        if (frames < 0) {
+            throw new IllegalArgumentException("frames must not be negative");
+        }
+        this.frameSkip = frames;
+    }
+
+    public int getFrameSkip() {
+        return frameSkip;
+    }
+
+    /**
+     * @return pacer of the emulation thread, its mode can be changed while running
+     */
+    public FramePacer getPacer() {
+        return pacer;
+    }
+
     public double getCps() {
         return cps;
     }
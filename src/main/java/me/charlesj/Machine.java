@@ -0,0 +1,272 @@
+package me.charlesj;
+
+import me.charlesj.apu.APU;
+import me.charlesj.apu.SimpleAPU;
+import me.charlesj.cpu.CPU;
+import me.charlesj.cpu.SimpleCPU;
+import me.charlesj.input.Input;
+import me.charlesj.mapper.Mapper;
+import me.charlesj.mapper.MapperFactory;
+import me.charlesj.metrics.Metrics;
+import me.charlesj.nesloader.NesLoader;
+import me.charlesj.ppu.PPU;
+import me.charlesj.ppu.SimplePPU;
+import me.charlesj.screen.Screen;
+import me.charlesj.speaker.Speaker;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * One NES: CPU, PPU, APU and mapper wired to a loaded game.
+ * Holds no global state, so several machines can run on different threads.
+ */
+public class Machine {
+
+    // "NESS"
+    public static final int STATE_MAGIC = 0x4E455353;
+    public static final int STATE_VERSION = 3;
+    /**
+     * Upper bound of a save state, with 8KB SRAM and 8KB CHR RAM.
+     * Only games with both take more than 20KB, games with either one take about 16KB.
+     */
+    public static final int MAX_STATE_SIZE = 0x6000;
+
+    private final NesLoader loader;
+    private final CPU cpu = new SimpleCPU();
+    private final PPU ppu = new SimplePPU();
+    private final APU apu = new SimpleAPU();
+    private final Input input;
+    private final Mapper mapper;
+
+    private long oldCycle = 0;
+    private long frame = 0;
+
+    private Metrics metrics;
+
+    public Machine(NesLoader loader, Input input) {
+        this.loader = loader;
+        this.input = input;
+
+        if (loader.isFourScreenMirroring()) {
+            ppu.setMirroringType(PPU.FOUR_SCREEN_MIRRORING);
+        } else if (loader.isHorizontalMirroring()) {
+            ppu.setMirroringType(PPU.HORIZONTAL_MIRRORING);
+        } else if (loader.isVerticalMirroring()) {
+            ppu.setMirroringType(PPU.VERTICAL_MIRRORING);
+        } else {
+            ppu.setMirroringType(PPU.ONE_SCREEN_MIRRORING);
+        }
+
+        mapper = MapperFactory.createMapperFromId(loader.getMapper());
+        if (mapper == null) {
+            throw new RuntimeException("Unimplemented mapper: " + loader.getMapper());
+        }
+        mapper.mapMemory(loader, cpu, ppu, apu, input);
+
+        ppu.powerUp();
+        cpu.powerUp();
+    }
+
+    /**
+     * Executes one CPU instruction and clocks the other units for the cycles it took.
+     * @return true if a frame is finished, i.e. PPU just entered vertical blank
+     */
+    public boolean step(Screen screen, Speaker speaker) {
+        if (metrics != null) {
+            return stepMeasured(screen, speaker);
+        }
+        int cycle = (int) (cpu.execute() - oldCycle);
+        oldCycle = cpu.getCycle();
+        return clockUnits(screen, speaker, cycle);
+    }
+
+    /**
+     * step() timing the units. PPU time is measured by the PPU itself wherever it catches up,
+     * and taken out of the time of the rest.
+     */
+    private boolean stepMeasured(Screen screen, Speaker speaker) {
+        long ppuNanos = metrics.getPPUNanosSoFar();
+        long start = System.nanoTime();
+        int cycle = (int) (cpu.execute() - oldCycle);
+        long executed = System.nanoTime();
+        long ppuNanosInCPU = metrics.getPPUNanosSoFar() - ppuNanos;
+        oldCycle = cpu.getCycle();
+        metrics.addInstruction(cycle);
+        metrics.addCPUNanos(executed - start - ppuNanosInCPU);
+
+        boolean frameFinished = clockUnits(screen, speaker, cycle);
+        metrics.addAPUNanos(System.nanoTime() - executed - (metrics.getPPUNanosSoFar() - ppuNanos - ppuNanosInCPU));
+        if (frameFinished) {
+            metrics.endFrame();
+        }
+        return frameFinished;
+    }
+
+    private boolean clockUnits(Screen screen, Speaker speaker, int cycle) {
+        boolean frameFinished = false;
+        for (int j = 0; j < cycle; j++) {
+            apu.cycle(speaker, cpu);
+            ppu.advance(screen, cpu, 3);
+            if (frame != ppu.getFrameCount()) {
+                frame = ppu.getFrameCount();
+                frameFinished = true;
+            }
+        }
+        return frameFinished;
+    }
+
+    /**
+     * @param catchUp true to let the PPU run lazily (default), false to clock it dot by dot
+     */
+    public void setCatchUpPPU(boolean catchUp) {
+        ppu.setCatchUp(catchUp);
+    }
+
+    /**
+     * @param eventDriven true to run the APU channels only when something happens (default), false to clock them every cycle
+     */
+    public void setEventDrivenAPU(boolean eventDriven) {
+        apu.setEventDriven(eventDriven);
+    }
+
+    /**
+     * @param skip true to compute no pixels of the frames from now on, the screen is left untouched
+     */
+    public void setSkipRendering(boolean skip) {
+        ppu.setSkipRendering(skip);
+    }
+
+    /**
+     * @param enabled true to run code decoded into blocks ahead, false to decode each instruction when it is run (default)
+     */
+    public void setBlockCache(boolean enabled) {
+        cpu.setBlockCache(enabled);
+    }
+
+    /**
+     * @param metrics counters to update from now on, null to stop counting
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        cpu.setMetrics(metrics);
+        ppu.setMetrics(metrics);
+        mapper.setMetrics(metrics);
+    }
+
+    /**
+     * Makes the machine deterministic: machines created from the same game, seeded alike
+     * and given the same buttons at the same frames produce the same frames.
+     */
+    public void setRandomSeed(long seed) {
+        cpu.setRandomSeed(seed);
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Runs until the current frame is finished.
+     */
+    public void runFrame(Screen screen, Speaker speaker) {
+        while (!step(screen, speaker)) {
+            // continue
+        }
+    }
+
+    /**
+     * Writes the whole machine state to buffer, which needs MAX_STATE_SIZE bytes at most.
+     * Pass a reused (direct) buffer to save without allocating.
+     * Buttons pressed are not included.
+     */
+    public void saveState(ByteBuffer buffer) {
+        ppu.catchUp();
+        buffer.putInt(STATE_MAGIC);
+        buffer.putShort((short) STATE_VERSION);
+        buffer.putShort((short) loader.getMapper());
+        buffer.putLong(frame);
+        cpu.saveState(buffer);
+        ppu.saveState(buffer);
+        apu.saveState(buffer);
+        mapper.saveState(buffer);
+        input.saveState(buffer);
+    }
+
+    public byte[] saveState() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_STATE_SIZE);
+        saveState(buffer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Restores a state saved from a machine running the same game.
+     * @throws IllegalArgumentException if the state is not saved by this version or for this mapper
+     */
+    public void loadState(ByteBuffer buffer) {
+        if (buffer.remaining() < 8 || buffer.getInt() != STATE_MAGIC) {
+            throw new IllegalArgumentException("Not a save state");
+        }
+        int version = buffer.getShort();
+        if (version != STATE_VERSION) {
+            throw new IllegalArgumentException("Unsupported save state version: " + version);
+        }
+        int mapperId = buffer.getShort();
+        if (mapperId != loader.getMapper()) {
+            throw new IllegalArgumentException("Save state is for mapper " + mapperId + ", not " + loader.getMapper());
+        }
+        frame = buffer.getLong();
+        cpu.loadState(buffer);
+        ppu.loadState(buffer);
+        apu.loadState(buffer);
+        mapper.loadState(buffer);
+        // CHR RAM and PRG RAM are restored behind the PPU and CPU
+        ppu.invalidatePatterns(0, 0x2000);
+        cpu.invalidateBlocks();
+        input.loadState(buffer);
+        oldCycle = cpu.getCycle();
+    }
+
+    public void loadState(byte[] state) {
+        loadState(ByteBuffer.wrap(state));
+    }
+
+    /**
+     * @return copy of the 2KB internal RAM
+     */
+    public byte[] getRam() {
+        byte[] ram = new byte[0x800];
+        for (int i = 0; i < ram.length; i++) {
+            ram[i] = (byte) cpu.getMemory().getByte(i);
+        }
+        return ram;
+    }
+
+    public long getFrame() {
+        return frame;
+    }
+
+    public NesLoader getLoader() {
+        return loader;
+    }
+
+    public CPU getCPU() {
+        return cpu;
+    }
+
+    public PPU getPPU() {
+        return ppu;
+    }
+
+    public APU getAPU() {
+        return apu;
+    }
+
+    public Mapper getMapper() {
+        return mapper;
+    }
+
+    public Input getInput() {
+        return input;
+    }
+}
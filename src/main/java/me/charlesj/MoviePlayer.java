@@ -0,0 +1,147 @@
+package me.charlesj;
+
+import me.charlesj.input.InputMovie;
+import me.charlesj.input.InputScript;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.nesloader.NesLoader;
+import me.charlesj.nesloader.RomCache;
+import me.charlesj.screen.HeadlessScreen;
+import me.charlesj.speaker.MuteSpeaker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Replays input movies headless and unthrottled, e.g. to compare frame hashes against a golden movie.
+ */
+public class MoviePlayer {
+
+    /**
+     * Runs a fresh machine seeded and driven by the movie.
+     * @return hash of every frame, see HeadlessScreen.hash()
+     */
+    public static long[] play(NesLoader loader, InputMovie movie) {
+        StandardControllers controllers = new StandardControllers();
+        Machine machine = new Machine(loader, controllers);
+        machine.setRandomSeed(movie.getSeed());
+        HeadlessScreen screen = new HeadlessScreen();
+        MuteSpeaker speaker = new MuteSpeaker();
+
+        long[] hashes = new long[movie.getFrameCount()];
+        for (int i = 0; i < hashes.length; i++) {
+            controllers.setButtons(0, movie.getButtons(i, 0));
+            controllers.setButtons(1, movie.getButtons(i, 1));
+            machine.runFrame(screen, speaker);
+            hashes[i] = screen.hash();
+        }
+        return hashes;
+    }
+
+    /**
+     * @return the first frame differing from the hashes of the movie, -1 if none
+     */
+    public static int verify(NesLoader loader, InputMovie movie) {
+        if (!movie.hasHashes()) {
+            throw new IllegalArgumentException("Movie has no hashes");
+        }
+        long[] hashes = play(loader, movie);
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] != movie.getHash(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the movie with the hashes of a replay of it
+     */
+    public static InputMovie addHashes(NesLoader loader, InputMovie movie) {
+        long[] hashes = play(loader, movie);
+        InputMovie hashed = new InputMovie(movie.getSeed());
+        for (int i = 0; i < hashes.length; i++) {
+            hashed.addFrame(movie.getButtons(i, 0), movie.getButtons(i, 1), hashes[i]);
+        }
+        return hashed;
+    }
+
+    /**
+     * Records frames of a script into a movie with hashes.
+     */
+    public static InputMovie record(NesLoader loader, InputScript script, int frames, long seed) {
+        InputMovie movie = new InputMovie(seed);
+        for (int i = 0; i < frames; i++) {
+            movie.addFrame(script.getButtons(i, 0), script.getButtons(i, 1));
+        }
+        return addHashes(loader, movie);
+    }
+
+    public static InputMovie readMovie(String filename) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(filename));
+        try {
+            return InputMovie.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static void writeMovie(InputMovie movie, String filename) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(filename));
+        try {
+            movie.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String output = null;
+        String[] files = new String[2];
+        int fileCount = 0;
+        for (int pos = 0; pos < args.length; pos++) {
+            if (args[pos].equals("-o") && pos + 1 < args.length) {
+                output = args[++pos];
+            } else if (args[pos].startsWith("-") || fileCount == 2) {
+                usage();
+                return;
+            } else {
+                files[fileCount++] = args[pos];
+            }
+        }
+        if (fileCount < 2) {
+            usage();
+            return;
+        }
+
+        NesLoader loader = RomCache.getDefault().load(files[0]);
+        InputMovie movie = readMovie(files[1]);
+        long time = System.nanoTime();
+        if (output != null) {
+            writeMovie(addHashes(loader, movie), output);
+            System.out.println("Wrote " + movie.getFrameCount() + " frames with hashes to " + output);
+        } else if (movie.hasHashes()) {
+            int frame = verify(loader, movie);
+            if (frame == -1) {
+                System.out.println("All " + movie.getFrameCount() + " frames match");
+            } else {
+                System.out.println("Frame " + frame + " differs");
+                System.exit(1);
+            }
+        } else {
+            play(loader, movie);
+            System.out.println("Played " + movie.getFrameCount() + " frames, the movie has no hashes to check");
+        }
+        double seconds = (System.nanoTime() - time) / 1e9;
+        System.out.printf("%.2fs, %.1f frames/s%n", seconds, movie.getFrameCount() / seconds);
+    }
+
+    private static void usage() {
+        System.out.println("Usage:   java MoviePlayer [-o <golden>] <rom> <movie>");
+        System.out.println("   checks the frame hashes of the movie, or with -o writes the movie with hashes to <golden>");
+    }
+}
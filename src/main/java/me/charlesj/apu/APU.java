@@ -2,20 +2,33 @@ package me.charlesj.apu;
 
 import me.charlesj.cpu.CPU;
 import me.charlesj.cpu.IRQGenerator;
+import me.charlesj.cpu.IRQLine;
 import me.charlesj.speaker.Speaker;
+import me.charlesj.state.Savable;
 
 /**
  * APU interface.
  * 2020/1/22.
  */
-public interface APU extends IRQGenerator {
+public interface APU extends IRQGenerator, Savable {
 
     APURegister getRegister();
 
+    /**
+     * @param irqLine line the frame counter and DMC interrupts are asserted on from now on
+     */
+    void setIRQLine(IRQLine irqLine);
+
     void writeRegister(int index, int value);
     int readRegister(int index);
 
     void cycle(Speaker speaker, CPU cpu);
+
+    /**
+     * @param eventDriven true to run the channels only when something happens (default), false to clock them every cycle
+     */
+    void setEventDriven(boolean eventDriven);
+    boolean isEventDriven();
     void powerUp();
     void reset();
 }
@@ -1,21 +1,25 @@
 package me.charlesj.apu;
 
+import me.charlesj.cpu.IRQLine;
 import me.charlesj.memory.DefaultMemory;
 import me.charlesj.memory.Memory;
+import me.charlesj.state.Savable;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
  * Register used by APU. They are mapped to CPU memory.
  * 2020/2/3.
  */
-public class APURegister extends DefaultMemory implements Memory {
+public class APURegister extends DefaultMemory implements Memory, Savable {
 
     static final int FRAME_COUNTER_PERIOD = 7458;
 
     int frameCounterTimer;
 
     private SoundGenerator[] soundGenerators;
+    private IRQLine irqLine = new IRQLine();
 
     public APURegister(SoundGenerator ... soundGenerators) {
         super(0x20);
@@ -26,6 +30,8 @@ public class APURegister extends DefaultMemory implements Memory {
         int result = super.getByte(address);
         switch (address) {
             case 0x15: {
+                // Enable bits written are not read back
+                result &= 0x40;
                 int active = 0;
                 int i = 0;
                 for (SoundGenerator generator : soundGenerators) {
@@ -55,6 +61,7 @@ public class APURegister extends DefaultMemory implements Memory {
                     generator.setEnabled((value & 1) != 0);
                     value >>= 1;
                 }
+                updateIRQLine();
                 break;
             case 0x17:
                 frameCounterTimer = -3;
@@ -67,6 +74,15 @@ public class APURegister extends DefaultMemory implements Memory {
         }
     }
 
+    public void setIRQLine(IRQLine irqLine) {
+        this.irqLine = irqLine;
+        updateIRQLine();
+    }
+
+    private void updateIRQLine() {
+        irqLine.set(IRQLine.FRAME_COUNTER, getStatusFrameCounterInterrupt());
+    }
+
     public boolean isInterruptDisabled() {
         return (data[0x17] & 0x40) != 0;
     }
@@ -77,18 +93,35 @@ public class APURegister extends DefaultMemory implements Memory {
 
     public void setStatusFrameCounterInterrupt() {
         data[0x15] |= 0x40;
+        irqLine.set(IRQLine.FRAME_COUNTER, true);
     }
 
     public void clearStatusFrameCounterInterrupt() {
         data[0x15] &= ~0x40;
+        irqLine.set(IRQLine.FRAME_COUNTER, false);
     }
 
     public boolean getStatusFrameCounterInterrupt() {
-        return (data[0x15] &= 0x40) != 0;
+        return (data[0x15] & 0x40) != 0;
     }
 
     public void reset() {
         Arrays.fill(data, (byte) 0);
         frameCounterTimer = -1;
+        updateIRQLine();
+    }
+
+    /**
+     * Only the register's own state, the sound generators are saved by the APU.
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.put(data);
+        buffer.putInt(frameCounterTimer);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        buffer.get(data);
+        frameCounterTimer = buffer.getInt();
+        updateIRQLine();
     }
 }
@@ -2,6 +2,10 @@ package me.charlesj.apu;
 
 import me.charlesj.cpu.CPU;
 import me.charlesj.cpu.IRQGenerator;
+import me.charlesj.cpu.IRQLine;
+import me.charlesj.state.StateBuffers;
+
+import java.nio.ByteBuffer;
 
 /**
  * Delta modulation channel.
@@ -32,6 +36,7 @@ public class DMC implements SoundGenerator, DividerListener, IRQGenerator {
     private int outputLevel;
 
     private CPU cpu;
+    private IRQLine irqLine = new IRQLine();
 
     private boolean evenCycle = false;
 
@@ -50,6 +55,32 @@ public class DMC implements SoundGenerator, DividerListener, IRQGenerator {
         this.cpu = null;
     }
 
+    public int getCyclesToNextChange() {
+        if (isIdle()) {
+            return Integer.MAX_VALUE;
+        }
+        return (evenCycle ? 2 : 1) + 2 * (timer.getClocksToOutput() - 1);
+    }
+
+    public void skipCycles(int cycles) {
+        int clocks = timer.skip(evenCycle ? cycles / 2 : (cycles + 1) / 2);
+        if (clocks > 0) {
+            // Only skipped over when idle, the output unit just shifts out silence
+            shiftRegister = clocks >= 8 ? 0 : shiftRegister >> clocks;
+            bitsRemainingCounter = (bitsRemainingCounter - clocks % 8 + 8) % 8;
+        }
+        if ((cycles & 1) != 0) {
+            evenCycle = !evenCycle;
+        }
+    }
+
+    /**
+     * @return true if silenced and nothing is left to fetch, then clocks change neither level nor memory
+     */
+    private boolean isIdle() {
+        return silenceFlag && sampleBufferEmpty && bytesRemaining == 0;
+    }
+
     public void onClock(Divider divider) {
         if (bitsRemainingCounter == 0) {
             bitsRemainingCounter = 8;
@@ -80,7 +111,7 @@ public class DMC implements SoundGenerator, DividerListener, IRQGenerator {
             return;
         }
 
-        sampleBuffer = cpu.getMemory().getByte(currentSampleAddress);
+        sampleBuffer = cpu.getDMA().fetchSample(currentSampleAddress);
         sampleBufferEmpty = false;
 
         currentSampleAddress++;
@@ -92,13 +123,13 @@ public class DMC implements SoundGenerator, DividerListener, IRQGenerator {
             if (loopFlag) {
                 restart(false);
             } else if (irqEnabled) {
-                interruptFlag = true;
+                setInterruptFlag(true);
             }
         }
     }
 
     public void setEnabled(boolean enabled) {
-        this.interruptFlag = false;
+        setInterruptFlag(false);
         if (!enabled) {
             this.bytesRemaining = 0;
         }
@@ -146,10 +177,20 @@ public class DMC implements SoundGenerator, DividerListener, IRQGenerator {
     public void setIRQEnabled(boolean enabled) {
         irqEnabled = enabled;
         if (!irqEnabled) {
-            interruptFlag = false;
+            setInterruptFlag(false);
         }
     }
 
+    private void setInterruptFlag(boolean interruptFlag) {
+        this.interruptFlag = interruptFlag;
+        irqLine.set(IRQLine.DMC, interruptFlag);
+    }
+
+    public void setIRQLine(IRQLine irqLine) {
+        this.irqLine = irqLine;
+        irqLine.set(IRQLine.DMC, interruptFlag);
+    }
+
     public boolean getInterruptFlag() {
         return interruptFlag;
     }
@@ -161,4 +202,37 @@ public class DMC implements SoundGenerator, DividerListener, IRQGenerator {
     public boolean getIRQLevel() {
         return interruptFlag;
     }
+
+    public void saveState(ByteBuffer buffer) {
+        timer.saveState(buffer);
+        StateBuffers.putBoolean(buffer, interruptFlag);
+        StateBuffers.putBoolean(buffer, irqEnabled);
+        StateBuffers.putBoolean(buffer, loopFlag);
+        buffer.putShort((short) period);
+        buffer.putInt(sampleAddress).putInt(sampleLength).putInt(currentSampleAddress).putInt(bytesRemaining);
+        StateBuffers.putBoolean(buffer, sampleBufferEmpty);
+        buffer.put((byte) sampleBuffer);
+        StateBuffers.putBoolean(buffer, silenceFlag);
+        buffer.put((byte) shiftRegister).put((byte) bitsRemainingCounter).put((byte) outputLevel);
+        StateBuffers.putBoolean(buffer, evenCycle);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        timer.loadState(buffer);
+        setInterruptFlag(StateBuffers.getBoolean(buffer));
+        irqEnabled = StateBuffers.getBoolean(buffer);
+        loopFlag = StateBuffers.getBoolean(buffer);
+        period = buffer.getShort();
+        sampleAddress = buffer.getInt();
+        sampleLength = buffer.getInt();
+        currentSampleAddress = buffer.getInt();
+        bytesRemaining = buffer.getInt();
+        sampleBufferEmpty = StateBuffers.getBoolean(buffer);
+        sampleBuffer = buffer.get() & 0xFF;
+        silenceFlag = StateBuffers.getBoolean(buffer);
+        shiftRegister = buffer.get() & 0xFF;
+        bitsRemainingCounter = buffer.get();
+        outputLevel = buffer.get();
+        evenCycle = StateBuffers.getBoolean(buffer);
+    }
 }
@@ -1,5 +1,7 @@
 package me.charlesj.apu;
 
+import java.nio.ByteBuffer;
+
 /**
  * 2020/2/3.
  */
@@ -38,4 +40,31 @@ public class DecrementDivider implements Divider {
     public int getValue() {
         return counter;
     }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public int getClocksToOutput() {
+        return counter + 1;
+    }
+
+    public int skip(int clocks) {
+        if (clocks <= counter) {
+            counter -= clocks;
+            return 0;
+        }
+        clocks -= counter + 1;
+        counter = period - clocks % (period + 1);
+        return 1 + clocks / (period + 1);
+    }
+
+    public void saveState(ByteBuffer buffer) {
+        buffer.putShort((short) period).putShort((short) counter);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        period = buffer.getShort() & 0xFFFF;
+        counter = buffer.getShort() & 0xFFFF;
+    }
 }
@@ -1,12 +1,26 @@
 package me.charlesj.apu;
 
+import me.charlesj.state.Savable;
+
 /**
  * 2020/2/3.
  */
-public interface Divider {
+public interface Divider extends Savable {
     void setPeriod(int value);
     void setOutputClock(DividerListener outputClock);
     void reset();
     void clock();
     int getValue();
+    int getPeriod();
+
+    /**
+     * @return clock() calls until one triggers the output clock, at least 1
+     */
+    int getClocksToOutput();
+
+    /**
+     * Same as calling clock() this many times, but the output clock is not triggered.
+     * @return output clocks that would have been triggered
+     */
+    int skip(int clocks);
 }
@@ -1,5 +1,9 @@
 package me.charlesj.apu;
 
+import me.charlesj.state.StateBuffers;
+
+import java.nio.ByteBuffer;
+
 /**
  * Envelop unit.
  * 2020/2/3.
@@ -53,4 +57,22 @@ public class Envelop implements DividerListener {
     public boolean getLoopFlag() {
         return loopFlag;
     }
+
+    public void saveState(ByteBuffer buffer) {
+        StateBuffers.putBoolean(buffer, startFlag);
+        divider.saveState(buffer);
+        buffer.put((byte) decayLevel);
+        StateBuffers.putBoolean(buffer, isConstant);
+        buffer.put((byte) volume);
+        StateBuffers.putBoolean(buffer, loopFlag);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        startFlag = StateBuffers.getBoolean(buffer);
+        divider.loadState(buffer);
+        decayLevel = buffer.get();
+        isConstant = StateBuffers.getBoolean(buffer);
+        volume = buffer.get();
+        loopFlag = StateBuffers.getBoolean(buffer);
+    }
 }
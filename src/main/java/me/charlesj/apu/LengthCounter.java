@@ -1,5 +1,9 @@
 package me.charlesj.apu;
 
+import me.charlesj.state.StateBuffers;
+
+import java.nio.ByteBuffer;
+
 /**
  * Length counter unit.
  * 2020/2/3.
@@ -41,4 +45,16 @@ public class LengthCounter {
     public int getLengthCounter() {
         return lengthCounter;
     }
+
+    public void saveState(ByteBuffer buffer) {
+        StateBuffers.putBoolean(buffer, halt);
+        buffer.put((byte) lengthCounter);
+        StateBuffers.putBoolean(buffer, enabled);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        halt = StateBuffers.getBoolean(buffer);
+        lengthCounter = buffer.get() & 0xFF;
+        enabled = StateBuffers.getBoolean(buffer);
+    }
 }
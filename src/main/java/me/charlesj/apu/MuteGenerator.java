@@ -2,6 +2,8 @@ package me.charlesj.apu;
 
 import me.charlesj.cpu.CPU;
 
+import java.nio.ByteBuffer;
+
 /**
  * Mute generator. Only for test.
  * 2020/2/5.
@@ -11,6 +13,14 @@ public class MuteGenerator implements SoundGenerator {
 
     }
 
+    public int getCyclesToNextChange() {
+        return Integer.MAX_VALUE;
+    }
+
+    public void skipCycles(int cycles) {
+
+    }
+
     public void setEnabled(boolean enabled) {
 
     }
@@ -34,4 +44,12 @@ public class MuteGenerator implements SoundGenerator {
     public void clockEnvelopAndLinearCounter() {
 
     }
+
+    public void saveState(ByteBuffer buffer) {
+
+    }
+
+    public void loadState(ByteBuffer buffer) {
+
+    }
 }
@@ -1,6 +1,9 @@
 package me.charlesj.apu;
 
 import me.charlesj.cpu.CPU;
+import me.charlesj.state.StateBuffers;
+
+import java.nio.ByteBuffer;
 
 /**
  * Noise unit.
@@ -33,6 +36,23 @@ public class Noise implements SoundGenerator, DividerListener {
         timer.clock();
     }
 
+    public int getCyclesToNextChange() {
+        if (lengthCounter.getLengthCounter() == 0 || envelop.output() == 0) {
+            return Integer.MAX_VALUE;
+        }
+        return (evenCycle ? 2 : 1) + 2 * (timer.getClocksToOutput() - 1);
+    }
+
+    public void skipCycles(int cycles) {
+        int shifts = timer.skip(evenCycle ? cycles / 2 : (cycles + 1) / 2);
+        for (int i = 0; i < shifts; i++) {
+            onClock(timer);
+        }
+        if ((cycles & 1) != 0) {
+            evenCycle = !evenCycle;
+        }
+    }
+
     public void onClock(Divider divider) {
         int feedback = feedbackRegister;
         if (mode) {
@@ -87,4 +107,23 @@ public class Noise implements SoundGenerator, DividerListener {
     public boolean isActive() {
         return lengthCounter.getLengthCounter() > 0;
     }
+
+    public void saveState(ByteBuffer buffer) {
+        envelop.saveState(buffer);
+        timer.saveState(buffer);
+        lengthCounter.saveState(buffer);
+        StateBuffers.putBoolean(buffer, mode);
+        buffer.putShort((short) period).putShort((short) feedbackRegister);
+        StateBuffers.putBoolean(buffer, evenCycle);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        envelop.loadState(buffer);
+        timer.loadState(buffer);
+        lengthCounter.loadState(buffer);
+        mode = StateBuffers.getBoolean(buffer);
+        period = buffer.getShort();
+        feedbackRegister = buffer.getShort();
+        evenCycle = StateBuffers.getBoolean(buffer);
+    }
 }
@@ -1,6 +1,9 @@
 package me.charlesj.apu;
 
 import me.charlesj.cpu.CPU;
+import me.charlesj.state.StateBuffers;
+
+import java.nio.ByteBuffer;
 
 /**
  * Pulse generator.
@@ -21,6 +24,7 @@ public class Pulse implements SoundGenerator, DividerListener, SweepListener {
     private Sweep sweep = new Sweep();
     private LengthCounter lengthCounter = new LengthCounter();
 
+    private int duty;
     private int currentPeriod;
     private int targetPeriod;
 
@@ -43,6 +47,22 @@ public class Pulse implements SoundGenerator, DividerListener, SweepListener {
         timer.clock();
     }
 
+    public int getCyclesToNextChange() {
+        if (isSilenced()) {
+            return Integer.MAX_VALUE;
+        }
+        long cycles = (evenCycle ? 2 : 1) + 2L * (timer.getClocksToOutput() - 1)
+                + 2L * (sequencer.getStepsToChange() - 1) * (timer.getPeriod() + 1);
+        return (int) Math.min(cycles, Integer.MAX_VALUE);
+    }
+
+    public void skipCycles(int cycles) {
+        sequencer.step(timer.skip(evenCycle ? cycles / 2 : (cycles + 1) / 2));
+        if ((cycles & 1) != 0) {
+            evenCycle = !evenCycle;
+        }
+    }
+
     public void onClock(Divider divider) {
         sequencer.step();
     }
@@ -70,13 +90,17 @@ public class Pulse implements SoundGenerator, DividerListener, SweepListener {
     }
 
     public int output() {
-        if (sequencer.output() == 0 || lengthCounter.getLengthCounter() == 0 || targetPeriod > 0x7FF || timer.getValue() < 8) {
+        if (sequencer.output() == 0 || isSilenced()) {
             return 0;
         } else {
             return envelop.output();
         }
     }
 
+    private boolean isSilenced() {
+        return lengthCounter.getLengthCounter() == 0 || targetPeriod > 0x7FF || currentPeriod < 8 || envelop.output() == 0;
+    }
+
     public void setEnabled(boolean enabled) {
         lengthCounter.setEnabled(enabled);
     }
@@ -86,7 +110,8 @@ public class Pulse implements SoundGenerator, DividerListener, SweepListener {
             case 0:
                 envelop.setRegister(value);
                 lengthCounter.setHalt(envelop.getLoopFlag());
-                sequencer.setSequence(DUTY_CYCLES[(value >> 6) & 3]);
+                duty = (value >> 6) & 3;
+                sequencer.setSequence(DUTY_CYCLES[duty]);
                 break;
             case 1:
                 sweep.setRegister(value);
@@ -110,4 +135,28 @@ public class Pulse implements SoundGenerator, DividerListener, SweepListener {
     public boolean isActive() {
         return lengthCounter.getLengthCounter() > 0;
     }
+
+    public void saveState(ByteBuffer buffer) {
+        envelop.saveState(buffer);
+        timer.saveState(buffer);
+        buffer.put((byte) duty);
+        sequencer.saveState(buffer);
+        sweep.saveState(buffer);
+        lengthCounter.saveState(buffer);
+        buffer.putShort((short) currentPeriod).putShort((short) targetPeriod);
+        StateBuffers.putBoolean(buffer, evenCycle);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        envelop.loadState(buffer);
+        timer.loadState(buffer);
+        duty = buffer.get();
+        sequencer.setSequence(DUTY_CYCLES[duty]);
+        sequencer.loadState(buffer);
+        sweep.loadState(buffer);
+        lengthCounter.loadState(buffer);
+        currentPeriod = buffer.getShort();
+        targetPeriod = buffer.getShort();
+        evenCycle = StateBuffers.getBoolean(buffer);
+    }
 }
@@ -1,5 +1,7 @@
 package me.charlesj.apu;
 
+import java.nio.ByteBuffer;
+
 /**
  * 2020/2/3.
  */
@@ -23,6 +25,22 @@ public class Sequencer {
         sequenceCounter = (sequenceCounter + 1) % sequence.length;
     }
 
+    public void step(int count) {
+        sequenceCounter = (sequenceCounter + count % sequence.length) % sequence.length;
+    }
+
+    /**
+     * @return steps until the output is different, Integer.MAX_VALUE if it never is
+     */
+    public int getStepsToChange() {
+        for (int i = 1; i < sequence.length; i++) {
+            if (sequence[(sequenceCounter + i) % sequence.length] != sequence[sequenceCounter]) {
+                return i;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
     public int output() {
         return sequence[sequenceCounter];
     }
@@ -30,4 +48,15 @@ public class Sequencer {
     public void reset() {
         sequenceCounter = 0;
     }
+
+    /**
+     * Only the position is saved, the sequence belongs to the owner.
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) sequenceCounter);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        sequenceCounter = buffer.get() % sequence.length;
+    }
 }
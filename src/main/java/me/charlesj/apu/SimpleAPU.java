@@ -1,14 +1,35 @@
 package me.charlesj.apu;
 
 import me.charlesj.cpu.CPU;
+import me.charlesj.cpu.IRQLine;
 import me.charlesj.speaker.Speaker;
 
+import java.nio.ByteBuffer;
+
 /**
  * Simple APU implementation.
+ * By default the channels are run lazily: cycles are counted until the next cycle a timer, the frame counter
+ * or a register write changes something, then all of them are skipped at once.
  * 2020/2/3.
  */
 public class SimpleAPU implements APU {
 
+    /**
+     * Nonlinear mixer, indexed by pulse1 + pulse2 and 3 * triangle + 2 * noise + dmc,
+     * scaled so the sum is at most 65535.
+     */
+    private static final int[] PULSE_TABLE = new int[31];
+    private static final int[] TND_TABLE = new int[203];
+
+    static {
+        for (int i = 1; i < PULSE_TABLE.length; i++) {
+            PULSE_TABLE[i] = (int) (95.52 / (8128.0 / i + 100) * 0xFFFF);
+        }
+        for (int i = 1; i < TND_TABLE.length; i++) {
+            TND_TABLE[i] = (int) (163.67 / (24329.0 / i + 100) * 0xFFFF);
+        }
+    }
+
     private SoundGenerator mute = new MuteGenerator();
 
     private Pulse pulse1 = new Pulse(1);
@@ -18,9 +39,37 @@ public class SimpleAPU implements APU {
     private DMC dmc = new DMC();
 
     private SoundGenerator[] generators = {pulse1, pulse2, triangle, noise, dmc};
-    private APURegister r = new APURegister(generators);
+    private APURegister r = new APURegister(generators) {
+        public void setByte(int address, int value) {
+            catchUp();
+            super.setByte(address, value);
+            scheduleNextEvent();
+        }
+    };
+
+    private boolean eventDriven = true;
+    // Cycles not run by the channels yet, and cycles from the last event to the next one
+    private int pendingCycles = 0;
+    private int cyclesToEvent = 1;
+    private int level = 0;
 
     public void cycle(Speaker speaker, CPU cpu) {
+        if (!eventDriven) {
+            step(cpu);
+            level = mix();
+        } else if (++pendingCycles == cyclesToEvent) {
+            skip(pendingCycles - 1);
+            pendingCycles = 0;
+            step(cpu);
+            scheduleNextEvent();
+        }
+        speaker.set(level);
+    }
+
+    /**
+     * Runs the frame counter and the channels for one cycle.
+     */
+    private void step(CPU cpu) {
         int oldPeriod = r.frameCounterTimer / APURegister.FRAME_COUNTER_PERIOD;
         int newPeriod = (r.frameCounterTimer + 1) / APURegister.FRAME_COUNTER_PERIOD;
         if (oldPeriod != newPeriod) {
@@ -47,22 +96,68 @@ public class SimpleAPU implements APU {
             generator.cycle(cpu);
         }
 
-        double pulseOut = 95.88 / ((8128.0 / (pulse1.output() + pulse2.output())) + 100);
-        double tndOut = 159.79 / (100 + 1 / (triangle.output() / 8227.0 + noise.output() / 12241.0 + dmc.output() / 22638.0));
-        double output = pulseOut + tndOut;
+        r.frameCounterTimer++;
+    }
 
-        if (output < 0) output = 0;
-        if (output > 1) output = 1;
+    /**
+     * Runs cycles in which nothing is clocked but the timers.
+     */
+    private void skip(int cycles) {
+        if (cycles > 0) {
+            for (SoundGenerator generator : generators) {
+                generator.skipCycles(cycles);
+            }
+            r.frameCounterTimer += cycles;
+        }
+    }
 
-        speaker.set((int) (output * 255));
+    /**
+     * Runs the pending cycles, so registers can be changed.
+     */
+    private void catchUp() {
+        skip(pendingCycles);
+        pendingCycles = 0;
+    }
 
-        r.frameCounterTimer++;
+    /**
+     * Finds the next cycle a channel or the frame counter does something.
+     * The output level only changes then or when a register is written.
+     */
+    private void scheduleNextEvent() {
+        level = mix();
+        int timer = r.frameCounterTimer;
+        int next = timer <= 0 ? APURegister.FRAME_COUNTER_PERIOD - timer
+                : APURegister.FRAME_COUNTER_PERIOD - timer % APURegister.FRAME_COUNTER_PERIOD;
+        for (SoundGenerator generator : generators) {
+            next = Math.min(next, generator.getCyclesToNextChange());
+        }
+        cyclesToEvent = next;
+    }
+
+    private int mix() {
+        return PULSE_TABLE[pulse1.output() + pulse2.output()]
+                + TND_TABLE[3 * triangle.output() + 2 * noise.output() + dmc.output()];
+    }
+
+    public void setEventDriven(boolean eventDriven) {
+        catchUp();
+        this.eventDriven = eventDriven;
+        scheduleNextEvent();
+    }
+
+    public boolean isEventDriven() {
+        return eventDriven;
     }
 
     public APURegister getRegister() {
         return r;
     }
 
+    public void setIRQLine(IRQLine irqLine) {
+        r.setIRQLine(irqLine);
+        dmc.setIRQLine(irqLine);
+    }
+
     public void writeRegister(int index, int value) {
 
     }
@@ -77,9 +172,29 @@ public class SimpleAPU implements APU {
 
     public void reset() {
         r.reset();
+        pendingCycles = 0;
+        scheduleNextEvent();
     }
 
     public boolean getIRQLevel() {
         return r.getStatusFrameCounterInterrupt() || dmc.getIRQLevel();
     }
+
+    public void saveState(ByteBuffer buffer) {
+        catchUp();
+        scheduleNextEvent();
+        r.saveState(buffer);
+        for (SoundGenerator generator : generators) {
+            generator.saveState(buffer);
+        }
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        r.loadState(buffer);
+        for (SoundGenerator generator : generators) {
+            generator.loadState(buffer);
+        }
+        pendingCycles = 0;
+        scheduleNextEvent();
+    }
 }
@@ -1,13 +1,27 @@
 package me.charlesj.apu;
 
 import me.charlesj.cpu.CPU;
+import me.charlesj.state.Savable;
 
 /**
  * Sound generator interface.
  * 2020/2/3.
  */
-public interface SoundGenerator {
+public interface SoundGenerator extends Savable {
     void cycle(CPU cpu);
+
+    /**
+     * Register writes and frame counter clocks are not counted, the next change is asked again after them.
+     * @return cycle() calls until the output or the state seen by the CPU may change, at least 1,
+     *         Integer.MAX_VALUE if it does not change otherwise
+     */
+    int getCyclesToNextChange();
+
+    /**
+     * Same as calling cycle() this many times, which must be fewer than getCyclesToNextChange().
+     */
+    void skipCycles(int cycles);
+
     void setEnabled(boolean enabled);
     void setRegister(int index, int value);
     int output();
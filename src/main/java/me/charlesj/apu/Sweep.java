@@ -1,5 +1,9 @@
 package me.charlesj.apu;
 
+import me.charlesj.state.StateBuffers;
+
+import java.nio.ByteBuffer;
+
 /**
  * Sweep unit of APU.
  * 2020/2/3.
@@ -65,4 +69,22 @@ public class Sweep implements DividerListener {
     public int getShiftCount() {
         return shiftCount;
     }
+
+    public void saveState(ByteBuffer buffer) {
+        divider.saveState(buffer);
+        StateBuffers.putBoolean(buffer, reloadFlag);
+        StateBuffers.putBoolean(buffer, enabled);
+        buffer.put((byte) period);
+        StateBuffers.putBoolean(buffer, negate);
+        buffer.put((byte) shiftCount);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        divider.loadState(buffer);
+        reloadFlag = StateBuffers.getBoolean(buffer);
+        enabled = StateBuffers.getBoolean(buffer);
+        period = buffer.get();
+        negate = StateBuffers.getBoolean(buffer);
+        shiftCount = buffer.get();
+    }
 }
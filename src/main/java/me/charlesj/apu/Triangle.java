@@ -1,6 +1,9 @@
 package me.charlesj.apu;
 
 import me.charlesj.cpu.CPU;
+import me.charlesj.state.StateBuffers;
+
+import java.nio.ByteBuffer;
 
 /**
  * Triangle generator.
@@ -31,6 +34,21 @@ public class Triangle implements SoundGenerator, DividerListener {
         timer.clock();
     }
 
+    public int getCyclesToNextChange() {
+        if (linearCounter.getValue() == 0 || lengthCounter.getLengthCounter() == 0 || timerPeriod <= 1) {
+            return Integer.MAX_VALUE;
+        }
+        long cycles = timer.getClocksToOutput() + (long) (sequencer.getStepsToChange() - 1) * (timerPeriod + 1);
+        return (int) Math.min(cycles, Integer.MAX_VALUE);
+    }
+
+    public void skipCycles(int cycles) {
+        int steps = timer.skip(cycles);
+        if (linearCounter.getValue() != 0 && lengthCounter.getLengthCounter() != 0) {
+            sequencer.step(steps);
+        }
+    }
+
     public void clockEnvelopAndLinearCounter() {
         if (reloadFlag) {
             linearCounter.reset();
@@ -90,4 +108,25 @@ public class Triangle implements SoundGenerator, DividerListener {
     public boolean isActive() {
         return lengthCounter.getLengthCounter() > 0 && linearCounter.getValue() > 0;
     }
+
+    public void saveState(ByteBuffer buffer) {
+        timer.saveState(buffer);
+        lengthCounter.saveState(buffer);
+        linearCounter.saveState(buffer);
+        StateBuffers.putBoolean(buffer, reloadFlag);
+        StateBuffers.putBoolean(buffer, controlFlag);
+        sequencer.saveState(buffer);
+        buffer.put((byte) counterReload).putShort((short) timerPeriod);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        timer.loadState(buffer);
+        lengthCounter.loadState(buffer);
+        linearCounter.loadState(buffer);
+        reloadFlag = StateBuffers.getBoolean(buffer);
+        controlFlag = StateBuffers.getBoolean(buffer);
+        sequencer.loadState(buffer);
+        counterReload = buffer.get();
+        timerPeriod = buffer.getShort();
+    }
 }
@@ -0,0 +1,62 @@
+package me.charlesj.cpu;
+
+import me.charlesj.memory.PagedMemory;
+
+/**
+ * Decoded blocks of a paged CPU memory by start address, kept per page for the pages code has run from.
+ * A block is dropped when its page is mapped elsewhere by the mapper or when its bytes are written,
+ * and decoded again the next time it is run.
+ */
+final class BlockCache {
+
+    private final PagedMemory memory;
+    private final DecodedBlock[][] blocks;
+    // Decoded into first, blocks keep copies
+    private final int[] opcodes = new int[DecodedBlock.MAX_INSTRUCTIONS];
+    private final int[] operands = new int[DecodedBlock.MAX_INSTRUCTIONS];
+    private final int[] addresses = new int[DecodedBlock.MAX_INSTRUCTIONS + 1];
+
+    BlockCache(PagedMemory memory) {
+        this.memory = memory;
+        this.blocks = new DecodedBlock[memory.getSize() >> PagedMemory.PAGE_SHIFT][];
+    }
+
+    /**
+     * @return current block starting at pc, null if the code there is not read from an array
+     */
+    DecodedBlock get(int pc) {
+        int page = pc >> PagedMemory.PAGE_SHIFT;
+        int index = pc & (PagedMemory.PAGE_SIZE - 1);
+        DecodedBlock[] pageBlocks = blocks[page];
+        DecodedBlock block = pageBlocks != null ? pageBlocks[index] : null;
+        if (block != null && isCurrent(block)) {
+            return block;
+        }
+        byte[] data = memory.getReadData(page);
+        if (data == null) {
+            return null;
+        }
+        if (pageBlocks == null) {
+            pageBlocks = new DecodedBlock[PagedMemory.PAGE_SIZE];
+            blocks[page] = pageBlocks;
+        }
+        block = DecodedBlock.decode(pc, page, data, memory.getReadOffset(page), memory.getCodeVersion(page),
+                opcodes, operands, addresses);
+        pageBlocks[index] = block;
+        memory.watchCode(page);
+        return block;
+    }
+
+    boolean isCurrent(DecodedBlock block) {
+        int page = block.page;
+        return memory.getReadData(page) == block.data && memory.getReadOffset(page) == block.offset
+                && memory.getCodeVersion(page) == block.version;
+    }
+
+    /**
+     * Drops blocks decoded from bytes changed without a write through the memory.
+     */
+    void invalidate() {
+        memory.invalidateCode();
+    }
+}
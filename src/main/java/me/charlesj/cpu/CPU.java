@@ -1,12 +1,14 @@
 package me.charlesj.cpu;
 
 import me.charlesj.memory.Memory;
+import me.charlesj.metrics.Metrics;
+import me.charlesj.state.Savable;
 
 /**
  * CPU interface.
  * 2020/1/22.
  */
-public interface CPU {
+public interface CPU extends Savable {
     void setMemory(Memory memory);
     Memory getMemory();
     long execute();
@@ -16,5 +18,38 @@ public interface CPU {
     void reset();
     void powerUp();
     void nmi();
-    void addIRQGenerator(IRQGenerator generator);
+
+    /**
+     * @return line the IRQ sources assert, tested before each instruction
+     */
+    IRQLine getIRQLine();
+
+    /**
+     * @return DMA unit reading this CPU's memory, adding the cycles it halts the CPU for
+     */
+    DMA getDMA();
+
+    /**
+     * @param metrics counts interrupts taken, null for none
+     */
+    void setMetrics(Metrics metrics);
+
+    /**
+     * NMI latency is picked at random, the generator is saved with the state.
+     * Machines seeded alike run alike given the same input.
+     */
+    void setRandomSeed(long seed);
+
+    /**
+     * @param enabled true to run code decoded into blocks ahead instead of decoding each instruction.
+     *                Only code read from arrays of a PagedMemory is decoded, the rest is interpreted.
+     */
+    void setBlockCache(boolean enabled);
+    boolean isBlockCache();
+
+    /**
+     * Called when memory changed without a write through the CPU, e.g. a state was loaded,
+     * so code decoded from it is dropped.
+     */
+    void invalidateBlocks();
 }
@@ -1,10 +1,16 @@
 package me.charlesj.cpu;
 
+import me.charlesj.state.Savable;
+
+import java.nio.ByteBuffer;
+
 /**
  * Registers used by cpu.
+ * Zero and negative flags are evaluated lazily: the values they were last set by are kept, and tested when the
+ * flags are read. Carry is kept as 0 or 1 to be added directly. getFlags() puts them back together.
  * 2020/1/22.
  */
-public class CPURegister {
+public class CPURegister implements Savable {
     static final int MASK_NEGATIVE = 0x80;
     static final int MASK_OVERFLOW = 0x40;
     static final int MASK_BREAK = 0x10;
@@ -18,22 +24,27 @@ public class CPURegister {
     private int y;
     private int sp;
     private int pc;
+    // Flags but negative, zero and carry
     private int flags;
+    // Zero is set if the low byte is 0, negative is bit 7
+    private int zeroValue;
+    private int negativeValue;
+    private int carry;
 
     void reset() {
         a = 0;
         x = 0;
         y = 0;
         sp = 0xfd;
-        flags = 0x34;
+        setFlags(0x34);
     }
 
     public int getCarry() {
-        return isCarry() ? 1 : 0;
+        return carry;
     }
 
     public boolean isNegative() {
-        return (flags & MASK_NEGATIVE) != 0;
+        return (negativeValue & MASK_NEGATIVE) != 0;
     }
 
     public boolean isOverflow() {
@@ -53,15 +64,15 @@ public class CPURegister {
     }
 
     public boolean isZero() {
-        return (flags & MASK_ZERO) != 0;
+        return (zeroValue & 0xFF) == 0;
     }
 
     public boolean isCarry() {
-        return (flags & MASK_CARRY) != 0;
+        return carry != 0;
     }
 
     public void setNegative() {
-        flags |= MASK_NEGATIVE;
+        negativeValue = MASK_NEGATIVE;
     }
 
     public void setOverflow() {
@@ -81,15 +92,15 @@ public class CPURegister {
     }
 
     public void setZero() {
-        flags |= MASK_ZERO;
+        zeroValue = 0;
     }
 
     public void setCarry() {
-        flags |= MASK_CARRY;
+        carry = 1;
     }
 
     public void clearNegative() {
-        flags &= ~MASK_NEGATIVE;
+        negativeValue = 0;
     }
 
     public void clearOverflow() {
@@ -109,11 +120,11 @@ public class CPURegister {
     }
 
     public void clearZero() {
-        flags &= ~MASK_ZERO;
+        zeroValue = 1;
     }
 
     public void clearCarry() {
-        flags &= ~MASK_CARRY;
+        carry = 0;
     }
 
     public void setNegative(boolean v) {
@@ -129,7 +140,23 @@ public class CPURegister {
     }
 
     public void setCarry(boolean v) {
-        if (v) setCarry(); else clearCarry();
+        carry = v ? 1 : 0;
+    }
+
+    /**
+     * Sets zero and negative by the low byte of a result.
+     */
+    void setZeroAndNegativeByValue(int v) {
+        zeroValue = v;
+        negativeValue = v;
+    }
+
+    void setZeroByValue(int v) {
+        zeroValue = v;
+    }
+
+    void setNegativeByValue(int v) {
+        negativeValue = v;
     }
 
     public int getA() {
@@ -153,7 +180,7 @@ public class CPURegister {
     }
 
     public int getFlags() {
-        return flags;
+        return flags | (negativeValue & MASK_NEGATIVE) | (isZero() ? MASK_ZERO : 0) | carry;
     }
 
     void setA(int a) {
@@ -177,6 +204,22 @@ public class CPURegister {
     }
 
     void setFlags(int flags) {
-        this.flags = flags & 0xFF;
+        this.flags = flags & 0xFF & ~(MASK_NEGATIVE | MASK_ZERO | MASK_CARRY);
+        negativeValue = flags;
+        zeroValue = (flags & MASK_ZERO) != 0 ? 0 : 1;
+        carry = flags & MASK_CARRY;
+    }
+
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) a).put((byte) x).put((byte) y).put((byte) sp).putShort((short) pc).put((byte) getFlags());
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        a = buffer.get() & 0xFF;
+        x = buffer.get() & 0xFF;
+        y = buffer.get() & 0xFF;
+        sp = buffer.get() & 0xFF;
+        pc = buffer.getShort() & 0xFFFF;
+        setFlags(buffer.get() & 0xFF);
     }
 }
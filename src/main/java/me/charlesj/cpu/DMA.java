@@ -0,0 +1,44 @@
+package me.charlesj.cpu;
+
+import me.charlesj.memory.Memory;
+
+/**
+ * DMA unit of the CPU, reading CPU memory for sprite transfers and DMC samples.
+ * The CPU is halted while it runs, the cycles are added to the CPU.
+ */
+public class DMA {
+
+    /**
+     * Cycles of a sprite transfer, one more when started on an odd cycle to align to a read.
+     */
+    public static final int SPRITE_CYCLES = 513;
+    /**
+     * Cycles the CPU is stalled for one DMC sample fetch.
+     */
+    public static final int DMC_CYCLES = 4;
+
+    private final CPU cpu;
+    private final byte[] buffer = new byte[0x100];
+
+    public DMA(CPU cpu) {
+        this.cpu = cpu;
+    }
+
+    /**
+     * Copies $XX00-$XXFF of CPU memory to [0, $100) of destination.
+     * Byte-backed pages are copied at once, see Memory.getBytes().
+     */
+    public void transferPage(int page, Memory destination) {
+        cpu.increaseCycle(SPRITE_CYCLES + (int) (cpu.getCycle() & 1));
+        cpu.getMemory().getBytes((page & 0xFF) << 8, buffer, 0, buffer.length);
+        destination.setBytes(0, buffer, 0, buffer.length);
+    }
+
+    /**
+     * @return the sample byte at address, read for the DMC
+     */
+    public int fetchSample(int address) {
+        cpu.increaseCycle(DMC_CYCLES);
+        return cpu.getMemory().getByte(address);
+    }
+}
@@ -0,0 +1,105 @@
+package me.charlesj.cpu;
+
+import java.util.Arrays;
+
+/**
+ * Straight-line code decoded from one page of CPU memory.
+ * Ends after an instruction changing the program counter, before one not fitting the page, or at an unknown opcode.
+ * Operands are read once here: the effective address for zero page and absolute modes,
+ * the operand address for immediate and relative modes, and the base or pointer for the others.
+ */
+final class DecodedBlock {
+
+    static final int MAX_INSTRUCTIONS = 32;
+
+    // Mapping and code version of the page the block was decoded from
+    final int page;
+    final byte[] data;
+    final int offset;
+    final int version;
+
+    final int length;
+    final int[] opcodes;
+    final int[] operands;
+    // Address of each instruction, the one after the last at [length]
+    final int[] addresses;
+
+    private DecodedBlock(int page, byte[] data, int offset, int version, int length,
+                         int[] opcodes, int[] operands, int[] addresses) {
+        this.page = page;
+        this.data = data;
+        this.offset = offset;
+        this.version = version;
+        this.length = length;
+        this.opcodes = opcodes;
+        this.operands = operands;
+        this.addresses = addresses;
+    }
+
+    /**
+     * Decodes into scratch arrays reused by the caller, the block gets copies of its length.
+     * @param opcodes scratch of MAX_INSTRUCTIONS
+     * @param operands scratch of MAX_INSTRUCTIONS
+     * @param addresses scratch of MAX_INSTRUCTIONS + 1
+     * @return block starting at pc, null if not even the first instruction can be decoded
+     */
+    static DecodedBlock decode(int pc, int page, byte[] data, int offset, int version,
+                               int[] opcodes, int[] operands, int[] addresses) {
+        int length = 0;
+        while (length < MAX_INSTRUCTIONS) {
+            int opcode = data[offset + (pc & 0xFF)] & 0xFF;
+            int entry = Opcodes.TABLE[opcode];
+            int instruction = Opcodes.instruction(entry);
+            int mode = Opcodes.mode(entry);
+            int size = Opcodes.operandSize(mode);
+            if (instruction == Opcodes.ILLEGAL || ((pc + size) >> 8) != page) {
+                break;
+            }
+            int operand;
+            if (mode == Opcodes.IMMEDIATE || mode == Opcodes.RELATIVE) {
+                operand = pc + 1;
+            } else if (size == 1) {
+                operand = data[offset + ((pc + 1) & 0xFF)] & 0xFF;
+            } else if (size == 2) {
+                operand = (data[offset + ((pc + 1) & 0xFF)] & 0xFF) | ((data[offset + ((pc + 2) & 0xFF)] & 0xFF) << 8);
+            } else {
+                operand = 0;
+            }
+            opcodes[length] = opcode;
+            operands[length] = operand;
+            addresses[length] = pc;
+            length++;
+            pc += 1 + size;
+            if (endsBlock(instruction)) {
+                break;
+            }
+        }
+        if (length == 0) {
+            return null;
+        }
+        addresses[length] = pc & 0xFFFF;
+        return new DecodedBlock(page, data, offset, version, length, Arrays.copyOf(opcodes, length),
+                Arrays.copyOf(operands, length), Arrays.copyOf(addresses, length + 1));
+    }
+
+    private static boolean endsBlock(int instruction) {
+        switch (instruction) {
+            case Opcodes.BCC:
+            case Opcodes.BCS:
+            case Opcodes.BEQ:
+            case Opcodes.BMI:
+            case Opcodes.BNE:
+            case Opcodes.BPL:
+            case Opcodes.BVC:
+            case Opcodes.BVS:
+            case Opcodes.BRK:
+            case Opcodes.JMP:
+            case Opcodes.JSR:
+            case Opcodes.RTI:
+            case Opcodes.RTS:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package me.charlesj.cpu;
+
+/**
+ * The IRQ input of the CPU, shared by every source pulling it low.
+ * Each source owns a bit and updates it when its state changes, so the CPU tests one int per instruction.
+ */
+public class IRQLine {
+
+    public static final int FRAME_COUNTER = 1;
+    public static final int DMC = 1 << 1;
+    public static final int MAPPER = 1 << 2;
+
+    private int sources = 0;
+
+    /**
+     * @param source bit of the source
+     * @param asserted true to pull the line low, false to release it
+     */
+    public void set(int source, boolean asserted) {
+        if (asserted) {
+            sources |= source;
+        } else {
+            sources &= ~source;
+        }
+    }
+
+    /**
+     * @return true if any source pulls the line low
+     */
+    public boolean isAsserted() {
+        return sources != 0;
+    }
+
+    /**
+     * @return bits of the sources pulling the line low
+     */
+    public int getSources() {
+        return sources;
+    }
+}
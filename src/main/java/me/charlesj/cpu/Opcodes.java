@@ -0,0 +1,259 @@
+package me.charlesj.cpu;
+
+/**
+ * 256-entry opcode table of the 6502, built once at class load.
+ * Each entry packs instruction, addressing mode, base cycles and the page crossing penalty flag into one int,
+ * so decoding an opcode is one array load.
+ * Unofficial opcodes are left ILLEGAL.
+ */
+final class Opcodes {
+
+    // Instructions
+    static final int ILLEGAL = 0;
+    static final int ADC = 1;
+    static final int AND = 2;
+    static final int ASL = 3;
+    static final int ASL_A = 4;
+    static final int BCC = 5;
+    static final int BCS = 6;
+    static final int BEQ = 7;
+    static final int BIT = 8;
+    static final int BMI = 9;
+    static final int BNE = 10;
+    static final int BPL = 11;
+    static final int BRK = 12;
+    static final int BVC = 13;
+    static final int BVS = 14;
+    static final int CLC = 15;
+    static final int CLD = 16;
+    static final int CLI = 17;
+    static final int CLV = 18;
+    static final int CMP = 19;
+    static final int CPX = 20;
+    static final int CPY = 21;
+    static final int DEC = 22;
+    static final int DEX = 23;
+    static final int DEY = 24;
+    static final int EOR = 25;
+    static final int INC = 26;
+    static final int INX = 27;
+    static final int INY = 28;
+    static final int JMP = 29;
+    static final int JSR = 30;
+    static final int LDA = 31;
+    static final int LDX = 32;
+    static final int LDY = 33;
+    static final int LSR = 34;
+    static final int LSR_A = 35;
+    static final int NOP = 36;
+    static final int ORA = 37;
+    static final int PHA = 38;
+    static final int PHP = 39;
+    static final int PLA = 40;
+    static final int PLP = 41;
+    static final int ROL = 42;
+    static final int ROL_A = 43;
+    static final int ROR = 44;
+    static final int ROR_A = 45;
+    static final int RTI = 46;
+    static final int RTS = 47;
+    static final int SBC = 48;
+    static final int SEC = 49;
+    static final int SED = 50;
+    static final int SEI = 51;
+    static final int STA = 52;
+    static final int STX = 53;
+    static final int STY = 54;
+    static final int TAX = 55;
+    static final int TAY = 56;
+    static final int TSX = 57;
+    static final int TXA = 58;
+    static final int TXS = 59;
+    static final int TYA = 60;
+
+    // Addressing modes
+    static final int IMPLIED = 0;
+    static final int IMMEDIATE = 1;
+    static final int ZERO_PAGE = 2;
+    static final int ZERO_PAGE_X = 3;
+    static final int ZERO_PAGE_Y = 4;
+    static final int ABSOLUTE = 5;
+    static final int ABSOLUTE_X = 6;
+    static final int ABSOLUTE_Y = 7;
+    static final int INDIRECT = 8;
+    static final int INDIRECT_X = 9;
+    static final int INDIRECT_Y = 10;
+    static final int RELATIVE = 11;
+
+    private static final int MODE_SHIFT = 8;
+    private static final int CYCLES_SHIFT = 12;
+    private static final int PAGE_CROSS_PENALTY = 1 << 16;
+
+    static final int[] TABLE = new int[256];
+
+    static {
+        // Instructions with the standard ALU addressing modes
+        alu(ADC, 0x69, 0x65, 0x75, 0x6D, 0x7D, 0x79, 0x61, 0x71);
+        alu(AND, 0x29, 0x25, 0x35, 0x2D, 0x3D, 0x39, 0x21, 0x31);
+        alu(CMP, 0xC9, 0xC5, 0xD5, 0xCD, 0xDD, 0xD9, 0xC1, 0xD1);
+        alu(EOR, 0x49, 0x45, 0x55, 0x4D, 0x5D, 0x59, 0x41, 0x51);
+        alu(LDA, 0xA9, 0xA5, 0xB5, 0xAD, 0xBD, 0xB9, 0xA1, 0xB1);
+        alu(ORA, 0x09, 0x05, 0x15, 0x0D, 0x1D, 0x19, 0x01, 0x11);
+        alu(SBC, 0xE9, 0xE5, 0xF5, 0xED, 0xFD, 0xF9, 0xE1, 0xF1);
+
+        define(0x85, STA, ZERO_PAGE, 3, false);
+        define(0x95, STA, ZERO_PAGE_X, 4, false);
+        define(0x8D, STA, ABSOLUTE, 4, false);
+        define(0x9D, STA, ABSOLUTE_X, 5, false);
+        define(0x99, STA, ABSOLUTE_Y, 5, false);
+        define(0x81, STA, INDIRECT_X, 6, false);
+        define(0x91, STA, INDIRECT_Y, 6, false);
+
+        // Read-modify-write
+        shift(ASL, ASL_A, 0x0A, 0x06, 0x16, 0x0E, 0x1E);
+        shift(LSR, LSR_A, 0x4A, 0x46, 0x56, 0x4E, 0x5E);
+        shift(ROL, ROL_A, 0x2A, 0x26, 0x36, 0x2E, 0x3E);
+        shift(ROR, ROR_A, 0x6A, 0x66, 0x76, 0x6E, 0x7E);
+
+        define(0xC6, DEC, ZERO_PAGE, 5, false);
+        define(0xD6, DEC, ZERO_PAGE_X, 6, false);
+        define(0xCE, DEC, ABSOLUTE, 6, false);
+        define(0xDE, DEC, ABSOLUTE_X, 7, false);
+        define(0xE6, INC, ZERO_PAGE, 5, false);
+        define(0xF6, INC, ZERO_PAGE_X, 6, false);
+        define(0xEE, INC, ABSOLUTE, 6, false);
+        define(0xFE, INC, ABSOLUTE_X, 7, false);
+
+        // X and Y
+        define(0xA2, LDX, IMMEDIATE, 2, false);
+        define(0xA6, LDX, ZERO_PAGE, 3, false);
+        define(0xB6, LDX, ZERO_PAGE_Y, 4, false);
+        define(0xAE, LDX, ABSOLUTE, 4, false);
+        define(0xBE, LDX, ABSOLUTE_Y, 4, true);
+        define(0xA0, LDY, IMMEDIATE, 2, false);
+        define(0xA4, LDY, ZERO_PAGE, 3, false);
+        define(0xB4, LDY, ZERO_PAGE_X, 4, false);
+        define(0xAC, LDY, ABSOLUTE, 4, false);
+        define(0xBC, LDY, ABSOLUTE_X, 4, true);
+        define(0x86, STX, ZERO_PAGE, 3, false);
+        define(0x96, STX, ZERO_PAGE_Y, 4, false);
+        define(0x8E, STX, ABSOLUTE, 4, false);
+        define(0x84, STY, ZERO_PAGE, 3, false);
+        define(0x94, STY, ZERO_PAGE_X, 4, false);
+        define(0x8C, STY, ABSOLUTE, 4, false);
+        define(0xE0, CPX, IMMEDIATE, 2, false);
+        define(0xE4, CPX, ZERO_PAGE, 3, false);
+        define(0xEC, CPX, ABSOLUTE, 4, false);
+        define(0xC0, CPY, IMMEDIATE, 2, false);
+        define(0xC4, CPY, ZERO_PAGE, 3, false);
+        define(0xCC, CPY, ABSOLUTE, 4, false);
+
+        define(0x24, BIT, ZERO_PAGE, 3, false);
+        define(0x2C, BIT, ABSOLUTE, 4, false);
+
+        // Branches. Taken and page crossing cycles are added when executed.
+        define(0x10, BPL, RELATIVE, 2, false);
+        define(0x30, BMI, RELATIVE, 2, false);
+        define(0x50, BVC, RELATIVE, 2, false);
+        define(0x70, BVS, RELATIVE, 2, false);
+        define(0x90, BCC, RELATIVE, 2, false);
+        define(0xB0, BCS, RELATIVE, 2, false);
+        define(0xD0, BNE, RELATIVE, 2, false);
+        define(0xF0, BEQ, RELATIVE, 2, false);
+
+        // Flags
+        define(0x18, CLC, IMPLIED, 2, false);
+        define(0x38, SEC, IMPLIED, 2, false);
+        define(0x58, CLI, IMPLIED, 2, false);
+        define(0x78, SEI, IMPLIED, 2, false);
+        define(0xB8, CLV, IMPLIED, 2, false);
+        define(0xD8, CLD, IMPLIED, 2, false);
+        define(0xF8, SED, IMPLIED, 2, false);
+
+        // Jumps and stack
+        define(0x00, BRK, IMPLIED, 7, false);
+        define(0x4C, JMP, ABSOLUTE, 3, false);
+        define(0x6C, JMP, INDIRECT, 5, false);
+        define(0x20, JSR, ABSOLUTE, 6, false);
+        define(0x40, RTI, IMPLIED, 6, false);
+        define(0x60, RTS, IMPLIED, 6, false);
+        define(0x48, PHA, IMPLIED, 3, false);
+        define(0x08, PHP, IMPLIED, 3, false);
+        define(0x68, PLA, IMPLIED, 4, false);
+        define(0x28, PLP, IMPLIED, 4, false);
+
+        // Register transfers
+        define(0xCA, DEX, IMPLIED, 2, false);
+        define(0x88, DEY, IMPLIED, 2, false);
+        define(0xE8, INX, IMPLIED, 2, false);
+        define(0xC8, INY, IMPLIED, 2, false);
+        define(0xAA, TAX, IMPLIED, 2, false);
+        define(0xA8, TAY, IMPLIED, 2, false);
+        define(0xBA, TSX, IMPLIED, 2, false);
+        define(0x8A, TXA, IMPLIED, 2, false);
+        define(0x9A, TXS, IMPLIED, 2, false);
+        define(0x98, TYA, IMPLIED, 2, false);
+
+        define(0xEA, NOP, IMPLIED, 2, false);
+    }
+
+    private Opcodes() {}
+
+    static int instruction(int entry) {
+        return entry & 0xFF;
+    }
+
+    static int mode(int entry) {
+        return (entry >> MODE_SHIFT) & 0xF;
+    }
+
+    static int cycles(int entry) {
+        return (entry >> CYCLES_SHIFT) & 0xF;
+    }
+
+    static boolean hasPageCrossPenalty(int entry) {
+        return (entry & PAGE_CROSS_PENALTY) != 0;
+    }
+
+    /**
+     * @return bytes following the opcode
+     */
+    static int operandSize(int mode) {
+        switch (mode) {
+            case IMPLIED:
+                return 0;
+            case ABSOLUTE:
+            case ABSOLUTE_X:
+            case ABSOLUTE_Y:
+            case INDIRECT:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private static void define(int opcode, int instruction, int mode, int cycles, boolean pageCrossPenalty) {
+        TABLE[opcode] = instruction | (mode << MODE_SHIFT) | (cycles << CYCLES_SHIFT) | (pageCrossPenalty ? PAGE_CROSS_PENALTY : 0);
+    }
+
+    private static void alu(int instruction, int immediate, int zeroPage, int zeroPageX, int absolute,
+                            int absoluteX, int absoluteY, int indirectX, int indirectY) {
+        define(immediate, instruction, IMMEDIATE, 2, false);
+        define(zeroPage, instruction, ZERO_PAGE, 3, false);
+        define(zeroPageX, instruction, ZERO_PAGE_X, 4, false);
+        define(absolute, instruction, ABSOLUTE, 4, false);
+        define(absoluteX, instruction, ABSOLUTE_X, 4, true);
+        define(absoluteY, instruction, ABSOLUTE_Y, 4, true);
+        define(indirectX, instruction, INDIRECT_X, 6, false);
+        define(indirectY, instruction, INDIRECT_Y, 5, true);
+    }
+
+    private static void shift(int instruction, int accumulatorInstruction, int accumulator, int zeroPage,
+                              int zeroPageX, int absolute, int absoluteX) {
+        define(accumulator, accumulatorInstruction, IMPLIED, 2, false);
+        define(zeroPage, instruction, ZERO_PAGE, 5, false);
+        define(zeroPageX, instruction, ZERO_PAGE_X, 6, false);
+        define(absolute, instruction, ABSOLUTE, 6, false);
+        define(absoluteX, instruction, ABSOLUTE_X, 7, false);
+    }
+}
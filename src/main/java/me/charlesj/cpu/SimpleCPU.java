@@ -1,10 +1,10 @@
 package me.charlesj.cpu;
 
 import me.charlesj.memory.Memory;
+import me.charlesj.memory.PagedMemory;
+import me.charlesj.metrics.Metrics;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.nio.ByteBuffer;
 
 /**
  * Simple 6502 CPU implementation.
@@ -13,15 +13,28 @@ import java.util.Random;
  */
 public class SimpleCPU implements CPU {
 
-    private static final Random RAND = new Random();
-
     private Memory m = null;
     private CPURegister r = new CPURegister();
     private long cycle = 0;
 
-    private List<IRQGenerator> irqGenerators = new ArrayList<IRQGenerator>();
+    // 48-bit linear congruential generator of java.util.Random deciding NMI latency.
+    // Per instance, so CPUs on different threads never contend on it, and saved with the state.
+    private static final long RANDOM_MULTIPLIER = 0x5DEECE66DL;
+    private static final long RANDOM_MASK = (1L << 48) - 1;
+    private long random = (System.nanoTime() ^ RANDOM_MULTIPLIER) & RANDOM_MASK;
+
+    private final IRQLine irqLine = new IRQLine();
+    private final DMA dma = new DMA(this);
     private int pendingNMI = 0;
 
+    private Metrics metrics;
+
+    // Decoded code, used instead of fetching and decoding each instruction when enabled and the memory is paged
+    private boolean blockCacheEnabled = false;
+    private BlockCache blockCache;
+    private DecodedBlock block;
+    private int blockIndex;
+
     public long execute() {
         if (checkIRQ()) {
             return cycle;
@@ -34,592 +47,343 @@ public class SimpleCPU implements CPU {
             return cycle;
         }
 
-        int opcode = m.getByte(r.getPc());
-        int opcodeRow = opcode & 0xE3;
-        int addressingMethod = (opcode >> 2) & 7;
+        if (blockCache != null) {
+            int pc = r.getPc();
+            DecodedBlock b = block;
+            if (b == null || blockIndex >= b.length || b.addresses[blockIndex] != pc || !blockCache.isCurrent(b)) {
+                b = blockCache.get(pc);
+                block = b;
+                blockIndex = 0;
+            }
+            if (b != null) {
+                int i = blockIndex++;
+                int opcode = b.opcodes[i];
+                int entry = Opcodes.TABLE[opcode];
+                r.setPc(b.addresses[i + 1]);
+                cycle += Opcodes.cycles(entry);
+                run(opcode, entry, resolveAddress(Opcodes.mode(entry), b.operands[i], Opcodes.hasPageCrossPenalty(entry)));
+                return cycle;
+            }
+        }
 
+        int opcode = m.getByte(r.getPc());
         r.setPc(r.getPc() + 1);
 
-        switch (opcodeRow) {
-            case 0x01: //ORA
-                return ora(addressingMethod);
-            case 0x21: //AND
-                return and(addressingMethod);
-            case 0x41: //XOR
-                return xor(addressingMethod);
-            case 0x61: //ADC
-                return adc(addressingMethod);
-            case 0x81: //STA
-                if (addressingMethod != 2)
-                    return sta(addressingMethod);
-                break;
-            case 0xA1: //LDA
-                return lda(addressingMethod);
-            case 0xC1: //CMP
-                return cmp(addressingMethod);
-            case 0xE1: //SBC
-                return sbc(addressingMethod);
-            case 0x02: //ASL
-                if (addressingMethod == 2 || (addressingMethod & 1) == 1)
-                    return asl(addressingMethod);
-                break;
-            case 0x22: //ROL
-                if (addressingMethod == 2 || (addressingMethod & 1) == 1)
-                    return rol(addressingMethod);
-                break;
-            case 0x42: //LSR
-                if (addressingMethod == 2 || (addressingMethod & 1) == 1)
-                    return lsr(addressingMethod);
-                break;
-            case 0x62: //ROR
-                if (addressingMethod == 2 || (addressingMethod & 1) == 1)
-                    return ror(addressingMethod);
-                break;
-            case 0x82: //STX
-                if (addressingMethod != 7 && (addressingMethod & 1) == 1)
-                    return stx(addressingMethod);
-                break;
-            case 0xA2: //LDX
-                if (addressingMethod == 0 || (addressingMethod & 1) == 1)
-                    return ldx(addressingMethod);
-                break;
-            case 0xC2: //DEC
-                if ((addressingMethod & 1) == 1)
-                    return dec(addressingMethod);
-                break;
-            case 0xE2: //INC
-                if ((addressingMethod & 1) == 1)
-                    return inc(addressingMethod);
-                break;
-            case 0x80: //STY
-                if (addressingMethod != 7 && (addressingMethod & 1) == 1)
-                    return sty(addressingMethod);
-                break;
-            case 0xA0: //LDY
-                if (addressingMethod == 0 || (addressingMethod & 1) == 1)
-                    return ldy(addressingMethod);
-                break;
-            case 0xC0: //CPY
-                if (addressingMethod < 2 || addressingMethod == 3)
-                    return cpy(addressingMethod);
-                break;
-            case 0xE0: //CPX
-                if (addressingMethod < 2 || addressingMethod == 3)
-                    return cpx(addressingMethod);
+        int entry = Opcodes.TABLE[opcode];
+        cycle += Opcodes.cycles(entry);
+        run(opcode, entry, getAddress(Opcodes.mode(entry), Opcodes.hasPageCrossPenalty(entry)));
+        return cycle;
+    }
+
+    private void run(int opcode, int entry, int address) {
+        switch (Opcodes.instruction(entry)) {
+            case Opcodes.ADC:
+                adc(m.getByte(address));
                 break;
-            default:
+            case Opcodes.AND:
+                and(m.getByte(address));
                 break;
+            case Opcodes.ASL:
+                asl(address);
+                break;
+            case Opcodes.ASL_A:
+                aslA();
+                break;
+            case Opcodes.BCC:
+                branch(address, !r.isCarry());
+                break;
+            case Opcodes.BCS:
+                branch(address, r.isCarry());
+                break;
+            case Opcodes.BEQ:
+                branch(address, r.isZero());
+                break;
+            case Opcodes.BIT:
+                bit(m.getByte(address));
+                break;
+            case Opcodes.BMI:
+                branch(address, r.isNegative());
+                break;
+            case Opcodes.BNE:
+                branch(address, !r.isZero());
+                break;
+            case Opcodes.BPL:
+                branch(address, !r.isNegative());
+                break;
+            case Opcodes.BRK:
+                brk();
+                break;
+            case Opcodes.BVC:
+                branch(address, !r.isOverflow());
+                break;
+            case Opcodes.BVS:
+                branch(address, r.isOverflow());
+                break;
+            case Opcodes.CLC:
+                r.clearCarry();
+                break;
+            case Opcodes.CLD:
+                r.clearDecimal();
+                break;
+            case Opcodes.CLI:
+                r.clearDisableInterrupt();
+                break;
+            case Opcodes.CLV:
+                r.clearOverflow();
+                break;
+            case Opcodes.CMP:
+                compare(r.getA(), m.getByte(address));
+                break;
+            case Opcodes.CPX:
+                compare(r.getX(), m.getByte(address));
+                break;
+            case Opcodes.CPY:
+                compare(r.getY(), m.getByte(address));
+                break;
+            case Opcodes.DEC:
+                dec(address);
+                break;
+            case Opcodes.DEX:
+                r.setX(setZeroAndNegativeByValue(r.getX() - 1));
+                break;
+            case Opcodes.DEY:
+                r.setY(setZeroAndNegativeByValue(r.getY() - 1));
+                break;
+            case Opcodes.EOR:
+                xor(m.getByte(address));
+                break;
+            case Opcodes.INC:
+                inc(address);
+                break;
+            case Opcodes.INX:
+                r.setX(setZeroAndNegativeByValue(r.getX() + 1));
+                break;
+            case Opcodes.INY:
+                r.setY(setZeroAndNegativeByValue(r.getY() + 1));
+                break;
+            case Opcodes.JMP:
+                r.setPc(address);
+                break;
+            case Opcodes.JSR:
+                jsr(address);
+                break;
+            case Opcodes.LDA:
+                r.setA(setZeroAndNegativeByValue(m.getByte(address)));
+                break;
+            case Opcodes.LDX:
+                r.setX(setZeroAndNegativeByValue(m.getByte(address)));
+                break;
+            case Opcodes.LDY:
+                r.setY(setZeroAndNegativeByValue(m.getByte(address)));
+                break;
+            case Opcodes.LSR:
+                lsr(address);
+                break;
+            case Opcodes.LSR_A:
+                lsrA();
+                break;
+            case Opcodes.NOP:
+                break;
+            case Opcodes.ORA:
+                ora(m.getByte(address));
+                break;
+            case Opcodes.PHA:
+                push(r.getA());
+                break;
+            case Opcodes.PHP:
+                push(r.getFlags());
+                break;
+            case Opcodes.PLA:
+                r.setA(setZeroAndNegativeByValue(pop()));
+                break;
+            case Opcodes.PLP:
+                r.setFlags(pop());
+                break;
+            case Opcodes.ROL:
+                rol(address);
+                break;
+            case Opcodes.ROL_A:
+                rolA();
+                break;
+            case Opcodes.ROR:
+                ror(address);
+                break;
+            case Opcodes.ROR_A:
+                rorA();
+                break;
+            case Opcodes.RTI:
+                rti();
+                break;
+            case Opcodes.RTS:
+                rts();
+                break;
+            case Opcodes.SBC:
+                sbc(m.getByte(address));
+                break;
+            case Opcodes.SEC:
+                r.setCarry();
+                break;
+            case Opcodes.SED:
+                r.setDecimal();
+                break;
+            case Opcodes.SEI:
+                r.setDisableInterrupt();
+                break;
+            case Opcodes.STA:
+                setMemoryValue(address, r.getA());
+                break;
+            case Opcodes.STX:
+                setMemoryValue(address, r.getX());
+                break;
+            case Opcodes.STY:
+                setMemoryValue(address, r.getY());
+                break;
+            case Opcodes.TAX:
+                r.setX(setZeroAndNegativeByValue(r.getA()));
+                break;
+            case Opcodes.TAY:
+                r.setY(setZeroAndNegativeByValue(r.getA()));
+                break;
+            case Opcodes.TSX:
+                r.setX(setZeroAndNegativeByValue(r.getSp()));
+                break;
+            case Opcodes.TXA:
+                r.setA(setZeroAndNegativeByValue(r.getX()));
+                break;
+            case Opcodes.TXS:
+                //possibly not changed
+                r.setSp(r.getX());
+                break;
+            case Opcodes.TYA:
+                r.setA(setZeroAndNegativeByValue(r.getY()));
+                break;
+            default:
+                throw new RuntimeException("Unknown opcode " + Integer.toHexString(opcode));
         }
-
-        int col = opcode & 0x1F;
-        if (col == 0x10) {
-            return branch(opcode >> 5);
-        }
-        if (col == 0x18 && opcode != 0x98) {
-            return status(opcode >> 5);
-        }
-
-        switch (opcode) {
-            case 0x00:
-                return brk();
-            case 0x24:
-            case 0x2C:
-                return bit(addressingMethod);
-            case 0x4C:
-            case 0x6C:
-                return jmp(opcode);
-            case 0x20:
-                return jsr();
-            case 0xEA:
-                return nop();
-            case 0x40:
-                return rti();
-            case 0x60:
-                return rts();
-            case 0x88:
-                return dey();
-            case 0xCA:
-                return dex();
-            case 0xC8:
-                return iny();
-            case 0xE8:
-                return inx();
-            case 0x8A:
-                return txa();
-            case 0xAA:
-                return tax();
-            case 0x98:
-                return tya();
-            case 0xA8:
-                return tay();
-            case 0x9A:
-                return txs();
-            case 0xBA:
-                return tsx();
-            case 0x08:
-                return php();
-            case 0x28:
-                return plp();
-            case 0x48:
-                return pha();
-            case 0x68:
-                return pla();
-        }
-
-        throw new RuntimeException("Unknown opcode " + Integer.toHexString(opcode));
     }
 
-    private long nop() {
-        cycle += 2;
-        return cycle;
-    }
-
-    private long adc(int addressingMethod) {
-        int value = getValue1(addressingMethod, false);
+    private void adc(int value) {
         int v = r.getA() + value + r.getCarry();
         r.setCarry(v > 255);
-        r.setOverflow(((v & 0x80) == 0 && (r.getA() & 0x80) != 0 && (value & 0x80) != 0) || ((v & 0x80) != 0 && (r.getA() & 0x80) == 0 && (value & 0x80) == 0));
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setA(v & 0xFF);
-        return cycle;
+        r.setOverflow(((r.getA() ^ v) & (value ^ v) & 0x80) != 0);
+        r.setA(setZeroAndNegativeByValue(v));
     }
 
-    private long sbc(int addressingMethod) {
-        int value = getValue1(addressingMethod, false);
+    private void sbc(int value) {
         int v = r.getA() - value - (1 - r.getCarry());
         r.setCarry(v >= 0);
-        r.setOverflow(((v & 0x80) == 0 && (r.getA() & 0x80) != 0 && (value & 0x80) == 0) || ((v & 0x80) != 0 && (r.getA() & 0x80) == 0 && (value & 0x80) != 0));
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setA(v & 0xFF);
-        return cycle;
+        r.setOverflow(((r.getA() ^ v) & (r.getA() ^ value) & 0x80) != 0);
+        r.setA(setZeroAndNegativeByValue(v));
     }
 
-    private long ora(int addressingMethod) {
-        int value = getValue1(addressingMethod, false);
-        int v = r.getA() | value;
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setA(v & 0xFF);
-        return cycle;
+    private void ora(int value) {
+        r.setA(setZeroAndNegativeByValue(r.getA() | value));
     }
 
-    private long and(int addressingMethod) {
-        int value = getValue1(addressingMethod, false);
-        int v = r.getA() & value;
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setA(v & 0xFF);
-        return cycle;
+    private void and(int value) {
+        r.setA(setZeroAndNegativeByValue(r.getA() & value));
     }
 
-    private long xor(int addressingMethod) {
-        int value = getValue1(addressingMethod, false);
-        int v = r.getA() ^ value;
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setA(v & 0xFF);
-        return cycle;
+    private void xor(int value) {
+        r.setA(setZeroAndNegativeByValue(r.getA() ^ value));
     }
 
-    private long bit(int addressingMethod) {
-        int value = getValue3(addressingMethod, false);
-        int v = r.getA() & value;
-        setNegativeByValue(value);
+    private void bit(int value) {
+        r.setNegativeByValue(value);
         r.setOverflow((value & 0x40) != 0);
-        setZeroByValue(v);
-        return cycle;
-    }
-
-    private long cmp(int addressingMethod) {
-        int value = getValue1(addressingMethod, false);
-        int v = r.getA() - value;
-        r.setCarry(v >= 0);
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        return cycle;
-    }
-
-    private long cpx(int addressingMethod) {
-        int value = getValue3(addressingMethod, false);
-        int v = r.getX() - value;
-        r.setCarry(v >= 0);
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        return cycle;
+        r.setZeroByValue(r.getA() & value);
     }
 
-    private long cpy(int addressingMethod) {
-        int value = getValue3(addressingMethod, false);
-        int v = r.getY() - value;
+    private void compare(int register, int value) {
+        int v = register - value;
         r.setCarry(v >= 0);
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        return cycle;
-    }
-
-    private long sta(int addressingMethod) {
-        int address = getAddress1(addressingMethod, true);
-        setMemoryValue(address, r.getA());
-        return cycle;
-    }
-
-    private long lda(int addressingMethod) {
-        int v = getValue1(addressingMethod, false);
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setA(v);
-        return cycle;
-    }
-
-    private long stx(int addressingMethod) {
-        int address = getAddress2(addressingMethod, true);
-        setMemoryValue(address, r.getX());
-        return cycle;
-    }
-
-    private long ldx(int addressingMethod) {
-        int v = getValue2(addressingMethod, false);
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setX(v);
-        return cycle;
-    }
-
-    private long sty(int addressingMethod) {
-        int address = getAddress3(addressingMethod, true);
-        setMemoryValue(address, r.getY());
-        return cycle;
+        setZeroAndNegativeByValue(v);
     }
 
-    private long ldy(int addressingMethod) {
-        int v = getValue3(addressingMethod, false);
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setY(v);
-        return cycle;
+    private void aslA() {
+        int v = r.getA() << 1;
+        r.setCarry((v & 0x100) != 0);
+        r.setA(setZeroAndNegativeByValue(v));
     }
 
-    private long asl(int addressingMethod) {
-        cycle += 2;
-        if (addressingMethod == 2) {
-            int v = r.getA() << 1;
-            r.setCarry((v & 0x100) != 0);
-            setZeroByValue(v);
-            setNegativeByValue(v);
-            r.setA(v & 0xFF);
-        } else {
-            int address = getAddress3(addressingMethod, true);
-            int v = m.getByte(address) << 1;
-            r.setCarry((v & 0x100) != 0);
-            setZeroByValue(v);
-            setNegativeByValue(v);
-            setMemoryValue(address, v);
-        }
-        return cycle;
-    }
-
-    private long rol(int addressingMethod) {
-        cycle += 2;
-        if (addressingMethod == 2) {
-            int v = (r.getA() << 1) | r.getCarry();
-            r.setCarry((v & 0x100) != 0);
-            setZeroByValue(v);
-            setNegativeByValue(v);
-            r.setA(v & 0xFF);
-        } else {
-            int address = getAddress3(addressingMethod, true);
-            int v = (m.getByte(address) << 1) | r.getCarry();
-            r.setCarry((v & 0x100) != 0);
-            setZeroByValue(v);
-            setNegativeByValue(v);
-            setMemoryValue(address, v);
-        }
-        return cycle;
+    private void asl(int address) {
+        int v = m.getByte(address) << 1;
+        r.setCarry((v & 0x100) != 0);
+        setMemoryValue(address, setZeroAndNegativeByValue(v));
     }
 
-    private long lsr(int addressingMethod) {
-        cycle += 2;
-        if (addressingMethod == 2) {
-            int v = r.getA() >> 1;
-            r.setCarry((r.getA() & 1) != 0);
-            setZeroByValue(v);
-            setNegativeByValue(v);
-            r.setA(v & 0xFF);
-        } else {
-            int address = getAddress3(addressingMethod, true);
-            int value = m.getByte(address);
-            int v = value >> 1;
-            r.setCarry((value & 1) != 0);
-            setZeroByValue(v);
-            setNegativeByValue(v);
-            setMemoryValue(address, v);
-        }
-        return cycle;
+    private void rolA() {
+        int v = (r.getA() << 1) | r.getCarry();
+        r.setCarry((v & 0x100) != 0);
+        r.setA(setZeroAndNegativeByValue(v));
     }
 
-    private long ror(int addressingMethod) {
-        cycle += 2;
-        if (addressingMethod == 2) {
-            int v = (r.getA() >> 1) | (r.getCarry() << 7);
-            r.setCarry((r.getA() & 1) != 0);
-            setZeroByValue(v);
-            setNegativeByValue(v);
-            r.setA(v & 0xFF);
-        } else {
-            int address = getAddress3(addressingMethod, true);
-            int value = m.getByte(address);
-            int v = (value >> 1) | (r.getCarry() << 7);
-            r.setCarry((value & 1) != 0);
-            setZeroByValue(v);
-            setNegativeByValue(v);
-            setMemoryValue(address, v);
-        }
-        return cycle;
+    private void rol(int address) {
+        int v = (m.getByte(address) << 1) | r.getCarry();
+        r.setCarry((v & 0x100) != 0);
+        setMemoryValue(address, setZeroAndNegativeByValue(v));
     }
 
-    private long dec(int addressingMethod) {
-        cycle += 2;
-        int address = getAddress3(addressingMethod, true);
-        int value = m.getByte(address);
-        int v = value - 1;
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        setMemoryValue(address, v);
-        return cycle;
+    private void lsrA() {
+        int value = r.getA();
+        r.setCarry((value & 1) != 0);
+        r.setA(setZeroAndNegativeByValue(value >> 1));
     }
 
-    private long inc(int addressingMethod) {
-        cycle += 2;
-        int address = getAddress3(addressingMethod, true);
+    private void lsr(int address) {
         int value = m.getByte(address);
-        int v = value + 1;
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        setMemoryValue(address, v);
-        return cycle;
+        r.setCarry((value & 1) != 0);
+        setMemoryValue(address, setZeroAndNegativeByValue(value >> 1));
     }
 
-    private long dex() {
-        cycle += 2;
-        int v = r.getX() - 1;
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setX(v & 0xFF);
-        return cycle;
+    private void rorA() {
+        int value = r.getA();
+        int v = (value >> 1) | (r.getCarry() << 7);
+        r.setCarry((value & 1) != 0);
+        r.setA(setZeroAndNegativeByValue(v));
     }
 
-    private long dey() {
-        cycle += 2;
-        int v = r.getY() - 1;
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setY(v & 0xFF);
-        return cycle;
+    private void ror(int address) {
+        int value = m.getByte(address);
+        int v = (value >> 1) | (r.getCarry() << 7);
+        r.setCarry((value & 1) != 0);
+        setMemoryValue(address, setZeroAndNegativeByValue(v));
     }
 
-    private long inx() {
-        cycle += 2;
-        int v = r.getX() + 1;
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setX(v & 0xFF);
-        return cycle;
+    private void dec(int address) {
+        setMemoryValue(address, setZeroAndNegativeByValue(m.getByte(address) - 1));
     }
 
-    private long iny() {
-        cycle += 2;
-        int v = r.getY() + 1;
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setY(v & 0xFF);
-        return cycle;
+    private void inc(int address) {
+        setMemoryValue(address, setZeroAndNegativeByValue(m.getByte(address) + 1));
     }
 
-    private long branch(int branchType) {
-        cycle += 2;
-        boolean condition = false;
-        switch (branchType) {
-            case 0: //BPL
-                condition = !r.isNegative();
-                break;
-            case 1: //BMI
-                condition = r.isNegative();
-                break;
-            case 2: //BVC
-                condition = !r.isOverflow();
-                break;
-            case 3: //BVS
-                condition = r.isOverflow();
-                break;
-            case 4: //BCC
-                condition = !r.isCarry();
-                break;
-            case 5: //BCS
-                condition = r.isCarry();
-                break;
-            case 6: //BNE
-                condition = !r.isZero();
-                break;
-            case 7:
-                condition = r.isZero();
-                break;
-            default:
-        }
-        int offset = (byte) m.getByte(r.getPc());
-        r.setPc(r.getPc() + 1);
+    private void branch(int address, boolean condition) {
         if (condition) {
+            int offset = (byte) m.getByte(address);
             cycle += 1;
             int oldpc = r.getPc();
-            r.setPc(r.getPc() + offset);
+            r.setPc(oldpc + offset);
             if ((oldpc >> 8) != (r.getPc() >> 8)) {
                 cycle += 1;
             }
         }
-        return cycle;
-    }
-
-    private long txa() {
-        cycle += 2;
-        int v = r.getX();
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setA(v);
-        return cycle;
-    }
-
-    private long tax() {
-        cycle += 2;
-        int v = r.getA();
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setX(v);
-        return cycle;
-    }
-
-    private long tya() {
-        cycle += 2;
-        int v = r.getY();
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setA(v);
-        return cycle;
-    }
-
-    private long tay() {
-        cycle += 2;
-        int v = r.getA();
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setY(v);
-        return cycle;
-    }
-
-    private long txs() {
-        cycle += 2;
-        int v = r.getX();
-        //possibly not changed
-        //setZeroByValue(v);
-        //setNegativeByValue(v);
-        r.setSp(v);
-        return cycle;
-    }
-
-    private long tsx() {
-        cycle += 2;
-        int v = r.getSp();
-        setZeroByValue(v);
-        setNegativeByValue(v);
-        r.setX(v);
-        return cycle;
-    }
-
-    private long php() {
-        cycle += 3;
-        push(r.getFlags());
-        return cycle;
-    }
-
-    private long plp() {
-        cycle += 4;
-        r.setFlags(pop());
-        return cycle;
-    }
-
-    private long pha() {
-        cycle += 3;
-        push(r.getA());
-        return cycle;
-    }
-
-    private long pla() {
-        cycle += 4;
-        r.setA(pop());
-        setZeroByValue(r.getA());
-        setNegativeByValue(r.getA());
-        return cycle;
-    }
-
-    private long status(int statusType) {
-        cycle += 2;
-        switch (statusType) {
-            case 0: //CLC
-                r.clearCarry();
-                break;
-            case 1: //SEC
-                r.setCarry();
-                break;
-            case 2: //CLI
-                r.clearDisableInterrupt();
-                break;
-            case 3: //SEI
-                r.setDisableInterrupt();
-                break;
-            case 5: //CLV
-                r.clearOverflow();
-                break;
-            case 6: //CLD
-                r.clearDecimal();
-                break;
-            case 7: //SED
-                r.setDecimal();
-                break;
-            default:
-        }
-        return cycle;
     }
 
-    private long jmp(int opcode) {
-        cycle += 3;
-        int address = m.getByte(r.getPc()) | (m.getByte(r.getPc() + 1) << 8);
-        if (opcode == 0x6C) {
-            cycle += 2;
-            address = m.getByte(address) | (m.getByte((address & 0xFF00) | ((address + 1) & 0xFF)) << 8);
-        }
+    private void jsr(int address) {
+        int returnAddress = r.getPc() - 1;
+        push(returnAddress >> 8);
+        push(returnAddress);
         r.setPc(address);
-        return cycle;
-    }
-
-    private long jsr() {
-        cycle += 6;
-        int nextAddress = r.getPc() + 1;
-        push(nextAddress >> 8);
-        push(nextAddress);
-        r.setPc(m.getByte(r.getPc()) | (m.getByte(r.getPc() + 1) << 8));
-        return cycle;
     }
 
-    private long rts() {
-        cycle += 6;
+    private void rts() {
         int low = pop();
         int returnAddress = low | (pop() << 8);
         r.setPc(returnAddress + 1);
-        return cycle;
     }
 
-    private long brk() {
-        cycle += 7;
+    private void brk() {
         int interruptVector = m.getByte(0xFFFE) | (m.getByte(0xFFFF) << 8);
         int nextAddress = r.getPc() + 1;
         push(nextAddress >> 8);
@@ -627,16 +391,13 @@ public class SimpleCPU implements CPU {
         push(r.getFlags() | CPURegister.MASK_BREAK);
         r.setDisableInterrupt();
         r.setPc(interruptVector);
-        return cycle;
     }
 
-    private long rti() {
-        cycle += 6;
+    private void rti() {
         r.setFlags(pop());
         r.setBreak();
         int low = pop();
         r.setPc(low | (pop() << 8));
-        return cycle;
     }
 
     private void push(int value) {
@@ -649,171 +410,109 @@ public class SimpleCPU implements CPU {
         return m.getByte(0x100 | r.getSp());
     }
 
-    private void setZeroByValue(int v) {
-        r.setZero((v & 0xFF) == 0);
-    }
-
-    private void setNegativeByValue(int v) {
-        r.setNegative((v & 0x80) != 0);
+    /**
+     * @return v & 0xFF
+     */
+    private int setZeroAndNegativeByValue(int v) {
+        r.setZeroAndNegativeByValue(v);
+        return v & 0xFF;
     }
 
     private void setMemoryValue(int address, int value) {
         m.setByte(address, value & 0xFF);
     }
 
-    private int getValue1(int addressingMethod, boolean isStore) {
-        if (addressingMethod == 2) {
-            return immediate();
-        }
-        return m.getByte(getAddress1(addressingMethod, isStore));
-    }
-
-    private int getValue2(int addressingMethod, boolean isStore) {
-        if (addressingMethod == 0) {
-            return immediate();
-        }
-        return m.getByte(getAddress2(addressingMethod, isStore));
-    }
-
-    private int getValue3(int addressingMethod, boolean isStore) {
-        if (addressingMethod == 0) {
-            return immediate();
-        }
-        return m.getByte(getAddress3(addressingMethod, isStore));
-    }
-
-    // for all ALUs
-    private int getAddress1(int addressingMethod, boolean isStore) {
-        int arg = m.getByte(r.getPc());
-        r.setPc(r.getPc() + 1);
-        switch (addressingMethod) {
-            case 0: // Indirect, x
-                return indirectX(arg);
-            case 1: // Zero page
-                return zeroPage(arg);
-            case 3: // Absolute
-                return absolute(arg);
-            case 4: // Indirect, y
-                return indirectY(isStore, arg);
-            case 5: // Zero page, X
-                return zeroPageX(arg);
-            case 6: // Absolute, Y
-                return absoluteY(isStore, arg);
-            case 7: // Absolute, X
-                return absoluteX(isStore, arg);
-            default:
-                r.setPc(r.getPc() - 1);
+    /**
+     * Reads operands after opcode and resolves the effective address.
+     * For IMMEDIATE and RELATIVE, the address of the operand itself is returned.
+     */
+    private int getAddress(int mode, boolean pageCrossPenalty) {
+        int pc = r.getPc();
+        switch (mode) {
+            case Opcodes.IMPLIED:
                 return 0;
-        }
-    }
-
-    // for STX, LDX
-    private int getAddress2(int addressingMethod, boolean isStore) {
-        int arg = m.getByte(r.getPc());
-        r.setPc(r.getPc() + 1);
-        switch (addressingMethod) {
-            case 1: // Zero page
-                return zeroPage(arg);
-            case 3: // Absolute
-                return absolute(arg);
-            case 5: // Zero page, Y
-                return zeroPageY(arg);
-            case 7: // Absolute, Y
-                return absoluteY(isStore, arg);
+            case Opcodes.IMMEDIATE:
+            case Opcodes.RELATIVE:
+                r.setPc(pc + 1);
+                return pc;
+            case Opcodes.ZERO_PAGE:
+                r.setPc(pc + 1);
+                return m.getByte(pc);
+            case Opcodes.ZERO_PAGE_X:
+                r.setPc(pc + 1);
+                return (m.getByte(pc) + r.getX()) & 0xFF;
+            case Opcodes.ZERO_PAGE_Y:
+                r.setPc(pc + 1);
+                return (m.getByte(pc) + r.getY()) & 0xFF;
+            case Opcodes.ABSOLUTE:
+                r.setPc(pc + 2);
+                return m.getByte(pc) | (m.getByte(pc + 1) << 8);
+            case Opcodes.ABSOLUTE_X:
+                r.setPc(pc + 2);
+                return indexed(m.getByte(pc) | (m.getByte(pc + 1) << 8), r.getX(), pageCrossPenalty);
+            case Opcodes.ABSOLUTE_Y:
+                r.setPc(pc + 2);
+                return indexed(m.getByte(pc) | (m.getByte(pc + 1) << 8), r.getY(), pageCrossPenalty);
+            case Opcodes.INDIRECT: {
+                r.setPc(pc + 2);
+                int address = m.getByte(pc) | (m.getByte(pc + 1) << 8);
+                // The high byte is not carried to next page
+                return m.getByte(address) | (m.getByte((address & 0xFF00) | ((address + 1) & 0xFF)) << 8);
+            }
+            case Opcodes.INDIRECT_X: {
+                r.setPc(pc + 1);
+                int arg = m.getByte(pc) + r.getX();
+                return m.getByte(arg & 0xFF) | (m.getByte((arg + 1) & 0xFF) << 8);
+            }
+            case Opcodes.INDIRECT_Y: {
+                r.setPc(pc + 1);
+                int arg = m.getByte(pc);
+                return indexed(m.getByte(arg) | (m.getByte((arg + 1) & 0xFF) << 8), r.getY(), pageCrossPenalty);
+            }
             default:
-                r.setPc(r.getPc() - 1);
-                return 0;
+                throw new IllegalStateException("Unknown addressing mode " + mode);
         }
     }
 
-    // for other
-    private int getAddress3(int addressingMethod, boolean isStore) {
-        int arg = m.getByte(r.getPc());
-        r.setPc(r.getPc() + 1);
-        switch (addressingMethod) {
-            case 1: // Zero page
-                return zeroPage(arg);
-            case 3: // Absolute
-                return absolute(arg);
-            case 5: // Zero page, X
-                return zeroPageX(arg);
-            case 7: // Absolute, X
-                return absoluteX(isStore, arg);
-            default:
-                r.setPc(r.getPc() - 1);
+    /**
+     * Resolves the effective address from an operand decoded ahead, see DecodedBlock.
+     */
+    private int resolveAddress(int mode, int operand, boolean pageCrossPenalty) {
+        switch (mode) {
+            case Opcodes.IMPLIED:
                 return 0;
+            case Opcodes.IMMEDIATE:
+            case Opcodes.RELATIVE:
+            case Opcodes.ZERO_PAGE:
+            case Opcodes.ABSOLUTE:
+                return operand;
+            case Opcodes.ZERO_PAGE_X:
+                return (operand + r.getX()) & 0xFF;
+            case Opcodes.ZERO_PAGE_Y:
+                return (operand + r.getY()) & 0xFF;
+            case Opcodes.ABSOLUTE_X:
+                return indexed(operand, r.getX(), pageCrossPenalty);
+            case Opcodes.ABSOLUTE_Y:
+                return indexed(operand, r.getY(), pageCrossPenalty);
+            case Opcodes.INDIRECT:
+                return m.getByte(operand) | (m.getByte((operand & 0xFF00) | ((operand + 1) & 0xFF)) << 8);
+            case Opcodes.INDIRECT_X: {
+                int arg = operand + r.getX();
+                return m.getByte(arg & 0xFF) | (m.getByte((arg + 1) & 0xFF) << 8);
+            }
+            case Opcodes.INDIRECT_Y:
+                return indexed(m.getByte(operand) | (m.getByte((operand + 1) & 0xFF) << 8), r.getY(), pageCrossPenalty);
+            default:
+                throw new IllegalStateException("Unknown addressing mode " + mode);
         }
     }
 
-    private int absoluteX(boolean isStore, int arg) {
-        int arg2;
-        cycle += 4;
-        arg2 = m.getByte(r.getPc());
-        r.setPc(r.getPc() + 1);
-        cycle += 4;
-        int address = ((arg2 << 8) | arg) + r.getX();
-        if (isStore || (address >> 8) != arg2) {
-            cycle += 1;
-        }
-        return address;
-    }
-
-    private int absoluteY(boolean isStore, int arg) {
-        int arg2;
-        cycle += 4;
-        arg2 = m.getByte(r.getPc());
-        r.setPc(r.getPc() + 1);
-        cycle += 4;
-        int address = ((arg2 << 8) | arg) + r.getY();
-        if (isStore || (address >> 8) != arg2) {
-            cycle += 1;
-        }
-        return address;
-    }
-
-    private int zeroPageY(int arg) {
-        cycle += 4;
-        return (arg + r.getY()) & 0xFF;
-    }
-
-    private int zeroPageX(int arg) {
-        cycle += 4;
-        return (arg + r.getX()) & 0xFF;
-    }
-
-    private int indirectX(int arg) {
-        cycle += 6;
-        return m.getByte((arg + r.getX()) & 0xFF) | (m.getByte((arg + r.getX() + 1) & 0xFF) << 8);
-    }
-
-    private int indirectY(boolean isStore, int arg) {
-        cycle += 5;
-        int high = m.getByte((arg + 1) & 0xFF);
-        int address = m.getByte(arg) + (high << 8) + r.getY();
-        if (isStore || (address >> 8) != high) {
+    private int indexed(int base, int index, boolean pageCrossPenalty) {
+        int address = base + index;
+        if (pageCrossPenalty && ((address ^ base) & 0xFF00) != 0) {
             cycle += 1;
         }
-        return address;
-    }
-
-    private int absolute(int arg) {
-        int arg2;
-        arg2 = m.getByte(r.getPc());
-        r.setPc(r.getPc() + 1);
-        cycle += 4;
-        return (arg2 << 8) | arg;
-    }
-
-    private int immediate() {
-        int arg = m.getByte(r.getPc());
-        r.setPc(r.getPc() + 1);
-        cycle += 2;
-        return arg;
-    }
-
-    private int zeroPage(int arg) {
-        cycle += 3;
-        return arg;
+        return address & 0xFFFF;
     }
 
     public void reset() {
@@ -827,7 +526,8 @@ public class SimpleCPU implements CPU {
     }
 
     public void nmi() {
-        if (RAND.nextBoolean()) {
+        random = (random * RANDOM_MULTIPLIER + 0xB) & RANDOM_MASK;
+        if ((random >>> 47) != 0) {
             pendingNMI = 2;
         } else {
             nmiImpl();
@@ -835,6 +535,9 @@ public class SimpleCPU implements CPU {
     }
 
     public void nmiImpl() {
+        if (metrics != null) {
+            metrics.addNMI();
+        }
         int interruptVector = m.getByte(0xFFFA) | (m.getByte(0xFFFB) << 8);
         push(r.getPc() >> 8);
         push(r.getPc());
@@ -842,24 +545,34 @@ public class SimpleCPU implements CPU {
         r.setPc(interruptVector);
     }
 
-    public void addIRQGenerator(IRQGenerator generator) {
-        irqGenerators.add(generator);
+    public IRQLine getIRQLine() {
+        return irqLine;
+    }
+
+    public DMA getDMA() {
+        return dma;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setRandomSeed(long seed) {
+        random = (seed ^ RANDOM_MULTIPLIER) & RANDOM_MASK;
     }
 
     private boolean checkIRQ() {
-        if (r.isDisableInterrupt()) {
+        if (!irqLine.isAsserted() || r.isDisableInterrupt()) {
             return false;
         }
-        for (IRQGenerator generator : irqGenerators) {
-            if (generator.getIRQLevel()) {
-                irq();
-                return true;
-            }
-        }
-        return false;
+        irq();
+        return true;
     }
 
     private void irq() {
+        if (metrics != null) {
+            metrics.addIRQ();
+        }
         int interruptVector = m.getByte(0xFFFE) | (m.getByte(0xFFFF) << 8);
         push(r.getPc() >> 8);
         push(r.getPc());
@@ -870,6 +583,31 @@ public class SimpleCPU implements CPU {
 
     public void setMemory(Memory memory) {
         m = memory;
+        updateBlockCache();
+    }
+
+    public void setBlockCache(boolean enabled) {
+        blockCacheEnabled = enabled;
+        updateBlockCache();
+    }
+
+    public boolean isBlockCache() {
+        return blockCacheEnabled;
+    }
+
+    public void invalidateBlocks() {
+        if (blockCache != null) {
+            blockCache.invalidate();
+        }
+    }
+
+    private void updateBlockCache() {
+        block = null;
+        if (blockCacheEnabled && m instanceof PagedMemory) {
+            blockCache = new BlockCache((PagedMemory) m);
+        } else {
+            blockCache = null;
+        }
     }
 
     public Memory getMemory() {
@@ -887,4 +625,18 @@ public class SimpleCPU implements CPU {
     public void increaseCycle(int value) {
         cycle += value;
     }
+
+    public void saveState(ByteBuffer buffer) {
+        r.saveState(buffer);
+        buffer.putLong(cycle);
+        buffer.put((byte) pendingNMI);
+        buffer.putLong(random);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        r.loadState(buffer);
+        cycle = buffer.getLong();
+        pendingNMI = buffer.get();
+        random = buffer.getLong();
+    }
 }
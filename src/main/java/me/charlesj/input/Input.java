@@ -1,12 +1,13 @@
 package me.charlesj.input;
 
 import me.charlesj.memory.Memory;
+import me.charlesj.state.Savable;
 
 /**
  * Game input class. Mapped to $4016-$4017.
  * 2020/1/28.
  */
-public abstract class Input implements Memory {
+public abstract class Input implements Memory, Savable {
     protected abstract void writeRegister(int value);
     protected abstract int get(int address);
 
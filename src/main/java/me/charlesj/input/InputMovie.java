@@ -0,0 +1,135 @@
+package me.charlesj.input;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Buttons of both controllers for every frame of a run, with the random seed the machine started from
+ * and optionally the hash of every frame, see HeadlessScreen.hash(), to check a replay against.
+ *
+ * Stored big-endian as: magic "NESM", version (short), flags (short, bit 0: hashes present),
+ * seed (long), frame count (int), then per frame the buttons of controller 0 and 1 (byte each)
+ * followed by the hash (long) if present.
+ */
+public class InputMovie implements InputScript {
+
+    // "NESM"
+    public static final int MAGIC = 0x4E45534D;
+    public static final int VERSION = 1;
+    private static final int FLAG_HASHES = 1;
+
+    private final long seed;
+    private int frameCount = 0;
+    private byte[] buttons = new byte[2 * 1024];
+    private long[] hashes = new long[1024];
+    // Frames from the first one on that have a hash
+    private int hashedFrames = 0;
+
+    public InputMovie(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public void addFrame(int buttons0, int buttons1) {
+        add(buttons0, buttons1);
+    }
+
+    public void addFrame(int buttons0, int buttons1, long hash) {
+        int frame = add(buttons0, buttons1);
+        hashes[frame] = hash;
+        if (hashedFrames == frame) {
+            hashedFrames++;
+        }
+    }
+
+    private int add(int buttons0, int buttons1) {
+        if (frameCount == hashes.length) {
+            buttons = Arrays.copyOf(buttons, buttons.length * 2);
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        }
+        buttons[frameCount * 2] = (byte) buttons0;
+        buttons[frameCount * 2 + 1] = (byte) buttons1;
+        return frameCount++;
+    }
+
+    /**
+     * Drops frames from the given one on, e.g. after rewinding while recording.
+     */
+    public void truncate(int frames) {
+        frameCount = Math.max(0, Math.min(frameCount, frames));
+        hashedFrames = Math.min(hashedFrames, frameCount);
+    }
+
+    /**
+     * @return buttons of the frame, none after the last frame
+     */
+    public int getButtons(long frame, int controllerId) {
+        return frame < frameCount ? buttons[(int) frame * 2 + controllerId] & 0xFF : 0;
+    }
+
+    /**
+     * @return true if every frame has a hash
+     */
+    public boolean hasHashes() {
+        return hashedFrames == frameCount;
+    }
+
+    public long getHash(int frame) {
+        if (frame >= hashedFrames) {
+            throw new IllegalArgumentException("No hash of frame " + frame);
+        }
+        return hashes[frame];
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeShort(VERSION);
+        boolean hashed = hasHashes();
+        dataOut.writeShort(hashed ? FLAG_HASHES : 0);
+        dataOut.writeLong(seed);
+        dataOut.writeInt(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            dataOut.write(buttons, i * 2, 2);
+            if (hashed) {
+                dataOut.writeLong(hashes[i]);
+            }
+        }
+        dataOut.flush();
+    }
+
+    public static InputMovie read(InputStream in) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        if (dataIn.readInt() != MAGIC) {
+            throw new IOException("Not an input movie");
+        }
+        int version = dataIn.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported input movie version: " + version);
+        }
+        boolean hashed = (dataIn.readShort() & FLAG_HASHES) != 0;
+        InputMovie movie = new InputMovie(dataIn.readLong());
+        int frames = dataIn.readInt();
+        for (int i = 0; i < frames; i++) {
+            int buttons0 = dataIn.readUnsignedByte();
+            int buttons1 = dataIn.readUnsignedByte();
+            if (hashed) {
+                movie.addFrame(buttons0, buttons1, dataIn.readLong());
+            } else {
+                movie.addFrame(buttons0, buttons1);
+            }
+        }
+        return movie;
+    }
+}
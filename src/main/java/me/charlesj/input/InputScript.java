@@ -0,0 +1,11 @@
+package me.charlesj.input;
+
+/**
+ * Scripted controller input, used to drive StandardControllers without a keyboard.
+ */
+public interface InputScript {
+    /**
+     * @return buttons pressed on the controller during the given frame, bit n for key n of StandardControllers
+     */
+    int getButtons(long frame, int controllerId);
+}
@@ -1,5 +1,9 @@
 package me.charlesj.input;
 
+import me.charlesj.state.StateBuffers;
+
+import java.nio.ByteBuffer;
+
 /**
  * Standard 4-button 1-pad controllers.
  * controllerId = 1 for 1P, = 2 for 2P.
@@ -45,7 +49,32 @@ public class StandardControllers extends Input {
         pressStatus[controllerId] &= ~(1 << key);
     }
 
+    /**
+     * @param buttons bit n is set if key n is pressed, e.g. bit KEY_A
+     */
+    public void setButtons(int controllerId, int buttons) {
+        pressStatus[controllerId] = buttons & 0xFF;
+    }
+
+    public int getButtons(int controllerId) {
+        return pressStatus[controllerId];
+    }
+
     public boolean isStrobe() {
         return strobe;
     }
+
+    /**
+     * Buttons pressed are live input rather than machine state, so they are not saved.
+     */
+    public void saveState(ByteBuffer buffer) {
+        StateBuffers.putBoolean(buffer, strobe);
+        buffer.put((byte) outputStatus[0]).put((byte) outputStatus[1]);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        strobe = StateBuffers.getBoolean(buffer);
+        outputStatus[0] = buffer.get();
+        outputStatus[1] = buffer.get();
+    }
 }
@@ -2,16 +2,17 @@ package me.charlesj.mapper;
 
 import me.charlesj.apu.APU;
 import me.charlesj.input.Input;
-import me.charlesj.memory.CompositeMemory;
 import me.charlesj.memory.Memory;
-import me.charlesj.memory.MixedMemory;
-import me.charlesj.memory.ReadonlyMemory;
-import me.charlesj.memory.WriteProtectMemory;
+import me.charlesj.memory.PagedMemory;
 import me.charlesj.nesloader.NesLoader;
 import me.charlesj.cpu.CPU;
 import me.charlesj.cpu.IRQGenerator;
+import me.charlesj.cpu.IRQLine;
+import me.charlesj.ppu.A12Listener;
 import me.charlesj.ppu.PPU;
-import me.charlesj.ppu.PPURegister;
+import me.charlesj.state.StateBuffers;
+
+import java.nio.ByteBuffer;
 
 import java.util.Arrays;
 
@@ -19,23 +20,18 @@ import java.util.Arrays;
  * MMC3/MMC6 mapper. Id is 4.
  * 2020/2/10.
  */
-public class MMC3 extends Mapper implements Memory, IRQGenerator {
+public class MMC3 extends Mapper implements Memory, IRQGenerator, A12Listener {
 
     private NesLoader loader;
     private PPU ppu;
 
-    private CompositeMemory mainMemory;
-    private Memory prgMemoryBankR6;
-    private Memory prgMemoryBankM2;
-
-    private CompositeMemory chrMemory;
-    private CompositeMemory chrMemoryBankGroup1 = new CompositeMemory(0x1000);
-    private CompositeMemory chrMemoryBankGroup2 = new CompositeMemory(0x1000);
-
-    private WriteProtectMemory prgRam = new WriteProtectMemory(0x2000);
+    private PagedMemory mainMemory;
+    // Banks are mapped straight to CHR pages of the loader, so switching allocates nothing
+    private PagedMemory chrMemory;
 
     private boolean prgBankMode;
     private boolean chrBankMode;
+    private boolean mappedChrBankMode;
     private int rSelect;
     private int[] r = new int[8];
     private boolean[] rDirty = new boolean[8];
@@ -45,24 +41,25 @@ public class MMC3 extends Mapper implements Memory, IRQGenerator {
     private boolean irqReload = false;
     private boolean irqEnabled = false;
     private boolean irqPending = false;
+    private IRQLine irqLine;
 
     @Override
-    public void mapMemoryImpl(CompositeMemory memory, NesLoader loader, CPU cpu, PPU ppu, APU APU, Input input) {
+    public void mapMemoryImpl(PagedMemory memory, NesLoader loader, CPU cpu, PPU ppu, APU APU, Input input) {
         this.ppu = ppu;
         this.loader = loader;
         this.mainMemory = memory;
-        this.chrMemory = new CompositeMemory(0x2000);
+        this.chrMemory = new PagedMemory(0x2000);
+        this.irqLine = cpu.getIRQLine();
 
         ppu.setCHRMemory(chrMemory);
+        ppu.addA12Listener(this);
 
-        memory.setMemory(0x6000, prgRam);
+        sram = new byte[0x2000];
+        memory.mapBytes(0x6000, 0x2000, sram, 0);
 
         // fixed memory
-        ReadonlyMemory prgMemoryBankM1;
-        prgMemoryBankM1 = new ReadonlyMemory(loader.getPRGPage(loader.getPRGPageCount() - 1), 0x2000, 0x2000);
-        prgMemoryBankM2 = new ReadonlyMemory(loader.getPRGPage(loader.getPRGPageCount() - 1), 0, 0x2000);
-
-        memory.setMemory(0xE000, new MixedMemory(0x2000, prgMemoryBankM1, 0, this, 0x6000));
+        memory.mapRead(0xE000, 0x2000, loader.getPRGPage(loader.getPRGPageCount() - 1), 0x2000);
+        memory.mapWriteHandler(0x8000, 0x8000, this);
 
         // switchable memory
         Arrays.fill(rDirty, true);
@@ -77,45 +74,83 @@ public class MMC3 extends Mapper implements Memory, IRQGenerator {
         throw new UnsupportedOperationException("Cannot getByte from mapper register");
     }
 
-    @Override
-    public void cycle(CPU cpu) {
-        PPURegister r = ppu.getRegister();
-        //The counter will not work properly unless you use different pattern tables for background and sprite data.
-        //But makes stuck in some games.
-        //if (r.getSpritePatternTableAddress() == r.getBackgroundPatternTableAddress()) {
-        //    return;
-        //}
-        int cycle = ppu.getCycle();
-        int scanline = ppu.getScanline();
-        int cyclePos = r.getBackgroundPatternTableAddress() == 0 ? 260 : 324;
-        if ((cycle >= cyclePos && cycle <= cyclePos + 2) && (scanline == 261 || scanline < 240)) {
-            if (irqCounter == 0 || irqReload) {
-                irqCounter = irqLatch;
-                irqReload = false;
-            } else {
-                irqCounter--;
-            }
-            if (irqCounter == 0 && irqEnabled) {
-                irqPending = true;
-            }
+    /**
+     * Clocks the scanline counter.
+     * The counter will not work properly unless different pattern tables are used for background and sprite data,
+     * this is not checked as it makes some games stuck.
+     */
+    public void a12Rising() {
+        if (irqCounter == 0 || irqReload) {
+            irqCounter = irqLatch;
+            irqReload = false;
+        } else {
+            irqCounter--;
         }
+        if (irqCounter == 0 && irqEnabled) {
+            setIRQPending(true);
+        }
+    }
+
+    private void setIRQPending(boolean pending) {
+        irqPending = pending;
+        irqLine.set(IRQLine.MAPPER, pending);
     }
 
     public boolean getIRQLevel() {
         return irqPending;
     }
 
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        super.saveState(buffer);
+        StateBuffers.putBoolean(buffer, prgBankMode);
+        StateBuffers.putBoolean(buffer, chrBankMode);
+        buffer.put((byte) rSelect);
+        for (int value : r) {
+            buffer.put((byte) value);
+        }
+        buffer.put((byte) irqCounter).put((byte) irqLatch);
+        StateBuffers.putBoolean(buffer, irqReload);
+        StateBuffers.putBoolean(buffer, irqEnabled);
+        StateBuffers.putBoolean(buffer, irqPending);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        super.loadState(buffer);
+        prgBankMode = StateBuffers.getBoolean(buffer);
+        chrBankMode = StateBuffers.getBoolean(buffer);
+        rSelect = buffer.get();
+        for (int i = 0; i < r.length; i++) {
+            r[i] = buffer.get() & 0xFF;
+        }
+        irqCounter = buffer.get() & 0xFF;
+        irqLatch = buffer.get() & 0xFF;
+        irqReload = StateBuffers.getBoolean(buffer);
+        irqEnabled = StateBuffers.getBoolean(buffer);
+        setIRQPending(StateBuffers.getBoolean(buffer));
+
+        Arrays.fill(rDirty, true);
+        switchMemory(mainMemory, chrMemory);
+    }
+
     public void setByte(int address, int value) {
+        // Banks and mirroring are about to change under the PPU
+        ppu.catchUp();
         switch (((address >> 12) & 0x6) | (address & 1)) {
             case 0:
                 prgBankMode = (value & 0x40) != 0;
                 chrBankMode = (value & 0x80) != 0;
                 rSelect = value & 7;
+                countBankSwitch();
                 switchMemory(mainMemory, chrMemory);
                 break;
             case 1:
-                rDirty[rSelect] = true;
-                r[rSelect] = value;
+                if (r[rSelect] != value) {
+                    rDirty[rSelect] = true;
+                    r[rSelect] = value;
+                }
+                countBankSwitch();
                 switchMemory(mainMemory, chrMemory);
                 break;
             case 2:
@@ -137,7 +172,7 @@ public class MMC3 extends Mapper implements Memory, IRQGenerator {
                 break;
             case 6:
                 irqEnabled = false;
-                irqPending = false;
+                setIRQPending(false);
                 break;
             case 7:
                 irqEnabled = true;
@@ -145,46 +180,51 @@ public class MMC3 extends Mapper implements Memory, IRQGenerator {
         }
     }
 
-    private void switchMemory(CompositeMemory mainMemory, CompositeMemory chrMemory) {
+    /**
+     * Maps the banks of registers written since the last call.
+     */
+    private void switchMemory(PagedMemory mainMemory, PagedMemory chrMemory) {
+        int group1Address = chrBankMode ? 0x1000 : 0;
+        int group2Address = chrBankMode ? 0 : 0x1000;
+        if (chrBankMode != mappedChrBankMode) {
+            // Both groups move
+            Arrays.fill(rDirty, 0, 6, true);
+            mappedChrBankMode = chrBankMode;
+        }
+
         for (int i=0; i<2; i++) {
             if (rDirty[i]) {
                 int v = r[i];
-                chrMemoryBankGroup1.setMemory(0x800 * i, new ReadonlyMemory(loader.getCHRPage(v >> 3), ((v >> 1) & 0x3) * 0x800, 0x800));
+                chrMemory.mapRead(group1Address + 0x800 * i, 0x800, loader.getCHRPage(v >> 3), ((v >> 1) & 0x3) * 0x800);
+                ppu.invalidatePatterns(group1Address + 0x800 * i, 0x800);
+                rDirty[i] = false;
             }
         }
 
         for (int i=2; i<6; i++) {
             if (rDirty[i]) {
                 int v = r[i];
-                chrMemoryBankGroup2.setMemory(0x400 * (i - 2), new ReadonlyMemory(loader.getCHRPage(v >> 3), (v & 0x7) * 0x400, 0x400));
+                chrMemory.mapRead(group2Address + 0x400 * (i - 2), 0x400, loader.getCHRPage(v >> 3), (v & 0x7) * 0x400);
+                ppu.invalidatePatterns(group2Address + 0x400 * (i - 2), 0x400);
+                rDirty[i] = false;
             }
         }
 
-        if (rDirty[6]) {
-            int v = r[6] & 0x3F;
-            prgMemoryBankR6 = new ReadonlyMemory(loader.getPRGPage(v >> 1), (v & 1) * 0x2000, 0x2000);
-        }
-
         if (rDirty[7]) {
             int v = r[7] & 0x3F;
-            Memory prgMemoryBankR7 = new ReadonlyMemory(loader.getPRGPage(v >> 1), (v & 1) * 0x2000, 0x2000);
-            mainMemory.setMemory(0xA000, new MixedMemory(0x2000, prgMemoryBankR7, 0, this, 0x2000));
+            mainMemory.mapRead(0xA000, 0x2000, loader.getPRGPage(v >> 1), (v & 1) * 0x2000);
+            rDirty[7] = false;
         }
 
+        int r6 = r[6] & 0x3F;
+        byte[] prgPageR6 = loader.getPRGPage(r6 >> 1);
+        byte[] prgPageM2 = loader.getPRGPage(loader.getPRGPageCount() - 1);
         if (prgBankMode) {
-            mainMemory.setMemory(0x8000, new MixedMemory(0x2000, prgMemoryBankM2, 0, this, 0));
-            mainMemory.setMemory(0xC000, new MixedMemory(0x2000, prgMemoryBankR6, 0, this, 0x4000));
-        } else {
-            mainMemory.setMemory(0x8000, new MixedMemory(0x2000, prgMemoryBankR6, 0, this, 0));
-            mainMemory.setMemory(0xC000, new MixedMemory(0x2000, prgMemoryBankM2, 0, this, 0x4000));
-        }
-
-        if (chrBankMode) {
-            chrMemory.setMemory(0, chrMemoryBankGroup2);
-            chrMemory.setMemory(0x1000, chrMemoryBankGroup1);
+            mainMemory.mapRead(0x8000, 0x2000, prgPageM2, 0);
+            mainMemory.mapRead(0xC000, 0x2000, prgPageR6, (r6 & 1) * 0x2000);
         } else {
-            chrMemory.setMemory(0, chrMemoryBankGroup1);
-            chrMemory.setMemory(0x1000, chrMemoryBankGroup2);
+            mainMemory.mapRead(0x8000, 0x2000, prgPageR6, (r6 & 1) * 0x2000);
+            mainMemory.mapRead(0xC000, 0x2000, prgPageM2, 0);
         }
     }
 }
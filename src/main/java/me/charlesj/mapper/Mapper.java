@@ -8,61 +8,134 @@ import me.charlesj.memory.DefaultMemory;
 import me.charlesj.memory.Memory;
 import me.charlesj.memory.MirrorMemory;
 import me.charlesj.memory.MixedMemory;
-import me.charlesj.memory.ReadonlyMemory;
+import me.charlesj.memory.PagedMemory;
+import me.charlesj.metrics.Metrics;
 import me.charlesj.nesloader.NesLoader;
 import me.charlesj.cpu.CPU;
-import me.charlesj.cpu.IRQGenerator;
 import me.charlesj.ppu.PPU;
 import me.charlesj.ppu.SpriteDMARegister;
+import me.charlesj.state.Savable;
+
+import java.nio.ByteBuffer;
 
 /**
  * Mapper class. Maps memory of CPU and PPU, and interrupts CPU.
  */
-public abstract class Mapper {
-    protected CompositeMemory initFirst4020BytesMemory(CPU cpu, PPU ppu, APU apu, Input input) {
-        CompositeMemory memory = new CompositeMemory(0x10000);
-        SpriteDMARegister dmaRegister = new SpriteDMARegister(memory, ppu.getSprRam(), cpu);
+public abstract class Mapper implements Savable {
+
+    private byte[] internalMemory;
+
+    // Writable memory saved with the state, null if absent
+    protected byte[] sram;
+    protected byte[] chrRam;
+
+    // Null if disabled
+    private Metrics metrics;
+    private SpriteDMARegister dmaRegister;
+
+    protected PagedMemory initFirst4020BytesMemory(CPU cpu, PPU ppu, APU apu, Input input) {
+        PagedMemory memory = new PagedMemory(0x10000);
+        dmaRegister = new SpriteDMARegister(ppu.getSprRam(), cpu);
         APURegister apuRegister = apu.getRegister();
 
-        Memory internalMemory = new DefaultMemory(0x800);
-        memory.setMemory(0, internalMemory);
-        memory.setMemory(0x800, new MirrorMemory(internalMemory, 0x1800));
-        memory.setMemory(0x2000, ppu.getRegister());
-        memory.setMemory(0x2008, new MirrorMemory(ppu.getRegister(), 0x1FF8));
-        memory.setMemory(0x4000, apuRegister);
-        memory.setMemory(0x4014, dmaRegister);
-        memory.setMemory(0x4015, new MirrorMemory(apuRegister, 0x15, 1));
-        memory.setMemory(0x4016, input);
-        memory.setMemory(0x4017, new MixedMemory(1, input, 1, apuRegister, 0x17));
-        memory.setMemory(0x4018, new MirrorMemory(apuRegister, 0x18, 0x4020 - 0x4018));
+        internalMemory = new byte[0x800];
+        for (int i=0; i<0x2000; i+=0x800) {
+            memory.mapBytes(i, 0x800, internalMemory, 0);
+        }
+        memory.mapHandler(0x2000, 0x2000, new MirrorMemory(ppu.getRegister(), 0x2000));
+
+        // $4000-$401F share one page, so they are dispatched by a small composite memory.
+        // The rest of that page and the expansion area up to $6000 stay unmapped.
+        final CompositeMemory ioRegisters = new CompositeMemory(0x20);
+        ioRegisters.setMemory(0, apuRegister);
+        ioRegisters.setMemory(0x14, dmaRegister);
+        ioRegisters.setMemory(0x15, new MirrorMemory(apuRegister, 0x15, 1));
+        ioRegisters.setMemory(0x16, input);
+        ioRegisters.setMemory(0x17, new MixedMemory(1, input, 1, apuRegister, 0x17));
+        ioRegisters.setMemory(0x18, new MirrorMemory(apuRegister, 0x18, 0x20 - 0x18));
+        memory.mapHandler(0x4000, PagedMemory.PAGE_SIZE, new Memory() {
+            @Override
+            public int getSize() {
+                return PagedMemory.PAGE_SIZE;
+            }
+
+            @Override
+            public int getByte(int address) {
+                return address < 0x20 ? ioRegisters.getByte(address) : 0;
+            }
+
+            @Override
+            public void setByte(int address, int value) {
+                if (address < 0x20) {
+                    ioRegisters.setByte(address, value);
+                }
+            }
+        });
         return memory;
     }
 
     public void mapMemory(NesLoader loader, CPU cpu, PPU ppu, APU apu, Input input) {
-        CompositeMemory memory = initFirst4020BytesMemory(cpu, ppu, apu, input);
+        PagedMemory memory = initFirst4020BytesMemory(cpu, ppu, apu, input);
         if (loader.isSRAMEnabled()) {
-            memory.setMemory(0x6000, new DefaultMemory(0x2000));
+            sram = new byte[0x2000];
+            memory.mapBytes(0x6000, 0x2000, sram, 0);
         } else if (loader.is512ByteTrainerPresent()) {
-            memory.setMemory(0x7000, new ReadonlyMemory(loader.getTrainer()));
+            memory.mapRead(0x7000, loader.getTrainer().length, loader.getTrainer(), 0);
         }
 
         if (loader.getCHRPageCount() != 0) {
-            ppu.setCHRMemory(new DefaultMemory(loader.getCHRPage(0)));
+            // The page may be shared with other machines, writes to CHR ROM do nothing anyway
+            ppu.setCHRMemory(new DefaultMemory(loader.getCHRPage(0)) {
+                @Override
+                public void setByte(int address, int value) {}
+            });
         } else {
-            ppu.setCHRMemory(new DefaultMemory(0x2000));
+            chrRam = new byte[0x2000];
+            ppu.setCHRMemory(new DefaultMemory(chrRam));
         }
 
         mapMemoryImpl(memory, loader, cpu, ppu, apu, input);
 
         cpu.setMemory(memory);
+        apu.setIRQLine(cpu.getIRQLine());
+    }
 
-        cpu.addIRQGenerator(apu);
-        if (this instanceof IRQGenerator) {
-            cpu.addIRQGenerator((IRQGenerator) this);
+    public abstract void mapMemoryImpl(PagedMemory memory, NesLoader loader, CPU cpu, PPU ppu, APU APU, Input input);
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        dmaRegister.setMetrics(metrics);
+    }
+
+    protected void countBankSwitch() {
+        if (metrics != null) {
+            metrics.addBankSwitch();
         }
     }
 
-    public abstract void mapMemoryImpl(CompositeMemory memory, NesLoader loader, CPU cpu, PPU ppu, APU APU, Input input);
+    /**
+     * Subclasses save their registers after calling this.
+     */
+    public void saveState(ByteBuffer buffer) {
+        buffer.put(internalMemory);
+        if (sram != null) {
+            buffer.put(sram);
+        }
+        if (chrRam != null) {
+            buffer.put(chrRam);
+        }
+    }
 
-    public void cycle(CPU cpu) {}
+    /**
+     * Subclasses load their registers after calling this, and switch banks accordingly.
+     */
+    public void loadState(ByteBuffer buffer) {
+        buffer.get(internalMemory);
+        if (sram != null) {
+            buffer.get(sram);
+        }
+        if (chrRam != null) {
+            buffer.get(chrRam);
+        }
+    }
 }
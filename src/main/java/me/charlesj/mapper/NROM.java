@@ -2,8 +2,7 @@ package me.charlesj.mapper;
 
 import me.charlesj.apu.APU;
 import me.charlesj.input.Input;
-import me.charlesj.memory.CompositeMemory;
-import me.charlesj.memory.ReadonlyMemory;
+import me.charlesj.memory.PagedMemory;
 import me.charlesj.nesloader.NesLoader;
 import me.charlesj.cpu.CPU;
 import me.charlesj.ppu.PPU;
@@ -13,8 +12,8 @@ import me.charlesj.ppu.PPU;
  */
 public class NROM extends Mapper {
     @Override
-    public void mapMemoryImpl(CompositeMemory memory, NesLoader loader, CPU cpu, PPU ppu, APU APU, Input input) {
-        memory.setMemory(0x8000, new ReadonlyMemory(loader.getPRGPage(0)));
-        memory.setMemory(0xC000, new ReadonlyMemory(loader.getPRGPage(loader.getPRGPageCount() - 1)));
+    public void mapMemoryImpl(PagedMemory memory, NesLoader loader, CPU cpu, PPU ppu, APU APU, Input input) {
+        memory.mapRead(0x8000, 0x4000, loader.getPRGPage(0), 0);
+        memory.mapRead(0xC000, 0x4000, loader.getPRGPage(loader.getPRGPageCount() - 1), 0);
     }
 }
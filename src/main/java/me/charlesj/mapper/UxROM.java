@@ -1,29 +1,31 @@
 package me.charlesj.mapper;
 
 import me.charlesj.apu.APU;
-import me.charlesj.memory.CompositeMemory;
 import me.charlesj.memory.Memory;
-import me.charlesj.memory.MixedMemory;
-import me.charlesj.memory.ReadonlyMemory;
+import me.charlesj.memory.PagedMemory;
 import me.charlesj.nesloader.NesLoader;
 import me.charlesj.cpu.CPU;
 import me.charlesj.input.Input;
 import me.charlesj.ppu.PPU;
 
+import java.nio.ByteBuffer;
+
 /**
  * Mapper = 1
  */
 public class UxROM extends Mapper implements Memory {
 
     private NesLoader loader;
-    private CompositeMemory mainMemory;
+    private PagedMemory mainMemory;
+    private int bank;
 
     @Override
-    public void mapMemoryImpl(CompositeMemory memory, NesLoader loader, CPU cpu, PPU ppu, APU APU, Input input) {
+    public void mapMemoryImpl(PagedMemory memory, NesLoader loader, CPU cpu, PPU ppu, APU APU, Input input) {
         this.loader = loader;
         this.mainMemory = memory;
-        memory.setMemory(0x8000, new MixedMemory(0x4000, new ReadonlyMemory(loader.getPRGPage(0)), 0, this, 0));
-        memory.setMemory(0xC000, new MixedMemory(0x4000, new ReadonlyMemory(loader.getPRGPage(loader.getPRGPageCount() - 1)), 0, this, 0x4000));
+        memory.mapRead(0x8000, 0x4000, loader.getPRGPage(0), 0);
+        memory.mapRead(0xC000, 0x4000, loader.getPRGPage(loader.getPRGPageCount() - 1), 0);
+        memory.mapWriteHandler(0x8000, 0x8000, this);
     }
 
     public int getSize() {
@@ -35,6 +37,21 @@ public class UxROM extends Mapper implements Memory {
     }
 
     public void setByte(int address, int value) {
-        mainMemory.setMemory(0x8000, new MixedMemory(0x8000, new ReadonlyMemory(loader.getPRGPage(value & 0xF)), 0, this, 0));
+        countBankSwitch();
+        bank = value & 0xF;
+        mainMemory.mapRead(0x8000, 0x4000, loader.getPRGPage(bank), 0);
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        super.saveState(buffer);
+        buffer.put((byte) bank);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        super.loadState(buffer);
+        bank = buffer.get() & 0xF;
+        mainMemory.mapRead(0x8000, 0x4000, loader.getPRGPage(bank), 0);
     }
 }
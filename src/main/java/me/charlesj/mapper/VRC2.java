@@ -2,16 +2,14 @@ package me.charlesj.mapper;
 
 import me.charlesj.apu.APU;
 import me.charlesj.input.Input;
-import me.charlesj.memory.CompositeMemory;
-import me.charlesj.memory.DefaultMemory;
 import me.charlesj.memory.Memory;
-import me.charlesj.memory.MixedMemory;
-import me.charlesj.memory.ReadonlyMemory;
+import me.charlesj.memory.PagedMemory;
 import me.charlesj.nesloader.NesLoader;
 import me.charlesj.cpu.CPU;
-import me.charlesj.memory.*;
 import me.charlesj.ppu.PPU;
 
+import java.nio.ByteBuffer;
+
 /**
  * Mapper = 22, 23
  * 2020/2/2.
@@ -24,10 +22,12 @@ public class VRC2 extends Mapper implements Memory {
     private final int reversion;
 
     private NesLoader loader;
-    private CompositeMemory mainMemory;
-    private CompositeMemory chrMemory;
+    private PagedMemory mainMemory;
+    // Banks are mapped straight to CHR pages of the loader, so switching allocates nothing
+    private PagedMemory chrMemory;
     private PPU ppu;
 
+    private int[] prgRegisters = {0, 1};
     private int[] chrRegisters = new int[8];
 
     public VRC2(int reversion) {
@@ -35,25 +35,30 @@ public class VRC2 extends Mapper implements Memory {
     }
 
     @Override
-    public void mapMemoryImpl(CompositeMemory memory, NesLoader loader, CPU cpu, PPU ppu, APU APU, Input input) {
+    public void mapMemoryImpl(PagedMemory memory, NesLoader loader, CPU cpu, PPU ppu, APU APU, Input input) {
         this.ppu = ppu;
         this.loader = loader;
         this.mainMemory = memory;
 
-        memory.setMemory(0x6000, new DefaultMemory(0x2000));
+        sram = new byte[0x2000];
+        memory.mapBytes(0x6000, 0x2000, sram, 0);
 
-        memory.setMemory(0x8000, new MixedMemory(0x2000, new ReadonlyMemory(loader.getPRGPage(0), 0, 0x2000), 0, this, 0));
-        memory.setMemory(0xA000, new MixedMemory(0x2000, new ReadonlyMemory(loader.getPRGPage(0), 0x2000, 0x2000), 0, this, 0x2000));
-        memory.setMemory(0xC000, new MixedMemory(0x4000, new ReadonlyMemory(loader.getPRGPage(loader.getPRGPageCount() - 1)), 0, this, 0x4000));
+        memory.mapRead(0x8000, 0x2000, loader.getPRGPage(0), 0);
+        memory.mapRead(0xA000, 0x2000, loader.getPRGPage(0), 0x2000);
+        memory.mapRead(0xC000, 0x4000, loader.getPRGPage(loader.getPRGPageCount() - 1), 0);
+        memory.mapWriteHandler(0x8000, 0x8000, this);
 
-        chrMemory = new CompositeMemory(0x2000);
+        chrMemory = new PagedMemory(0x2000);
         for (int i=0; i<8; i++) {
             if (loader.getCHRPageCount() > 0) {
-                chrMemory.setMemory(i * 0x400, new ReadonlyMemory(loader.getCHRPage(0), i * 0x400, 0x400));
-            } else {
-                chrMemory.setMemory(i * 0x400, new ReadonlyMemory(0x400));
+                // Bank i of the first page
+                chrRegisters[i] = reversion == A ? i << 1 : i;
+                switchCHRBank(i);
             }
         }
+        if (loader.getCHRPageCount() == 0) {
+            chrMemory.mapRead(0, 0x2000, new byte[0x2000], 0);
+        }
         ppu.setCHRMemory(chrMemory);
     }
 
@@ -66,23 +71,21 @@ public class VRC2 extends Mapper implements Memory {
     }
 
     public void setByte(int address, int value) {
+        // Banks and mirroring are about to change under the PPU
+        ppu.catchUp();
         if (reversion == A) {
             address = (address & 0xFFFC) | ((address & 2) >> 1) | ((address & 1) << 1);
         }
         switch (address) {
             case 0: case 1: case 2: case 3:
-                mainMemory.setMemory(0x8000,
-                        new MixedMemory(0x2000,
-                                new ReadonlyMemory(loader.getPRGPage((value >> 1) & 0xF), (value & 1) == 0 ? 0 : 0x2000, 0x2000), 0,
-                                this, 0
-                        ));
+                prgRegisters[0] = value & 0x1F;
+                switchPRGBank(0);
+                countBankSwitch();
                 break;
             case 0x2000:case 0x2001:case 0x2002:case 0x2003:
-                mainMemory.setMemory(0xA000,
-                        new MixedMemory(0x2000,
-                                new ReadonlyMemory(loader.getPRGPage((value >> 1) & 0xF), (value & 1) == 0 ? 0 : 0x2000, 0x2000), 0,
-                                this, 0x2000
-                        ));
+                prgRegisters[1] = value & 0x1F;
+                switchPRGBank(1);
+                countBankSwitch();
                 break;
             case 0x1000:case 0x1001:case 0x1002:case 0x1003:
                 if ((value & 1) == 0) {
@@ -102,15 +105,52 @@ public class VRC2 extends Mapper implements Memory {
                 } else {
                     chrRegisters[chrId] = (chrRegisters[chrId] & 0xF) | ((value & 0xF) << 4);
                 }
-                int registerValue = chrRegisters[chrId];
-                if (reversion == A) {
-                    registerValue >>= 1;
-                }
-                chrMemory.setMemory(0x400 * chrId, new ReadonlyMemory(loader.getCHRPage(registerValue >> 3), (registerValue & 0x7) * 0x400, 0x400));
+                switchCHRBank(chrId);
+                countBankSwitch();
                 break;
             default:
                 System.out.println(address + ", " + value);
                 break;
         }
     }
+
+    private void switchPRGBank(int index) {
+        int value = prgRegisters[index];
+        mainMemory.mapRead(0x8000 + 0x2000 * index, 0x2000, loader.getPRGPage((value >> 1) & 0xF), (value & 1) == 0 ? 0 : 0x2000);
+    }
+
+    private void switchCHRBank(int chrId) {
+        int registerValue = chrRegisters[chrId];
+        if (reversion == A) {
+            registerValue >>= 1;
+        }
+        chrMemory.mapRead(0x400 * chrId, 0x400, loader.getCHRPage(registerValue >> 3), (registerValue & 0x7) * 0x400);
+        ppu.invalidatePatterns(0x400 * chrId, 0x400);
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        super.saveState(buffer);
+        for (int value : prgRegisters) {
+            buffer.put((byte) value);
+        }
+        for (int value : chrRegisters) {
+            buffer.put((byte) value);
+        }
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        super.loadState(buffer);
+        for (int i = 0; i < prgRegisters.length; i++) {
+            prgRegisters[i] = buffer.get();
+            switchPRGBank(i);
+        }
+        for (int i = 0; i < chrRegisters.length; i++) {
+            chrRegisters[i] = buffer.get() & 0xFF;
+            if (loader.getCHRPageCount() > 0) {
+                switchCHRBank(i);
+            }
+        }
+    }
 }
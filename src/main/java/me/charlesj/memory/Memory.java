@@ -8,4 +8,23 @@ public interface Memory {
     int getSize();
     int getByte(int address);
     void setByte(int address, int value);
+
+    /**
+     * Reads [address, address + length) into buffer from offset on.
+     * Implementations backed by arrays copy them at once, others read byte by byte.
+     */
+    default void getBytes(int address, byte[] buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            buffer[offset + i] = (byte) getByte(address + i);
+        }
+    }
+
+    /**
+     * Writes length bytes of buffer from offset on to [address, address + length).
+     */
+    default void setBytes(int address, byte[] buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setByte(address + i, buffer[offset + i] & 0xFF);
+        }
+    }
 }
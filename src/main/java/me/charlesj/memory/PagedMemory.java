@@ -0,0 +1,303 @@
+package me.charlesj.memory;
+
+import java.util.Arrays;
+
+/**
+ * Flat page table memory. Used to map CPU memory without searching on every access.
+ * Each page is either backed by a byte array (RAM/ROM) or falls back to a handler Memory (I/O registers, mapper
+ * registers). Read and write sides are mapped separately, so ROM pages can read directly from the PRG page while
+ * writes go to the mapper. Bank switching only patches table entries.
+ * Byte-backed pages can be watched for code decoded from them, writes through this memory to the same bytes then
+ * bump the code version of the page, see watchCode().
+ */
+public class PagedMemory implements Memory {
+
+    public static final int PAGE_SHIFT = 8;
+    public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * Used for pages nothing was mapped to. Reads return 0, writes are ignored.
+     */
+    private static final Memory UNMAPPED = new Memory() {
+        public int getSize() {
+            return 0;
+        }
+
+        public int getByte(int address) {
+            return 0;
+        }
+
+        public void setByte(int address, int value) {}
+    };
+
+    private final int size;
+    private final int pageIndexMask;
+
+    private final byte[][] readPages;
+    private final int[] readOffsets;
+    private final Memory[] readHandlers;
+    private final int[] readHandlerBases;
+
+    private final byte[][] writePages;
+    private final int[] writeOffsets;
+    private final Memory[] writeHandlers;
+    private final int[] writeHandlerBases;
+
+    // Code decoded from a read page is current while its mapping and code version are unchanged
+    private final int[] codeVersions;
+    private final boolean[] watchedReads;
+    private final boolean[] watchedWrites;
+
+    /**
+     * @param size must be a power of two and a multiple of PAGE_SIZE
+     */
+    public PagedMemory(int size) {
+        if ((size & (size - 1)) != 0 || size < PAGE_SIZE) {
+            throw new IllegalArgumentException("Size must be a power of two and at least one page");
+        }
+        int pageCount = size >> PAGE_SHIFT;
+        this.size = size;
+        this.pageIndexMask = pageCount - 1;
+        this.readPages = new byte[pageCount][];
+        this.readOffsets = new int[pageCount];
+        this.readHandlers = new Memory[pageCount];
+        this.readHandlerBases = new int[pageCount];
+        this.writePages = new byte[pageCount][];
+        this.writeOffsets = new int[pageCount];
+        this.writeHandlers = new Memory[pageCount];
+        this.writeHandlerBases = new int[pageCount];
+        this.codeVersions = new int[pageCount];
+        this.watchedReads = new boolean[pageCount];
+        this.watchedWrites = new boolean[pageCount];
+        mapHandler(0, size, UNMAPPED);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getByte(int address) {
+        int page = (address >> PAGE_SHIFT) & pageIndexMask;
+        byte[] data = readPages[page];
+        if (data != null) {
+            return data[readOffsets[page] + (address & PAGE_MASK)] & 0xFF;
+        }
+        return readHandlers[page].getByte((address & (size - 1)) - readHandlerBases[page]);
+    }
+
+    public void setByte(int address, int value) {
+        int page = (address >> PAGE_SHIFT) & pageIndexMask;
+        byte[] data = writePages[page];
+        if (data != null) {
+            data[writeOffsets[page] + (address & PAGE_MASK)] = (byte) value;
+            if (watchedWrites[page]) {
+                codeWritten(data, writeOffsets[page]);
+            }
+        } else {
+            writeHandlers[page].setByte((address & (size - 1)) - writeHandlerBases[page], value);
+        }
+    }
+
+    /**
+     * Copies byte-backed pages at once, handler pages are read byte by byte.
+     */
+    @Override
+    public void getBytes(int address, byte[] buffer, int offset, int length) {
+        while (length > 0) {
+            int page = (address >> PAGE_SHIFT) & pageIndexMask;
+            int count = Math.min(length, PAGE_SIZE - (address & PAGE_MASK));
+            byte[] data = readPages[page];
+            if (data != null) {
+                System.arraycopy(data, readOffsets[page] + (address & PAGE_MASK), buffer, offset, count);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    buffer[offset + i] = (byte) getByte(address + i);
+                }
+            }
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Copies to byte-backed pages at once, handler pages are written byte by byte.
+     */
+    @Override
+    public void setBytes(int address, byte[] buffer, int offset, int length) {
+        while (length > 0) {
+            int page = (address >> PAGE_SHIFT) & pageIndexMask;
+            int count = Math.min(length, PAGE_SIZE - (address & PAGE_MASK));
+            byte[] data = writePages[page];
+            if (data != null) {
+                System.arraycopy(buffer, offset, data, writeOffsets[page] + (address & PAGE_MASK), count);
+                if (watchedWrites[page]) {
+                    codeWritten(data, writeOffsets[page]);
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    setByte(address + i, buffer[offset + i] & 0xFF);
+                }
+            }
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Map [address, address + size) to data[offset, offset + size) for both reads and writes.
+     */
+    public void mapBytes(int address, int size, byte[] data, int offset) {
+        mapRead(address, size, data, offset);
+        mapWrite(address, size, data, offset);
+    }
+
+    /**
+     * Map reads of [address, address + size) to data[offset, offset + size). Writes are left unchanged.
+     */
+    public void mapRead(int address, int size, byte[] data, int offset) {
+        checkRange(address, size);
+        if (offset < 0 || offset + size > data.length) {
+            throw new IllegalArgumentException("Mapped range exceeds data length");
+        }
+        for (int page = address >> PAGE_SHIFT, i = 0; i < size; page++, i += PAGE_SIZE) {
+            readPages[page] = data;
+            readOffsets[page] = offset + i;
+            readHandlers[page] = null;
+        }
+    }
+
+    /**
+     * Map writes of [address, address + size) to data[offset, offset + size). Reads are left unchanged.
+     */
+    public void mapWrite(int address, int size, byte[] data, int offset) {
+        checkRange(address, size);
+        if (offset < 0 || offset + size > data.length) {
+            throw new IllegalArgumentException("Mapped range exceeds data length");
+        }
+        for (int page = address >> PAGE_SHIFT, i = 0; i < size; page++, i += PAGE_SIZE) {
+            writePages[page] = data;
+            writeOffsets[page] = offset + i;
+            writeHandlers[page] = null;
+            // Watched code may be written from here on
+            codeWritten(data, offset + i);
+        }
+    }
+
+    /**
+     * Let memory handle both reads and writes of [address, address + size).
+     * The handler receives addresses relative to the given address.
+     */
+    public void mapHandler(int address, int size, Memory memory) {
+        mapReadHandler(address, size, memory);
+        mapWriteHandler(address, size, memory);
+    }
+
+    public void mapReadHandler(int address, int size, Memory memory) {
+        checkRange(address, size);
+        for (int page = address >> PAGE_SHIFT, i = 0; i < size; page++, i += PAGE_SIZE) {
+            readPages[page] = null;
+            readHandlers[page] = memory;
+            readHandlerBases[page] = address;
+        }
+    }
+
+    public void mapWriteHandler(int address, int size, Memory memory) {
+        checkRange(address, size);
+        for (int page = address >> PAGE_SHIFT, i = 0; i < size; page++, i += PAGE_SIZE) {
+            writePages[page] = null;
+            writeHandlers[page] = memory;
+            writeHandlerBases[page] = address;
+            watchedWrites[page] = false;
+        }
+    }
+
+    /**
+     * @return array read by the page, null if a handler reads it
+     */
+    public byte[] getReadData(int page) {
+        return readPages[page];
+    }
+
+    public int getReadOffset(int page) {
+        return readOffsets[page];
+    }
+
+    /**
+     * @return version of the bytes read by the page, increased when watched bytes are written
+     */
+    public int getCodeVersion(int page) {
+        return codeVersions[page];
+    }
+
+    /**
+     * Called after code is decoded from the read page. Writes to its bytes through any page
+     * increase its code version until the next write, when it has to be watched again.
+     */
+    public void watchCode(int page) {
+        byte[] data = readPages[page];
+        if (data == null || watchedReads[page]) {
+            return;
+        }
+        for (int i = 0; i < writePages.length; i++) {
+            if (writePages[i] == data && overlaps(writeOffsets[i], readOffsets[page])) {
+                watchedWrites[i] = true;
+                watchedReads[page] = true;
+            }
+        }
+    }
+
+    /**
+     * Increases the code version of every watched page, e.g. after a state was restored into the arrays behind them.
+     */
+    public void invalidateCode() {
+        for (int page = 0; page < readPages.length; page++) {
+            if (watchedReads[page]) {
+                watchedReads[page] = false;
+                codeVersions[page]++;
+            }
+        }
+        Arrays.fill(watchedWrites, false);
+    }
+
+    /**
+     * Increases the code version of pages reading data[offset, offset + PAGE_SIZE).
+     */
+    private void codeWritten(byte[] data, int offset) {
+        for (int page = 0; page < readPages.length; page++) {
+            if (readPages[page] == data && overlaps(readOffsets[page], offset)) {
+                watchedReads[page] = false;
+                codeVersions[page]++;
+            }
+            if (writePages[page] == data && writeOffsets[page] == offset) {
+                watchedWrites[page] = false;
+            }
+        }
+    }
+
+    private static boolean overlaps(int offset1, int offset2) {
+        return offset1 < offset2 + PAGE_SIZE && offset2 < offset1 + PAGE_SIZE;
+    }
+
+    /**
+     * Same as CompositeMemory.setMemory. The memory handles reads and writes from offset to offset + memory size.
+     */
+    public void setMemory(int offset, Memory memory) {
+        int size = memory.getSize();
+        if ((size & PAGE_MASK) != 0) {
+            size = (size + PAGE_MASK) & ~PAGE_MASK;
+        }
+        mapHandler(offset, Math.min(size, this.size - offset), memory);
+    }
+
+    private void checkRange(int address, int size) {
+        if ((address & PAGE_MASK) != 0 || (size & PAGE_MASK) != 0) {
+            throw new IllegalArgumentException("Address and size must be aligned to " + PAGE_SIZE + " bytes");
+        }
+        if (address < 0 || address + size > this.size) {
+            throw new IllegalArgumentException("Mapped range exceeds memory size");
+        }
+    }
+}
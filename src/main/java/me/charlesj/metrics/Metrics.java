@@ -0,0 +1,203 @@
+package me.charlesj.metrics;
+
+import me.charlesj.speaker.DefaultSpeaker;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Opt-in counters of a machine, see Machine.setMetrics().
+ * Counted on the emulation thread without synchronization, then published as a snapshot
+ * at the end of every frame, which other threads and JMX read.
+ * Units hold null instead of a Metrics when disabled, so then only a null check is paid.
+ */
+public class Metrics implements MetricsMXBean {
+
+    static final int FRAMES = 0;
+    static final int INSTRUCTIONS = 1;
+    static final int CPU_CYCLES = 2;
+    static final int PPU_REGISTER_READS = 3;
+    static final int PPU_REGISTER_WRITES = 4;
+    static final int BANK_SWITCHES = 5;
+    static final int DMA_TRANSFERS = 6;
+    static final int NMIS = 7;
+    static final int IRQS = 8;
+    static final int CPU_NANOS = 9;
+    static final int PPU_NANOS = 10;
+    static final int APU_NANOS = 11;
+    static final int COUNTERS = 12;
+
+    private final long[] counters = new long[COUNTERS];
+    // Time counters at the end of the last frame
+    private long frameCpuNanos;
+    private long framePpuNanos;
+    private long frameApuNanos;
+
+    private volatile DefaultSpeaker speaker;
+    private volatile MetricsSnapshot snapshot = MetricsSnapshot.EMPTY;
+    private ObjectName objectName;
+
+    public void addInstruction(int cycles) {
+        counters[INSTRUCTIONS]++;
+        counters[CPU_CYCLES] += cycles;
+    }
+
+    public void addPPURegisterRead() {
+        counters[PPU_REGISTER_READS]++;
+    }
+
+    public void addPPURegisterWrite() {
+        counters[PPU_REGISTER_WRITES]++;
+    }
+
+    public void addBankSwitch() {
+        counters[BANK_SWITCHES]++;
+    }
+
+    public void addDMATransfer() {
+        counters[DMA_TRANSFERS]++;
+    }
+
+    public void addNMI() {
+        counters[NMIS]++;
+    }
+
+    public void addIRQ() {
+        counters[IRQS]++;
+    }
+
+    public void addCPUNanos(long nanos) {
+        counters[CPU_NANOS] += nanos;
+    }
+
+    public void addPPUNanos(long nanos) {
+        counters[PPU_NANOS] += nanos;
+    }
+
+    public void addAPUNanos(long nanos) {
+        counters[APU_NANOS] += nanos;
+    }
+
+    /**
+     * @return PPU time so far, so time spent by the PPU inside other units can be told apart
+     */
+    public long getPPUNanosSoFar() {
+        return counters[PPU_NANOS];
+    }
+
+    /**
+     * Called by the machine when a frame is finished, publishes a snapshot.
+     */
+    public void endFrame() {
+        counters[FRAMES]++;
+        DefaultSpeaker speaker = this.speaker;
+        snapshot = new MetricsSnapshot(System.nanoTime(), counters.clone(),
+                speaker == null ? 0 : speaker.getUnderruns(),
+                counters[CPU_NANOS] - frameCpuNanos,
+                counters[PPU_NANOS] - framePpuNanos,
+                counters[APU_NANOS] - frameApuNanos);
+        frameCpuNanos = counters[CPU_NANOS];
+        framePpuNanos = counters[PPU_NANOS];
+        frameApuNanos = counters[APU_NANOS];
+    }
+
+    /**
+     * @param speaker underruns of which are reported, null for none
+     */
+    public void setSpeaker(DefaultSpeaker speaker) {
+        this.speaker = speaker;
+    }
+
+    /**
+     * @return values at the end of the last frame, may be called from any thread
+     */
+    public MetricsSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Publishes this to the platform MBean server as me.charlesj:type=Metrics,name=[name].
+     */
+    public synchronized void register(String name) throws JMException {
+        unregister();
+        ObjectName objectName = new ObjectName("me.charlesj:type=Metrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.objectName = objectName;
+    }
+
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    public long getFrames() {
+        return snapshot.getFrames();
+    }
+
+    public long getInstructions() {
+        return snapshot.getInstructions();
+    }
+
+    public long getCpuCycles() {
+        return snapshot.getCpuCycles();
+    }
+
+    public long getPpuRegisterReads() {
+        return snapshot.getPpuRegisterReads();
+    }
+
+    public long getPpuRegisterWrites() {
+        return snapshot.getPpuRegisterWrites();
+    }
+
+    public long getBankSwitches() {
+        return snapshot.getBankSwitches();
+    }
+
+    public long getDmaTransfers() {
+        return snapshot.getDmaTransfers();
+    }
+
+    public long getNmis() {
+        return snapshot.getNmis();
+    }
+
+    public long getIrqs() {
+        return snapshot.getIrqs();
+    }
+
+    public long getAudioUnderruns() {
+        return snapshot.getAudioUnderruns();
+    }
+
+    public long getCpuNanos() {
+        return snapshot.getCpuNanos();
+    }
+
+    public long getPpuNanos() {
+        return snapshot.getPpuNanos();
+    }
+
+    public long getApuNanos() {
+        return snapshot.getApuNanos();
+    }
+
+    public long getLastFrameCpuNanos() {
+        return snapshot.getLastFrameCpuNanos();
+    }
+
+    public long getLastFramePpuNanos() {
+        return snapshot.getLastFramePpuNanos();
+    }
+
+    public long getLastFrameApuNanos() {
+        return snapshot.getLastFrameApuNanos();
+    }
+}
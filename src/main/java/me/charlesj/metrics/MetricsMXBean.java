@@ -0,0 +1,27 @@
+package me.charlesj.metrics;
+
+/**
+ * Counters of a running machine, published once per frame.
+ * Time of the CPU includes APU and mapper work done on register writes,
+ * time of the APU includes clocking the mapper.
+ */
+public interface MetricsMXBean {
+    long getFrames();
+    long getInstructions();
+    long getCpuCycles();
+    long getPpuRegisterReads();
+    long getPpuRegisterWrites();
+    long getBankSwitches();
+    long getDmaTransfers();
+    long getNmis();
+    long getIrqs();
+    long getAudioUnderruns();
+
+    long getCpuNanos();
+    long getPpuNanos();
+    long getApuNanos();
+
+    long getLastFrameCpuNanos();
+    long getLastFramePpuNanos();
+    long getLastFrameApuNanos();
+}
@@ -0,0 +1,106 @@
+package me.charlesj.metrics;
+
+/**
+ * Values of Metrics at the end of a frame.
+ */
+public class MetricsSnapshot implements MetricsMXBean {
+
+    static final MetricsSnapshot EMPTY = new MetricsSnapshot(0, new long[Metrics.COUNTERS], 0, 0, 0, 0);
+
+    private final long time;
+    private final long[] counters;
+    private final long audioUnderruns;
+    private final long lastFrameCpuNanos;
+    private final long lastFramePpuNanos;
+    private final long lastFrameApuNanos;
+
+    MetricsSnapshot(long time, long[] counters, long audioUnderruns,
+                    long lastFrameCpuNanos, long lastFramePpuNanos, long lastFrameApuNanos) {
+        this.time = time;
+        this.counters = counters;
+        this.audioUnderruns = audioUnderruns;
+        this.lastFrameCpuNanos = lastFrameCpuNanos;
+        this.lastFramePpuNanos = lastFramePpuNanos;
+        this.lastFrameApuNanos = lastFrameApuNanos;
+    }
+
+    /**
+     * @return System.nanoTime() when taken
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public long getFrames() {
+        return counters[Metrics.FRAMES];
+    }
+
+    public long getInstructions() {
+        return counters[Metrics.INSTRUCTIONS];
+    }
+
+    public long getCpuCycles() {
+        return counters[Metrics.CPU_CYCLES];
+    }
+
+    public long getPpuRegisterReads() {
+        return counters[Metrics.PPU_REGISTER_READS];
+    }
+
+    public long getPpuRegisterWrites() {
+        return counters[Metrics.PPU_REGISTER_WRITES];
+    }
+
+    public long getBankSwitches() {
+        return counters[Metrics.BANK_SWITCHES];
+    }
+
+    public long getDmaTransfers() {
+        return counters[Metrics.DMA_TRANSFERS];
+    }
+
+    public long getNmis() {
+        return counters[Metrics.NMIS];
+    }
+
+    public long getIrqs() {
+        return counters[Metrics.IRQS];
+    }
+
+    public long getAudioUnderruns() {
+        return audioUnderruns;
+    }
+
+    public long getCpuNanos() {
+        return counters[Metrics.CPU_NANOS];
+    }
+
+    public long getPpuNanos() {
+        return counters[Metrics.PPU_NANOS];
+    }
+
+    public long getApuNanos() {
+        return counters[Metrics.APU_NANOS];
+    }
+
+    public long getLastFrameCpuNanos() {
+        return lastFrameCpuNanos;
+    }
+
+    public long getLastFramePpuNanos() {
+        return lastFramePpuNanos;
+    }
+
+    public long getLastFrameApuNanos() {
+        return lastFrameApuNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("frames=%d instructions=%d cycles=%d ppuReads=%d ppuWrites=%d bankSwitches=%d dma=%d nmi=%d irq=%d underruns=%d"
+                        + " lastFrame cpu=%.2fms ppu=%.2fms apu=%.2fms",
+                getFrames(), getInstructions(), getCpuCycles(), getPpuRegisterReads(), getPpuRegisterWrites(),
+                getBankSwitches(), getDmaTransfers(), getNmis(), getIrqs(), getAudioUnderruns(),
+                lastFrameCpuNanos / 1e6, lastFramePpuNanos / 1e6, lastFrameApuNanos / 1e6);
+    }
+}
@@ -2,6 +2,7 @@ package me.charlesj.nesloader;
 
 /**
  * Loader interface.
+ * Pages and trainer may be shared by several machines, see RomCache, so they are never written.
  * 2020/1/22.
  */
 public interface NesLoader {
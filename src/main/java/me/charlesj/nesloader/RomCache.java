@@ -0,0 +1,115 @@
+package me.charlesj.nesloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Loads each distinct game once and hands the same loader to every machine running it.
+ * Files are memory-mapped to be hashed and parsed, games are keyed by the SHA-256 of the file,
+ * so copies under other names are shared as well.
+ * Loaders are kept softly and dropped when memory runs low.
+ * Pages of a shared loader are read by many machines and must never be written.
+ */
+public class RomCache {
+
+    private static final RomCache DEFAULT = new RomCache();
+
+    private final ConcurrentMap<String, SoftReference<NesLoader>> loaders = new ConcurrentHashMap<String, SoftReference<NesLoader>>();
+
+    /**
+     * @return cache shared by the whole process
+     */
+    public static RomCache getDefault() {
+        return DEFAULT;
+    }
+
+    public NesLoader load(String filename) throws IOException {
+        return load(new File(filename));
+    }
+
+    public NesLoader load(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            String hash = hash(buffer.duplicate());
+
+            SoftReference<NesLoader> reference = loaders.get(hash);
+            NesLoader loader = reference == null ? null : reference.get();
+            if (loader != null) {
+                return loader;
+            }
+
+            loader = new InputStreamNesLoader(new ByteBufferInputStream(buffer));
+            // Machines loading the same game at the same time may each parse it, the last one is kept
+            loaders.put(hash, new SoftReference<NesLoader>(loader));
+            return loader;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return games held, including ones already dropped but not yet removed
+     */
+    public int size() {
+        return loaders.size();
+    }
+
+    public void clear() {
+        loaders.clear();
+    }
+
+    private static String hash(ByteBuffer buffer) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        digest.update(buffer);
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(String.format("%02x", b & 0xFF));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Reads a mapped file without copying it to the heap first.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+    }
+}
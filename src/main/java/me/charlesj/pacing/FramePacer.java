@@ -0,0 +1,170 @@
+package me.charlesj.pacing;
+
+import me.charlesj.Emulator;
+import me.charlesj.speaker.DefaultSpeaker;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waits after each emulated frame so frames come out at the chosen speed.
+ * Waiting is done with LockSupport.parkNanos towards a deadline that advances one frame at a time,
+ * so oversleeping once is made up by the next frames instead of slowing the game down.
+ */
+public class FramePacer {
+
+    /**
+     * Frames at the NTSC rate, about 60.1 per second.
+     */
+    public static final int REAL_TIME = 0;
+    /**
+     * Emulates a frame whenever the audio buffer drains below the target fill,
+     * so audio neither underruns nor drops samples. Falls back to REAL_TIME without a speaker.
+     */
+    public static final int AUDIO_SYNCED = 1;
+    /**
+     * REAL_TIME sped up by the fast-forward multiplier.
+     */
+    public static final int FAST_FORWARD = 2;
+    /**
+     * Never waits.
+     */
+    public static final int UNTHROTTLED = 3;
+
+    // 341 * 262 / 3 CPU cycles, every other frame one dot shorter
+    public static final double CPU_CYCLES_PER_FRAME = 29780.5;
+    public static final long FRAME_NANOS = (long) (CPU_CYCLES_PER_FRAME * 1e9 / Emulator.CPU_CYCLE_PER_SECOND);
+
+    // Behind by more than this, the lost time is given up instead of running fast to catch up
+    private static final int MAX_FRAMES_BEHIND = 4;
+
+    private volatile int mode = REAL_TIME;
+    private volatile double fastForwardMultiplier = 4;
+
+    private DefaultSpeaker speaker;
+    private int targetSamples;
+
+    private long deadline;
+    private long frameEnd;
+    private long frameStart;
+
+    private final FrameTimeHistogram frameTimes = new FrameTimeHistogram();
+    private final FrameTimeHistogram emulationTimes = new FrameTimeHistogram();
+
+    public FramePacer() {
+        reset();
+    }
+
+    /**
+     * @param speaker the buffer fill of which paces AUDIO_SYNCED mode, null for none
+     */
+    public void setSpeaker(DefaultSpeaker speaker) {
+        this.speaker = speaker;
+        if (speaker != null) {
+            targetSamples = speaker.getCapacity() / 2;
+        }
+    }
+
+    public void setMode(int mode) {
+        if (mode < REAL_TIME || mode > UNTHROTTLED) {
+            throw new IllegalArgumentException("Must be a pacing mode");
+        }
+        this.mode = mode;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * @param multiplier speed of FAST_FORWARD mode relative to REAL_TIME
+     */
+    public void setFastForwardMultiplier(double multiplier) {
+        if (multiplier <= 0) {
+            throw new IllegalArgumentException("multiplier must be positive");
+        }
+        this.fastForwardMultiplier = multiplier;
+    }
+
+    public double getFastForwardMultiplier() {
+        return fastForwardMultiplier;
+    }
+
+    /**
+     * Starts timing from now, called after the emulation has been stopped for a while, e.g. paused.
+     */
+    public void reset() {
+        long now = System.nanoTime();
+        deadline = now;
+        frameEnd = now;
+        frameStart = now;
+    }
+
+    /**
+     * Called by the emulation thread after each frame, returns when the next one should start.
+     */
+    public void frameFinished() {
+        long now = System.nanoTime();
+        emulationTimes.record(now - frameStart);
+
+        int mode = this.mode;
+        if (mode == AUDIO_SYNCED && speaker != null) {
+            waitForAudio(now);
+        } else if (mode == REAL_TIME || mode == AUDIO_SYNCED) {
+            waitForDeadline(FRAME_NANOS, now);
+        } else if (mode == FAST_FORWARD) {
+            waitForDeadline((long) (FRAME_NANOS / fastForwardMultiplier), now);
+        } else {
+            deadline = now;
+        }
+
+        now = System.nanoTime();
+        frameTimes.record(now - frameEnd);
+        frameEnd = now;
+        frameStart = now;
+    }
+
+    private void waitForDeadline(long frameNanos, long now) {
+        deadline += frameNanos;
+        if (now - deadline > MAX_FRAMES_BEHIND * frameNanos) {
+            deadline = now;
+        }
+        parkUntil(deadline);
+    }
+
+    /**
+     * Waits while more than the target is buffered, at most a few frames in case audio is stuck.
+     */
+    private void waitForAudio(long now) {
+        long giveUp = now + MAX_FRAMES_BEHIND * FRAME_NANOS;
+        int excess;
+        while ((excess = speaker.getBufferedSamples() - targetSamples) > 0) {
+            long remaining = giveUp - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(Math.min(excess * 1000000000L / speaker.getSampleRate(), remaining));
+        }
+        deadline = System.nanoTime();
+    }
+
+    private static void parkUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * @return time from the end of one frame to the end of the next, waiting included
+     */
+    public FrameTimeHistogram getFrameTimes() {
+        return frameTimes;
+    }
+
+    /**
+     * @return time spent emulating each frame
+     */
+    public FrameTimeHistogram getEmulationTimes() {
+        return emulationTimes;
+    }
+}
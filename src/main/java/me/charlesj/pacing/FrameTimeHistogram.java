@@ -0,0 +1,83 @@
+package me.charlesj.pacing;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts frame times in buckets of BUCKET_MICROS, the last bucket takes everything longer.
+ * Written by one thread, may be read by others while it is written.
+ */
+public class FrameTimeHistogram {
+
+    public static final int BUCKET_MICROS = 250;
+    public static final int BUCKET_COUNT = 200;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private volatile long count = 0;
+    private volatile long totalNanos = 0;
+    private volatile long maxNanos = 0;
+
+    public void record(long nanos) {
+        int bucket = (int) Math.min(nanos / 1000 / BUCKET_MICROS, BUCKET_COUNT - 1);
+        buckets.lazySet(bucket, buckets.get(bucket) + 1);
+        totalNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+        count++;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.lazySet(i, 0);
+        }
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return frames in [i * BUCKET_MICROS, (i + 1) * BUCKET_MICROS) microseconds
+     */
+    public long getBucket(int i) {
+        return buckets.get(i);
+    }
+
+    public double getMeanMillis() {
+        long count = this.count;
+        return count == 0 ? 0 : totalNanos / 1e6 / count;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos / 1e6;
+    }
+
+    /**
+     * @param percentile 0 ~ 100
+     * @return upper bound of the bucket the percentile falls in, in milliseconds
+     */
+    public double getPercentileMillis(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += buckets.get(i);
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return (i + 1) * BUCKET_MICROS / 1000.0;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+                getCount(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(99), getMaxMillis());
+    }
+}
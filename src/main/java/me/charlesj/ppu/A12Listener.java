@@ -0,0 +1,9 @@
+package me.charlesj.ppu;
+
+/**
+ * Notified when PPU address line A12 rises while fetching patterns, i.e. once per rendered scanline
+ * if background and sprites use different pattern tables. Used by mappers counting scanlines.
+ */
+public interface A12Listener {
+    void a12Rising();
+}
@@ -1,14 +1,16 @@
 package me.charlesj.ppu;
 
 import me.charlesj.memory.Memory;
+import me.charlesj.metrics.Metrics;
 import me.charlesj.screen.Screen;
 import me.charlesj.cpu.CPU;
+import me.charlesj.state.Savable;
 
 /**
  * PPU interface.
  * 2020/1/22.
  */
-public interface PPU {
+public interface PPU extends Savable {
 
     int SCREEN_WIDTH = 256;
     int SCREEN_HEIGHT = 240;
@@ -19,8 +21,19 @@ public interface PPU {
     int FOUR_SCREEN_MIRRORING = 3;
 
     void setCHRMemory(Memory chrRom);
+
+    /**
+     * Called when CHR memory in the range changed without a write through the PPU, e.g. a bank switch,
+     * so patterns decoded from it are dropped.
+     */
+    void invalidatePatterns(int address, int size);
     void setMirroringType(int mirroringType);
 
+    /**
+     * The listener is called in PPU time, as the dot raising A12 runs. Catch-up mode runs dots up to there in time.
+     */
+    void addA12Listener(A12Listener listener);
+
     PPURegister getRegister();
     Memory getSprRam();
 
@@ -28,6 +41,43 @@ public interface PPU {
     int readRegister(int index);
 
     void cycle(Screen screen, CPU cpu);
+
+    /**
+     * Clocks the PPU by given dots. In catch-up mode the dots are only counted,
+     * and run when something may observe them, see catchUp().
+     */
+    void advance(Screen screen, CPU cpu, int dots);
+
+    /**
+     * Runs the dots counted by advance() so far.
+     * Called before PPU registers, sprite RAM, CHR banks or mirroring are accessed,
+     * and whenever a frame ends or vertical blank begins.
+     */
+    void catchUp();
+
+    /**
+     * @param catchUp true to run dots lazily, false to run each dot as soon as it is clocked
+     */
+    void setCatchUp(boolean catchUp);
+    boolean isCatchUp();
+
+    /**
+     * @param skip true to compose no pixels and leave the screen alone, e.g. for frames not displayed.
+     *             Sprite 0 hit, sprite overflow and scrolling run as when rendering.
+     *             Best changed between frames, a frame changed in is partly drawn.
+     */
+    void setSkipRendering(boolean skip);
+    boolean isSkipRendering();
+
+    /**
+     * @param metrics counts register accesses and the time spent running dots, null for none
+     */
+    void setMetrics(Metrics metrics);
+
+    /**
+     * @return frames finished, increased when vertical blank lines begin
+     */
+    long getFrameCount();
     void powerUp();
     void reset();
 
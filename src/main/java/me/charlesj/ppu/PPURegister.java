@@ -2,6 +2,11 @@ package me.charlesj.ppu;
 
 import me.charlesj.memory.DefaultMemory;
 import me.charlesj.memory.Memory;
+import me.charlesj.metrics.Metrics;
+import me.charlesj.state.Savable;
+import me.charlesj.state.StateBuffers;
+
+import java.nio.ByteBuffer;
 
 import java.util.Arrays;
 
@@ -9,7 +14,7 @@ import java.util.Arrays;
  * Register used by PPU. Can be accessed by CPU as memory.
  * 2020/1/24.
  */
-public class PPURegister extends DefaultMemory implements Memory {
+public class PPURegister extends DefaultMemory implements Memory, Savable {
 
     private int v;
     private int t;
@@ -17,14 +22,23 @@ public class PPURegister extends DefaultMemory implements Memory {
     private boolean w;
 
     private final PPU ppu;
+    private Metrics metrics;
 
     public PPURegister(PPU ppu) {
         super(8);
         this.ppu = ppu;
     }
 
+    void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
     @Override
     public void setByte(int address, int value) {
+        if (metrics != null) {
+            metrics.addPPURegisterWrite();
+        }
+        ppu.catchUp();
         super.setByte(address, value);
         switch (address) {
             case 0:
@@ -57,6 +71,10 @@ public class PPURegister extends DefaultMemory implements Memory {
 
     @Override
     public int getByte(int address) {
+        if (metrics != null) {
+            metrics.addPPURegisterRead();
+        }
+        ppu.catchUp();
         if (address == 2) {
             w = false;
         }
@@ -271,4 +289,18 @@ public class PPURegister extends DefaultMemory implements Memory {
     public int getV() {
         return v;
     }
+
+    public void saveState(ByteBuffer buffer) {
+        buffer.put(data);
+        buffer.putShort((short) v).putShort((short) t).put((byte) x);
+        StateBuffers.putBoolean(buffer, w);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        buffer.get(data);
+        v = buffer.getShort() & 0x7FFF;
+        t = buffer.getShort() & 0x7FFF;
+        x = buffer.get();
+        w = StateBuffers.getBoolean(buffer);
+    }
 }
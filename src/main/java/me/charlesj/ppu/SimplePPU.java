@@ -5,8 +5,10 @@ import me.charlesj.memory.CompositeMemory;
 import me.charlesj.memory.DefaultMemory;
 import me.charlesj.memory.Memory;
 import me.charlesj.memory.MirrorMemory;
+import me.charlesj.metrics.Metrics;
 import me.charlesj.screen.Screen;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -20,27 +22,58 @@ public class SimplePPU implements PPU {
     private CompositeMemory m = new CompositeMemory(0x10000);
 
     // sprRam
-    private Memory sm = new DefaultMemory(256);
+    private byte[] spriteRamData = new byte[256];
+    private Memory sm = new SpriteRam();
 
+    private byte[][] nameTableData = new byte[4][0x400];
     private Memory[] splitNameTables = new Memory[4];
     private CompositeMemory nameTables = new CompositeMemory(0x1000);
     private Memory patterns = new DefaultMemory(0x2000);
+    private Memory patternTables = new PatternTables();
+    // Name table of each quarter of $2000-$2FFF after mirroring
+    private byte[][] nameTableMap = new byte[4][];
+
+    // Background tiles expanded to a byte per pixel, 64 per tile, decoded when first drawn
+    private byte[] decodedTiles = new byte[512 * 64];
+    private boolean[] tileDecoded = new boolean[512];
+    private byte[] tileColors = new byte[4];
+    private byte[] paletteData = new byte[0x20];
     private Memory palettes = new Palettes();
 
+    private static final int DOTS_PER_SCANLINE = 341;
+    private static final int DOTS_PER_FRAME = DOTS_PER_SCANLINE * 262;
+    // Positions catch-up must not run past: the frame counter ticks when line 240 starts,
+    // vertical blank and NMI happen at dot 1 of line 241.
+    private static final int FRAME_END_POSITION = SCREEN_HEIGHT * DOTS_PER_SCANLINE;
+    private static final int VERTICAL_BLANK_POSITION = 241 * DOTS_PER_SCANLINE + 2;
+
     private int scanline = 261;
     private int cycle = 0;
+    private long frameCount = 0;
+
+    private boolean catchUp = true;
+    private int pendingDots = 0;
+    private int dotsToSync = 0;
+    private Screen catchUpScreen;
+    private CPU catchUpCPU;
+
+    private Metrics metrics;
+
+    private A12Listener[] a12Listeners = new A12Listener[0];
 
+    // Sprite RAM offsets of the sprites on the line being rendered
+    private int[] secondarySpriteRam = new int[8];
     /**
      * byte 0 = 1: is sprite 0, 0: not
      * byte 1 = 1: behind, 0: not
      */
-    private byte[][] spriteAttributes = new byte[SCREEN_HEIGHT][SCREEN_WIDTH];
-    private byte[][] spriteBuffer = new byte[SCREEN_HEIGHT][SCREEN_WIDTH];
+    private byte[] spriteAttributeLine = new byte[SCREEN_WIDTH];
+    private byte[] spriteLine = new byte[SCREEN_WIDTH];
     private byte[][] buffer = new byte[SCREEN_HEIGHT][SCREEN_WIDTH];
 
-    private int[] scanlineSpriteCount = new int[SCREEN_HEIGHT];
-
     private int sprite0HitCycle = -1;
+    // Pixels are not composed, see setSkipRendering()
+    private boolean skipRendering = false;
 
     private int renderY = 0;
     private int renderX = 0;
@@ -49,14 +82,13 @@ public class SimplePPU implements PPU {
 
     public SimplePPU() {
         for (int i=0; i<4; i++) {
-            splitNameTables[i] = new DefaultMemory(0x400);
+            splitNameTables[i] = new DefaultMemory(nameTableData[i]);
             nameTables.setMemory(0x400 * i, splitNameTables[i]);
+            nameTableMap[i] = nameTableData[i];
         }
-        resetVRamMemory();
-    }
-
-    private void resetVRamMemory() {
-        m.setMemory(0, patterns);
+        Arrays.fill(spriteLine, (byte) -1);
+        // Mapped once, CHR memory and mirroring change behind patternTables and nameTables
+        m.setMemory(0, patternTables);
         m.setMemory(0x2000, nameTables);
         m.setMemory(0x3000, new MirrorMemory(nameTables, 0xF00));
         m.setMemory(0x3F00, palettes);
@@ -65,14 +97,16 @@ public class SimplePPU implements PPU {
     }
 
     public void setCHRMemory(Memory chrRom) {
+        catchUp();
         patterns = chrRom;
-        resetVRamMemory();
+        invalidatePatterns(0, 0x2000);
     }
 
     public void setMirroringType(int mirroringType) {
         if (mirroringType == this.mirroringType) {
             return;
         }
+        catchUp();
         switch (mirroringType) {
             case HORIZONTAL_MIRRORING: {
                 Memory leftTop = splitNameTables[0];
@@ -81,6 +115,7 @@ public class SimplePPU implements PPU {
                 nameTables.setMemory(0x400, leftTop);
                 nameTables.setMemory(0x800, leftBottom);
                 nameTables.setMemory(0xC00, leftBottom);
+                mapNameTables(0, 0, 1, 1);
                 break;
             }
             case VERTICAL_MIRRORING: {
@@ -90,23 +125,39 @@ public class SimplePPU implements PPU {
                 nameTables.setMemory(0x400, rightTop);
                 nameTables.setMemory(0x800, leftTop);
                 nameTables.setMemory(0xC00, rightTop);
+                mapNameTables(0, 1, 0, 1);
                 break;
             }
             case FOUR_SCREEN_MIRRORING:
                 for (int i=0; i<4; i++) {
                     nameTables.setMemory(0x400 * i, splitNameTables[i]);
                 }
+                mapNameTables(0, 1, 2, 3);
                 break;
             case ONE_SCREEN_MIRRORING:
                 for (int i=0; i<4; i++) {
                     nameTables.setMemory(0x400 * i, splitNameTables[1]);
                 }
+                mapNameTables(1, 1, 1, 1);
                 break;
             default:
                 throw new IllegalArgumentException("Must be a mirroring type");
         }
         this.mirroringType = mirroringType;
-        resetVRamMemory();
+    }
+
+    private void mapNameTables(int q0, int q1, int q2, int q3) {
+        nameTableMap[0] = nameTableData[q0];
+        nameTableMap[1] = nameTableData[q1];
+        nameTableMap[2] = nameTableData[q2];
+        nameTableMap[3] = nameTableData[q3];
+    }
+
+    public void addA12Listener(A12Listener listener) {
+        catchUp();
+        a12Listeners = Arrays.copyOf(a12Listeners, a12Listeners.length + 1);
+        a12Listeners[a12Listeners.length - 1] = listener;
+        dotsToSync = Math.min(dotsToSync, dotsUntilA12());
     }
 
     public PPURegister getRegister() {
@@ -161,6 +212,185 @@ public class SimplePPU implements PPU {
     }
 
     public void cycle(Screen screen, CPU cpu) {
+        runDot(cpu, cycle);
+        if (scanline < SCREEN_HEIGHT) {
+            outputPixels(screen, cycle, cycle + 1);
+        }
+        moveTo(cycle + 1);
+        if (scanline == SCREEN_HEIGHT && cycle == 0 && !skipRendering) {
+            screen.finishFrame();
+        }
+    }
+
+    public void advance(Screen screen, CPU cpu, int dots) {
+        if (!catchUp) {
+            long start = metrics != null ? System.nanoTime() : 0;
+            for (int i = 0; i < dots; i++) {
+                cycle(screen, cpu);
+            }
+            if (metrics != null) {
+                metrics.addPPUNanos(System.nanoTime() - start);
+            }
+            return;
+        }
+        catchUpScreen = screen;
+        catchUpCPU = cpu;
+        pendingDots += dots;
+        if (pendingDots >= dotsToSync) {
+            catchUp();
+        }
+    }
+
+    public void catchUp() {
+        if (metrics != null && pendingDots > 0) {
+            long start = System.nanoTime();
+            runPendingDots();
+            metrics.addPPUNanos(System.nanoTime() - start);
+        } else {
+            runPendingDots();
+        }
+    }
+
+    private void runPendingDots() {
+        while (pendingDots > 0) {
+            int to = Math.min(DOTS_PER_SCANLINE, cycle + pendingDots);
+            pendingDots -= to - cycle;
+            runSpan(catchUpScreen, catchUpCPU, cycle, to);
+            moveTo(to);
+            if (scanline == SCREEN_HEIGHT && cycle == 0 && !skipRendering) {
+                catchUpScreen.finishFrame();
+            }
+        }
+        dotsToSync = Math.min(dotsUntil(FRAME_END_POSITION), dotsUntil(VERTICAL_BLANK_POSITION));
+        if (a12Listeners.length != 0) {
+            dotsToSync = Math.min(dotsToSync, dotsUntilA12());
+        }
+    }
+
+    public void setCatchUp(boolean catchUp) {
+        catchUp();
+        this.catchUp = catchUp;
+    }
+
+    public boolean isCatchUp() {
+        return catchUp;
+    }
+
+    public void setSkipRendering(boolean skip) {
+        catchUp();
+        this.skipRendering = skip;
+    }
+
+    public boolean isSkipRendering() {
+        return skipRendering;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        r.setMetrics(metrics);
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    private int dotsUntil(int position) {
+        int dots = position - (scanline * DOTS_PER_SCANLINE + cycle);
+        return dots <= 0 ? dots + DOTS_PER_FRAME : dots;
+    }
+
+    /**
+     * @return dot of rendering lines A12 rises at, when sprite patterns are fetched from $1000 or else the next line's background
+     */
+    private int a12Dot() {
+        return r.getBackgroundPatternTableAddress() == 0 ? 260 : 324;
+    }
+
+    /**
+     * @return dots until the next one that may raise A12 is run.
+     * Both candidates are synced at, as the pattern table can change until the dot is run.
+     */
+    private int dotsUntilA12() {
+        int dot = cycle <= 260 || cycle > 324 ? 260 : 324;
+        int line = cycle > 324 ? scanline + 1 : scanline;
+        if (line == 262) {
+            line = 0;
+        } else if (line >= SCREEN_HEIGHT && line != 261) {
+            line = 261;
+        }
+        return dotsUntil(line * DOTS_PER_SCANLINE + dot + 1);
+    }
+
+    private void moveTo(int to) {
+        cycle = to;
+        if (cycle == DOTS_PER_SCANLINE) {
+            cycle = 0;
+            scanline++;
+            if (scanline == SCREEN_HEIGHT) {
+                frameCount++;
+            } else if (scanline == 262) {
+                scanline = 0;
+            }
+        }
+    }
+
+    /**
+     * Runs dots [from, to) of current scanline at once.
+     * Nothing but the PPU itself changes its state in between, so only the dots doing something are visited,
+     * and pixels between them are output in one go.
+     */
+    private void runSpan(Screen screen, CPU cpu, int from, int to) {
+        int dot = from;
+        while (dot < to) {
+            runDot(cpu, dot);
+            int end = Math.min(nextEventDot(dot + 1), to);
+            if (scanline < SCREEN_HEIGHT) {
+                outputPixels(screen, dot, end);
+            }
+            dot = end;
+        }
+    }
+
+    /**
+     * @return the first dot not before the given one that runDot does something at
+     */
+    private int nextEventDot(int dot) {
+        if (scanline == 241) {
+            return dot <= 1 ? 1 : DOTS_PER_SCANLINE;
+        }
+        if (scanline != 261 && scanline >= SCREEN_HEIGHT) {
+            return DOTS_PER_SCANLINE;
+        }
+        if (scanline == 261 && dot <= 1) {
+            return 1;
+        }
+        if (dot <= SCREEN_WIDTH) {
+            return (dot + 7) & ~7;
+        }
+        if (dot <= 257) {
+            return 257;
+        }
+        boolean a12 = a12Listeners.length != 0;
+        if (a12 && dot <= 260) {
+            return 260;
+        }
+        // Dots 281 to 304 repeat dot 280 and are skipped
+        if (scanline == 261 && dot <= 280) {
+            return 280;
+        }
+        if (a12 && dot <= 324) {
+            return 324;
+        }
+        if (dot <= 328) {
+            return 328;
+        }
+        if (dot <= 336) {
+            return 336;
+        }
+        return DOTS_PER_SCANLINE;
+    }
+
+    private void runDot(CPU cpu, int cycle) {
         if (scanline == 261) {  //Pre-render line
             if (cycle == 1) {
                 r.clearVerticalBlank();
@@ -171,7 +401,6 @@ public class SimplePPU implements PPU {
                 if (r.isRenderingEnabled()) {
                     r.updateTToV(0x7BE0);   //update y
                 }
-                preRenderSprites();
             }
         } else if (scanline == 241) {
             if (cycle == 1) {
@@ -193,40 +422,52 @@ public class SimplePPU implements PPU {
                     }
                 }
             }
-            if (cycle == 257) {
-                if (r.isRenderingEnabled()) {
-                    r.updateTToV(0x41F);  //update x
-                    renderX = 0;
-                    renderY++;
-                    sprite0HitCycle = -1;
+            if (cycle == 260 || cycle == 324) {
+                if (cycle == a12Dot() && r.isRenderingEnabled()) {
+                    for (A12Listener listener : a12Listeners) {
+                        listener.a12Rising();
+                    }
                 }
             }
-        }
-
-        if (scanline >= 0 && scanline < SCREEN_HEIGHT) {
-            if (cycle > 0 && cycle <= SCREEN_WIDTH) {
-                if (cycle == 1) {
-                    cycle = 1;
-                }
+            if (cycle == 257) {
+                // The next line is drawn on its own row even if rendering is off now
+                renderX = 0;
+                renderY++;
+                sprite0HitCycle = -1;
                 if (r.isRenderingEnabled()) {
-                    screen.set(cycle - 1, scanline, buffer[scanline][cycle - 1]);
+                    r.updateTToV(0x41F);  //update x
+                    // Fetched ahead with the first tiles of the next line
+                    evaluateSprites(renderY);
                 } else {
-                    screen.set(cycle - 1, scanline, palettes.getByte(0));
-                }
-                if (r.showBackground() && r.showSprites() && sprite0HitCycle == cycle) {
-                    r.setSprite0Hit();
+                    // Nothing is fetched, the sprites of this line must not show up on the next one
+                    clearSpriteLine();
                 }
             }
         }
+    }
 
-        cycle++;
-        if (cycle == 341) {
-            cycle = 0;
-            scanline++;
-            if (scanline == 262) {
-                scanline = 0;
+    /**
+     * Outputs pixels of dots [from, to) of a visible scanline.
+     */
+    private void outputPixels(Screen screen, int from, int to) {
+        from = Math.max(from, 1);
+        to = Math.min(to, SCREEN_WIDTH + 1);
+        if (from >= to) {
+            return;
+        }
+        if (skipRendering) {
+            // Only sprite 0 hit is output
+        } else if (r.isRenderingEnabled()) {
+            screen.setLine(scanline, buffer[scanline], from - 1, to - 1);
+        } else {
+            int backdropColor = palettes.getByte(0);
+            for (int cycle = from; cycle < to; cycle++) {
+                screen.set(cycle - 1, scanline, backdropColor);
             }
         }
+        if (r.showBackground() && r.showSprites() && sprite0HitCycle >= from && sprite0HitCycle < to) {
+            r.setSprite0Hit();
+        }
     }
 
     public void powerUp() {
@@ -237,9 +478,57 @@ public class SimplePPU implements PPU {
         r.reset();
         scanline = 261;
         cycle = 0;
+        pendingDots = 0;
+        catchUp();
+    }
+
+    /**
+     * Dots pending in catch-up mode are dropped, call catchUp() first to keep them.
+     */
+    public void saveState(ByteBuffer buffer) {
+        r.saveState(buffer);
+        for (byte[] nameTable : nameTableData) {
+            buffer.put(nameTable);
+        }
+        buffer.put(paletteData);
+        buffer.put(spriteRamData);
+        buffer.putShort((short) scanline).putShort((short) cycle).putLong(frameCount);
+        buffer.putShort((short) sprite0HitCycle).putShort((short) renderX).putShort((short) renderY);
+        buffer.put((byte) mirroringType);
+        // Background of the line being output and the one fetched ahead
+        int line = scanline < SCREEN_HEIGHT ? scanline : 0;
+        buffer.put(this.buffer[line]);
+        buffer.put(this.buffer[Math.min(line + 1, SCREEN_HEIGHT - 1)]);
+        buffer.put(spriteLine);
+        buffer.put(spriteAttributeLine);
+    }
+
+    public void loadState(ByteBuffer buffer) {
+        pendingDots = 0;
+        r.loadState(buffer);
+        for (byte[] nameTable : nameTableData) {
+            buffer.get(nameTable);
+        }
+        buffer.get(paletteData);
+        buffer.get(spriteRamData);
+        scanline = buffer.getShort();
+        cycle = buffer.getShort();
+        frameCount = buffer.getLong();
+        sprite0HitCycle = buffer.getShort();
+        renderX = buffer.getShort();
+        renderY = buffer.getShort();
+        setMirroringType(buffer.get());
+        int line = scanline < SCREEN_HEIGHT ? scanline : 0;
+        buffer.get(this.buffer[line]);
+        buffer.get(this.buffer[Math.min(line + 1, SCREEN_HEIGHT - 1)]);
+        buffer.get(spriteLine);
+        buffer.get(spriteAttributeLine);
+
+        catchUp();
     }
 
     public boolean inVerticalBlank() {
+        catchUp();
         return scanline >= SCREEN_HEIGHT;
     }
 
@@ -248,13 +537,15 @@ public class SimplePPU implements PPU {
             return;
         }
 
+        if (skipRendering) {
+            testSprite0Hit();
+            return;
+        }
+
         byte[] bufferLine = buffer[renderY];
         int x = renderX - r.getFineXScroll();
 
-        for (int i = x; i < x + 8; i++) {
-            if (i < 0 || i >= SCREEN_WIDTH) {
-                continue;
-            }
+        for (int i = Math.max(x, 0); i < x + 8 && i < SCREEN_WIDTH; i++) {
             bufferLine[i] = -1;
         }
 
@@ -262,7 +553,8 @@ public class SimplePPU implements PPU {
             return;
         }
 
-        int attribute = m.getByte(r.getAttributeAddress());
+        int attributeAddress = r.getAttributeAddress();
+        int attribute = nameTableMap[(attributeAddress >> 10) & 3][attributeAddress & 0x3FF];
         int palette;
         boolean left = r.isPaletteLeft();
         boolean top = r.isPaletteTop();
@@ -276,154 +568,189 @@ public class SimplePPU implements PPU {
             palette = (attribute >> 6) & 3;
         }
 
-        int y = r.getFineYScroll();
-        int pattern = m.getByte(r.getTileAddress());
-        int patternAddress = r.getBackgroundPatternTableAddress() + (pattern << 4);
-        int patternLow = m.getByte(patternAddress + y);
-        int patternHigh = m.getByte(patternAddress + y + 8);
+        int tileAddress = r.getTileAddress();
+        int pattern = nameTableMap[(tileAddress >> 10) & 3][tileAddress & 0x3FF] & 0xFF;
+        int tile = (r.getBackgroundPatternTableAddress() >> 4) + pattern;
+        if (!tileDecoded[tile]) {
+            decodeTile(tile);
+        }
+        int row = (tile << 6) | (r.getFineYScroll() << 3);
+
         int paletteAddress = palette << 2;
+        tileColors[1] = (byte) palettes.getByte(paletteAddress | 1);
+        tileColors[2] = (byte) palettes.getByte(paletteAddress | 2);
+        tileColors[3] = (byte) palettes.getByte(paletteAddress | 3);
 
-        byte[] spriteBufferLine = spriteBuffer[renderY];
-        byte[] spriteAttributeLine = spriteAttributes[renderY];
+        boolean showSprites = r.showSprites();
+        int firstX = r.showLeftmost8PixelsBackground() ? 0 : 8;
 
         byte backdropColor = (byte) palettes.getByte(0);
 
-        for (int i = x; i < x + 8; i++) {
-            if (i < SCREEN_WIDTH && (i >= 8 || (r.showLeftmost8PixelsBackground() && i >= 0))) {
-                int v = ((patternHigh >> 6) & 2) | ((patternLow >> 7) & 1);
-                if (v != 0) {
-                    bufferLine[i] = (byte) palettes.getByte(paletteAddress | v);
-                }
-                if (r.showSprites() && spriteBufferLine[i] != -1) {
-                    int attr = spriteAttributeLine[i];
-                    if (sprite0HitCycle == -1 && (attr & 1) != 0 && bufferLine[i] != -1) {
-                        sprite0HitCycle = i + 1;
-                    }
-                    if (bufferLine[i] == -1 || (attr & 2) == 0) {
-                        bufferLine[i] = spriteBufferLine[i];
-                    }
+        for (int i = Math.max(x, firstX), end = Math.min(x + 8, SCREEN_WIDTH); i < end; i++) {
+            int v = decodedTiles[row + i - x];
+            if (v != 0) {
+                bufferLine[i] = tileColors[v];
+            }
+            if (showSprites && spriteLine[i] != -1) {
+                int attr = spriteAttributeLine[i];
+                if (sprite0HitCycle == -1 && (attr & 1) != 0 && bufferLine[i] != -1) {
+                    sprite0HitCycle = i + 1;
                 }
-                if (bufferLine[i] == -1) {
-                    bufferLine[i] = backdropColor;
+                if (bufferLine[i] == -1 || (attr & 2) == 0) {
+                    bufferLine[i] = spriteLine[i];
                 }
             }
-            patternHigh <<= 1;
-            patternLow <<= 1;
+            if (bufferLine[i] == -1) {
+                bufferLine[i] = backdropColor;
+            }
         }
 
         renderX += 8;
     }
 
-    private void preRenderSprites() {
-        for (int j=0; j<SCREEN_HEIGHT; j++) {
-            for (int i=0; i<SCREEN_WIDTH; i++) {
-                spriteBuffer[j][i] = -1;
-                spriteAttributes[j][i] = 0;
-            }
+    /**
+     * renderTileLine() composing no pixels, only finding where sprite 0 first overlaps the background of the tile.
+     */
+    private void testSprite0Hit() {
+        if (!r.showBackground()) {
+            return;
         }
-
-        if (!r.showSprites()) {
+        int x = renderX - r.getFineXScroll();
+        renderX += 8;
+        if (sprite0HitCycle != -1 || !r.showSprites()) {
+            return;
+        }
+        int firstX = r.showLeftmost8PixelsBackground() ? 0 : 8;
+        int start = Math.max(x, firstX);
+        int end = Math.min(x + 8, SCREEN_WIDTH);
+        int i = start;
+        while (i < end && (spriteAttributeLine[i] & 1) == 0) {
+            i++;
+        }
+        if (i == end) {
             return;
         }
 
-        int patternTableAddress = r.getSpritePatternTableAddress();
-        boolean is8x16 = r.is8x16();
-
-        Arrays.fill(scanlineSpriteCount, 0);
-
-        for (int i=256-4; i>=0; i-=4) {
-            int id = i >> 2;
-            int y = sm.getByte(i) + 1;
-            int pattern = sm.getByte(i + 1);
-            int attribute = sm.getByte(i + 2);
-            int x = sm.getByte(i + 3);
-            int palette = attribute & 3;
-            boolean behindBackground = (attribute & 0x20) != 0;
-            boolean flipHorizontally = (attribute & 0x40) != 0;
-            boolean flipVertically = (attribute & 0x80) != 0;
+        int tileAddress = r.getTileAddress();
+        int pattern = nameTableMap[(tileAddress >> 10) & 3][tileAddress & 0x3FF] & 0xFF;
+        int tile = (r.getBackgroundPatternTableAddress() >> 4) + pattern;
+        if (!tileDecoded[tile]) {
+            decodeTile(tile);
+        }
+        int row = (tile << 6) | (r.getFineYScroll() << 3);
+        for (; i < end; i++) {
+            if ((spriteAttributeLine[i] & 1) != 0 && decodedTiles[row + i - x] != 0) {
+                sprite0HitCycle = i + 1;
+                return;
+            }
+        }
+    }
 
-            if (y >= 240) {
-                continue;
+    /**
+     * Expands the two bit planes of a tile to one byte per pixel.
+     * @param tile 0 ~ 511, pattern address >> 4
+     */
+    private void decodeTile(int tile) {
+        int address = tile << 4;
+        int pixel = tile << 6;
+        for (int y = 0; y < 8; y++) {
+            int low = patterns.getByte(address + y);
+            int high = patterns.getByte(address + y + 8);
+            for (int shift = 7; shift >= 0; shift--) {
+                decodedTiles[pixel++] = (byte) (((high >> shift) & 1) << 1 | ((low >> shift) & 1));
             }
+        }
+        tileDecoded[tile] = true;
+    }
 
-            if (is8x16) {
-                for (int j=0; j<16; j++) {
-                    if (y+j >= 0 && y+j < SCREEN_HEIGHT) {
-                        scanlineSpriteCount[y+j]++;
-                    }
-                }
+    public void invalidatePatterns(int address, int size) {
+        int first = Math.max(address, 0) >> 4;
+        int last = Math.min(address + size, 0x2000) - 1 >> 4;
+        for (int tile = first; tile <= last; tile++) {
+            tileDecoded[tile] = false;
+        }
+    }
 
-                patternTableAddress = (pattern & 1) << 12;
-                pattern &= ~1;
+    private void clearSpriteLine() {
+        Arrays.fill(spriteLine, (byte) -1);
+        Arrays.fill(spriteAttributeLine, (byte) 0);
+    }
 
-                if (flipVertically) {
-                    preRenderSprite(id, x, y, patternTableAddress + ((pattern + 1) << 4), 0x10 + (palette << 2), behindBackground, flipHorizontally, true);
-                    preRenderSprite(id, x, y + 8, patternTableAddress + (pattern << 4), 0x10 + (palette << 2), behindBackground, flipHorizontally, true);
-                } else {
-                    preRenderSprite(id, x, y, patternTableAddress + (pattern << 4), 0x10 + (palette << 2), behindBackground, flipHorizontally, false);
-                    preRenderSprite(id, x, y + 8, patternTableAddress + ((pattern + 1) << 4), 0x10 + (palette << 2), behindBackground, flipHorizontally, false);
-                }
-            } else {
-                for (int j=0; j<8; j++) {
-                    if (y+j >= 0 && y+j < SCREEN_HEIGHT) {
-                        scanlineSpriteCount[y+j]++;
-                    }
-                }
+    /**
+     * Picks the first 8 sprites of sprite RAM on the line and draws them into the sprite line buffer,
+     * lower index in front. Sprite overflow is set when more are on the line,
+     * without the false positives and negatives of the hardware.
+     */
+    private void evaluateSprites(int line) {
+        clearSpriteLine();
+        if (line < 0 || line >= SCREEN_HEIGHT) {
+            return;
+        }
 
-                if (i == 0) {
-                    preRenderSprite(id, x, y, patternTableAddress + (pattern << 4), 0x10 + (palette << 2), behindBackground, flipHorizontally, flipVertically);
-                } else {
-                    preRenderSprite(id, x, y, patternTableAddress + (pattern << 4), 0x10 + (palette << 2), behindBackground, flipHorizontally, flipVertically);
-                }
+        int height = r.is8x16() ? 16 : 8;
+        int count = 0;
+        for (int i = 0; i < 256; i += 4) {
+            int row = line - (spriteRamData[i] & 0xFF) - 1;
+            if (row < 0 || row >= height) {
+                continue;
             }
+            if (count == 8) {
+                r.setSpriteOverflow();
+                break;
+            }
+            secondarySpriteRam[count++] = i;
         }
-    }
 
-    private void preRenderSprite(int id, int x, int y, int patternAddress, int paletteAddress, boolean behind, boolean flipHorizontally, boolean flipVertically) {
-        if (x <= -8 || y <= -8 || x >= SCREEN_WIDTH || y >= SCREEN_HEIGHT) {
+        if (!r.showSprites()) {
             return;
         }
-        for (int j = y, jj = flipVertically ? 7 : 0; j < y + 8; j++, jj += (flipVertically ? -1 : 1)) {
-            if (j < 0 || j >= SCREEN_HEIGHT) {
-                continue;
+
+        if (skipRendering) {
+            // Sprite 0 is in front of the others, its pixels are all sprite 0 hit needs
+            count = count > 0 && secondarySpriteRam[0] == 0 ? 1 : 0;
+        }
+        int firstX = r.showLeftmost8PixelsSprites() ? 0 : 8;
+        for (int n = 0; n < count; n++) {
+            int i = secondarySpriteRam[n];
+            int row = line - (spriteRamData[i] & 0xFF) - 1;
+            int pattern = spriteRamData[i + 1] & 0xFF;
+            int attribute = spriteRamData[i + 2];
+            int x = spriteRamData[i + 3] & 0xFF;
+            boolean flipHorizontally = (attribute & 0x40) != 0;
+            if ((attribute & 0x80) != 0) {
+                row = height - 1 - row;
             }
-            byte patternLow = (byte) patterns.getByte(patternAddress + jj);
-            byte patternHigh = (byte) patterns.getByte(patternAddress + jj + 8);
-            for (int i = x; i < x + 8; i++) {
-                if (i < SCREEN_WIDTH && (i >= 8 || (r.showLeftmost8PixelsSprites() && i >= 0))) {
-                    int v;
-                    if (flipHorizontally) {
-                        v = ((patternHigh << 1) & 2) | (patternLow & 1);
-                    } else {
-                        v = ((patternHigh >> 6) & 2) | ((patternLow >> 7) & 1);
-                    }
-                    if (v != 0) {
-                        if (spriteBuffer[j][i] == -1 ||
-                                !((behind && (spriteAttributes[j][i] & 2) == 0))) {
-                            spriteBuffer[j][i] = (byte) palettes.getByte(paletteAddress | v);
-                            spriteAttributes[j][i] = (byte) ((behind ? 2 : 0) | (spriteAttributes[j][i] & 1));
-                        }
-                        if (id == 0) {
-                            spriteAttributes[j][i] |= 1;
-                        }
-                    }
-                }
-                if (flipHorizontally) {
-                    patternHigh >>= 1;
-                    patternLow >>= 1;
-                } else {
-                    patternHigh <<= 1;
-                    patternLow <<= 1;
+
+            int tile;
+            if (height == 16) {
+                tile = ((pattern & 1) << 8) + (pattern & ~1) + (row >> 3);
+            } else {
+                tile = (r.getSpritePatternTableAddress() >> 4) + pattern;
+            }
+            if (!tileDecoded[tile]) {
+                decodeTile(tile);
+            }
+            int pixel = (tile << 6) | ((row & 7) << 3);
+
+            int paletteAddress = 0x10 | ((attribute & 3) << 2);
+            byte flags = (byte) (((attribute & 0x20) != 0 ? 2 : 0) | (i == 0 ? 1 : 0));
+            for (int j = Math.max(x, firstX), end = Math.min(x + 8, SCREEN_WIDTH); j < end; j++) {
+                int v = decodedTiles[pixel + (flipHorizontally ? 7 - (j - x) : j - x)];
+                if (v != 0 && spriteLine[j] == -1) {
+                    spriteLine[j] = (byte) palettes.getByte(paletteAddress | v);
+                    spriteAttributeLine[j] = flags;
                 }
             }
         }
     }
 
     public int getScanline() {
+        catchUp();
         return scanline;
     }
 
     public int getCycle() {
+        catchUp();
         return cycle;
     }
 
@@ -431,9 +758,48 @@ public class SimplePPU implements PPU {
         return m;
     }
 
+    /**
+     * Sprite RAM. DMA writes it outside of PPU register access, so the PPU catches up first.
+     */
+    private class SpriteRam extends DefaultMemory {
+        public SpriteRam() {
+            super(spriteRamData);
+        }
+
+        @Override
+        public void setByte(int address, int value) {
+            catchUp();
+            super.setByte(address, value);
+        }
+
+        @Override
+        public void setBytes(int address, byte[] buffer, int offset, int length) {
+            catchUp();
+            System.arraycopy(buffer, offset, spriteRamData, address, length);
+        }
+    }
+
+    /**
+     * Pattern tables as seen through PPU memory, writes to CHR RAM drop the decoded tile.
+     */
+    private class PatternTables implements Memory {
+        public int getSize() {
+            return 0x2000;
+        }
+
+        public int getByte(int address) {
+            return patterns.getByte(address);
+        }
+
+        public void setByte(int address, int value) {
+            patterns.setByte(address, value);
+            tileDecoded[(address >> 4) & 0x1FF] = false;
+        }
+    }
+
     private class Palettes extends DefaultMemory {
         public Palettes() {
-            super(0x20);
+            super(paletteData);
         }
 
         @Override
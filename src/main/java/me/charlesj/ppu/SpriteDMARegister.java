@@ -2,6 +2,7 @@ package me.charlesj.ppu;
 
 import me.charlesj.memory.Memory;
 import me.charlesj.cpu.CPU;
+import me.charlesj.metrics.Metrics;
 
 /**
  * Mapped to $4014 to transfer CPU memory to PPU SPR-RAM.
@@ -10,15 +11,18 @@ import me.charlesj.cpu.CPU;
 public class SpriteDMARegister implements Memory {
 
     private final CPU cpu;
-    private final Memory cpuMemory;
     private final Memory sprRam;
+    private Metrics metrics;
 
-    public SpriteDMARegister(Memory cpuMemory, Memory sprRam, CPU cpu) {
+    public SpriteDMARegister(Memory sprRam, CPU cpu) {
         this.cpu = cpu;
-        this.cpuMemory = cpuMemory;
         this.sprRam = sprRam;
     }
 
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
     public int getSize() {
         return 1;
     }
@@ -28,10 +32,9 @@ public class SpriteDMARegister implements Memory {
     }
 
     public void setByte(int address, int value) {
-        cpu.increaseCycle(513);
-        value = (value & 0xFF) << 8;
-        for (int i=0; i<256; i++) {
-            sprRam.setByte(i, cpuMemory.getByte(value + i));
+        if (metrics != null) {
+            metrics.addDMATransfer();
         }
+        cpu.getDMA().transferPage(value, sprRam);
     }
 }
@@ -4,30 +4,60 @@ import me.charlesj.ppu.PPU;
 import me.charlesj.util.ColorConverter;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Maps the color using standard color map. Convert it to BufferedImage.
+ * Maps the color using standard color map straight into the pixels of a BufferedImage.
+ * Three images are swapped around: the emulation thread draws one, the display shows another,
+ * and the third holds the latest finished frame. Neither side waits for or copies from the other.
  * 2020/1/25.
  */
 public class DefaultScreen implements Screen {
-    private BufferedImage image = new BufferedImage(PPU.SCREEN_WIDTH, PPU.SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
-    private int[] imageBuffer = new int[PPU.SCREEN_WIDTH * PPU.SCREEN_HEIGHT];
-    private byte[] colorBuffer = new byte[PPU.SCREEN_WIDTH * PPU.SCREEN_HEIGHT];
+    // Set in ready when it holds a frame the display has not taken yet
+    private static final int FRESH = 4;
+
+    private final BufferedImage[] images = new BufferedImage[3];
+    private final int[][] pixels = new int[3][];
+
+    // Image index owned by the emulation thread
+    private int back = 0;
+    // Image index owned by the display
+    private int front = 1;
+    private final AtomicInteger ready = new AtomicInteger(2);
 
     public DefaultScreen() {
-        Arrays.fill(colorBuffer, (byte) 0x3F);
+        for (int i=0; i<3; i++) {
+            images[i] = new BufferedImage(PPU.SCREEN_WIDTH, PPU.SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+            pixels[i] = ((DataBufferInt) images[i].getRaster().getDataBuffer()).getData();
+            Arrays.fill(pixels[i], ColorConverter.COLOR_MAP[0x3F]);
+        }
     }
 
     public void set(int x, int y, int color) {
-        colorBuffer[PPU.SCREEN_WIDTH * y + x] = (byte) color;
+        pixels[back][PPU.SCREEN_WIDTH * y + x] = ColorConverter.COLOR_MAP[color & 0x3F];
+    }
+
+    public void setLine(int y, byte[] colors, int from, int to) {
+        int[] line = pixels[back];
+        int[] colorMap = ColorConverter.COLOR_MAP;
+        for (int x = from, i = PPU.SCREEN_WIDTH * y + from; x < to; x++, i++) {
+            line[i] = colorMap[colors[x] & 0x3F];
+        }
+    }
+
+    public void finishFrame() {
+        back = ready.getAndSet(back | FRESH) & 3;
     }
 
+    /**
+     * Called by the display, returns the latest finished frame.
+     */
     public BufferedImage show() {
-        for (int i=0; i<colorBuffer.length; i++) {
-            imageBuffer[i] = ColorConverter.COLOR_MAP[colorBuffer[i] & 0x3F];
+        if ((ready.get() & FRESH) != 0) {
+            front = ready.getAndSet(front) & 3;
         }
-        image.setRGB(0, 0, PPU.SCREEN_WIDTH, PPU.SCREEN_HEIGHT, imageBuffer, 0, PPU.SCREEN_WIDTH);
-        return image;
+        return images[front];
     }
 }
@@ -0,0 +1,50 @@
+package me.charlesj.screen;
+
+import me.charlesj.ppu.PPU;
+import me.charlesj.util.ColorConverter;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Keeps the palette indices of the last frame only. Used when nothing is displayed.
+ */
+public class HeadlessScreen implements Screen {
+    private final byte[] colorBuffer = new byte[PPU.SCREEN_WIDTH * PPU.SCREEN_HEIGHT];
+
+    public void set(int x, int y, int color) {
+        colorBuffer[PPU.SCREEN_WIDTH * y + x] = (byte) color;
+    }
+
+    public void setLine(int y, byte[] colors, int from, int to) {
+        System.arraycopy(colors, from, colorBuffer, PPU.SCREEN_WIDTH * y + from, to - from);
+    }
+
+    public void finishFrame() {}
+
+    public BufferedImage show() {
+        BufferedImage image = new BufferedImage(PPU.SCREEN_WIDTH, PPU.SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int i=0; i<colorBuffer.length; i++) {
+            image.setRGB(i % PPU.SCREEN_WIDTH, i / PPU.SCREEN_WIDTH, ColorConverter.COLOR_MAP[colorBuffer[i] & 0x3F]);
+        }
+        return image;
+    }
+
+    /**
+     * @return palette index of each pixel, row by row
+     */
+    public byte[] getColorBuffer() {
+        return colorBuffer;
+    }
+
+    /**
+     * @return 64-bit FNV-1a hash of the palette indices
+     */
+    public long hash() {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : colorBuffer) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
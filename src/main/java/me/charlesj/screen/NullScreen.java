@@ -0,0 +1,22 @@
+package me.charlesj.screen;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Drops all pixels. Used for frames emulated but never displayed, e.g. the frames run ahead.
+ */
+public class NullScreen implements Screen {
+
+    public void set(int x, int y, int color) {}
+
+    public void setLine(int y, byte[] colors, int from, int to) {}
+
+    public void finishFrame() {}
+
+    /**
+     * @return null, nothing is kept
+     */
+    public BufferedImage show() {
+        return null;
+    }
+}
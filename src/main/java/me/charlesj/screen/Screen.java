@@ -8,5 +8,16 @@ import java.awt.image.BufferedImage;
  */
 public interface Screen {
     void set(int x, int y, int color);
+
+    /**
+     * Sets pixels [from, to) of line y to the colors at the same positions.
+     */
+    void setLine(int y, byte[] colors, int from, int to);
+
+    /**
+     * Called by the PPU after the last visible line is output.
+     */
+    void finishFrame();
+
     BufferedImage show();
 }
@@ -0,0 +1,127 @@
+package me.charlesj.speaker;
+
+/**
+ * Band-limited resampler from the CPU clock to the output sample rate.
+ * A change of level is added as a band-limited step at its exact clock time, i.e. a windowed sinc
+ * impulse chosen by the fractional sample position, and the samples are the running sum of the impulses.
+ * The output is high-passed to remove the DC offset of the mixer.
+ * Clock times are relative to the start of the current block, see endBlock.
+ * All samples of a block should be read before adding to the next one.
+ */
+public class BlipBuffer {
+
+    private static final int FRACTION_BITS = 32;
+    private static final int PHASE_BITS = 5;
+    private static final int PHASES = 1 << PHASE_BITS;
+    private static final int KERNEL_WIDTH = 16;
+    private static final int KERNEL_BITS = 14;
+    private static final int HIGH_PASS_SHIFT = 10;
+
+    /**
+     * KERNEL[phase][tap], taps of each phase add up to 1 << KERNEL_BITS.
+     */
+    private static final int[][] KERNEL = new int[PHASES][KERNEL_WIDTH];
+
+    static {
+        for (int phase = 0; phase < PHASES; phase++) {
+            double[] taps = new double[KERNEL_WIDTH];
+            double sum = 0;
+            for (int i = 0; i < KERNEL_WIDTH; i++) {
+                // Distance from the step, the impulse is centered in the kernel
+                double x = i - KERNEL_WIDTH / 2 + 1 - (double) phase / PHASES;
+                double sinc = x == 0 ? 1 : Math.sin(Math.PI * 0.9 * x) / (Math.PI * 0.9 * x);
+                double w = 2 * Math.PI * (x + KERNEL_WIDTH / 2) / KERNEL_WIDTH;
+                double blackman = 0.42 - 0.5 * Math.cos(w) + 0.08 * Math.cos(2 * w);
+                taps[i] = sinc * blackman;
+                sum += taps[i];
+            }
+            int total = 0;
+            for (int i = 0; i < KERNEL_WIDTH; i++) {
+                KERNEL[phase][i] = (int) Math.round(taps[i] / sum * (1 << KERNEL_BITS));
+                total += KERNEL[phase][i];
+            }
+            // Rounding error goes to the center, so a step settles exactly
+            KERNEL[phase][KERNEL_WIDTH / 2 - 1] += (1 << KERNEL_BITS) - total;
+        }
+    }
+
+    private final long factor;
+    private final int[] buffer;
+
+    // Position of the block start in samples, FRACTION_BITS fixed point
+    private long offset = 0;
+    private int integrator = 0;
+    private long dc = 0;
+
+    /**
+     * @param maxBlockClocks longest block passed to endBlock
+     */
+    public BlipBuffer(double clockRate, int sampleRate, int maxBlockClocks) {
+        this.factor = (long) (sampleRate / clockRate * (1L << FRACTION_BITS));
+        this.buffer = new int[getMaxSamples(maxBlockClocks) + KERNEL_WIDTH + 1];
+    }
+
+    /**
+     * @return samples a block of this length can produce at most
+     */
+    public int getMaxSamples(int blockClocks) {
+        return (int) ((blockClocks * factor) >>> FRACTION_BITS) + 1;
+    }
+
+    /**
+     * Adds a change of level at a clock time in the current block.
+     * @param delta keep the level within 0 ~ 65535
+     */
+    public void addDelta(int clock, int delta) {
+        long position = offset + clock * factor;
+        int index = (int) (position >>> FRACTION_BITS);
+        int[] kernel = KERNEL[(int) (position >>> (FRACTION_BITS - PHASE_BITS)) & (PHASES - 1)];
+        for (int i = 0; i < KERNEL_WIDTH; i++) {
+            buffer[index + i] += delta * kernel[i];
+        }
+    }
+
+    /**
+     * Ends the current block, the next one starts at clock 0.
+     * @return samples ready to read
+     */
+    public int endBlock(int clocks) {
+        offset += clocks * factor;
+        return getSamplesAvailable();
+    }
+
+    public int getSamplesAvailable() {
+        return (int) (offset >>> FRACTION_BITS);
+    }
+
+    /**
+     * Moves up to count ready samples into out as 16-bit signed values.
+     * @return samples read
+     */
+    public int readSamples(short[] out, int count) {
+        count = Math.min(count, getSamplesAvailable());
+        int sum = integrator;
+        for (int i = 0; i < count; i++) {
+            sum += buffer[i];
+            int level = sum >> KERNEL_BITS;
+            int sample = level - (int) (dc >> HIGH_PASS_SHIFT);
+            dc += sample;
+            if (sample > Short.MAX_VALUE) {
+                sample = Short.MAX_VALUE;
+            } else if (sample < Short.MIN_VALUE) {
+                sample = Short.MIN_VALUE;
+            }
+            out[i] = (short) sample;
+        }
+        integrator = sum;
+
+        // Keep the impulse tails for the next samples
+        int remaining = getSamplesAvailable() - count + KERNEL_WIDTH;
+        System.arraycopy(buffer, count, buffer, 0, remaining);
+        for (int i = remaining; i < remaining + count && i < buffer.length; i++) {
+            buffer[i] = 0;
+        }
+        offset -= (long) count << FRACTION_BITS;
+        return count;
+    }
+}
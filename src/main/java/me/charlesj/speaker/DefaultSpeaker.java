@@ -2,71 +2,101 @@ package me.charlesj.speaker;
 
 import me.charlesj.Emulator;
 
-import java.util.LinkedList;
-import java.util.Queue;
-
 /**
  * Stores sound levels and output them.
+ * Level changes are resampled on the emulation thread by a BlipBuffer in blocks of BLOCK_CYCLES
+ * and the 16-bit samples go through a SampleRingBuffer to the audio thread, neither side allocates or locks.
+ * When the audio thread falls behind, new samples are dropped.
  * 2020/2/3.
  */
 public class DefaultSpeaker implements Speaker {
 
-    private final double cyclePerSample;
-    private final Queue<byte[]> queue = new LinkedList<byte[]>();
-    private final int bufferSize;
+    /**
+     * Samples buffered at most, about 46ms at 44100Hz.
+     */
+    public static final int BUFFER_CAPACITY = 2048;
+    /**
+     * CPU cycles resampled at once, about 1ms.
+     */
+    public static final int BLOCK_CYCLES = 2048;
+
+    private final int sampleRate;
+    private final BlipBuffer blip;
+    private final SampleRingBuffer ring;
+    private final short[] block;
 
-    private byte[] buffer;
-    private long cycle = 0;
-    private int bufferId = 0;
+    private int cycle = 0;
+    private int level = 0;
 
     public DefaultSpeaker(int sampleRate) {
-        this.cyclePerSample = Emulator.CPU_CYCLE_PER_SECOND / sampleRate;
-        this.bufferSize = sampleRate / 441;
-        this.buffer = new byte[bufferSize];
+        this(sampleRate, BUFFER_CAPACITY);
+    }
+
+    /**
+     * @param capacity samples buffered at most, must be a power of two
+     */
+    public DefaultSpeaker(int sampleRate, int capacity) {
+        this.sampleRate = sampleRate;
+        this.blip = new BlipBuffer(Emulator.CPU_CYCLE_PER_SECOND, sampleRate, BLOCK_CYCLES);
+        this.ring = new SampleRingBuffer(capacity);
+        this.block = new short[blip.getMaxSamples(BLOCK_CYCLES)];
     }
 
     public void set(int level) {
-        byte l = (byte) (level - 128);
-        int bufferPos = (int) (cycle / cyclePerSample);
-        int newBufferId = bufferPos / bufferSize;
-        if (newBufferId != bufferId) {
-            enqueue(buffer);
-            buffer = new byte[bufferSize];
-            bufferId = newBufferId;
+        if (level != this.level) {
+            blip.addDelta(cycle, level - this.level);
+            this.level = level;
         }
-        buffer[bufferPos % bufferSize] = l;
-        if (queue.size() < 2) {
-            cycle++;
+        if (++cycle == BLOCK_CYCLES) {
+            cycle = 0;
+            int count = blip.readSamples(block, blip.endBlock(BLOCK_CYCLES));
+            for (int i = 0; i < count; i++) {
+                ring.offer(block[i]);
+            }
         }
     }
 
-    public byte[] output() {
-        return dequeue();
+    public int output(byte[] buffer, int offset, int length) {
+        return ring.read(buffer, offset, length);
     }
 
     public void reset() {
-        synchronized (queue) {
-            queue.clear();
-        }
+        ring.clear();
     }
 
-    private void enqueue(byte[] data) {
-        synchronized (queue) {
-            queue.add(data);
-            queue.notify();
-        }
+    public void underrun() {
+        ring.countUnderrun();
     }
 
-    private byte[] dequeue() {
-        synchronized (queue) {
-            while (queue.isEmpty()) {
-                try {
-                    queue.wait();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-            return queue.poll();
-        }
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return samples buffered at most
+     */
+    public int getCapacity() {
+        return ring.getCapacity();
+    }
+
+    /**
+     * @return samples waiting for the audio thread
+     */
+    public int getBufferedSamples() {
+        return ring.size();
+    }
+
+    /**
+     * @return samples dropped because the audio thread was behind
+     */
+    public long getOverruns() {
+        return ring.getOverruns();
+    }
+
+    /**
+     * @return times the sound card ran dry with no samples ready
+     */
+    public long getUnderruns() {
+        return ring.getUnderruns();
     }
 }
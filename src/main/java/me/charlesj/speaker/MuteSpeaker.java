@@ -0,0 +1,15 @@
+package me.charlesj.speaker;
+
+/**
+ * Drops all sound levels. Used when nothing is played.
+ */
+public class MuteSpeaker implements Speaker {
+
+    public void set(int level) {}
+
+    public int output(byte[] buffer, int offset, int length) {
+        return 0;
+    }
+
+    public void reset() {}
+}
@@ -0,0 +1,127 @@
+package me.charlesj.speaker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free ring of 16-bit samples between one producer thread (emulation) and one consumer thread (audio).
+ * Samples are stored as big-endian byte pairs, ready for the sound card.
+ * The array is allocated once, offering and reading never allocate or block.
+ * Indices only grow, the slot is the index masked by capacity - 1.
+ * Each side keeps its index, a cached copy of the other side's index and its counter in its own
+ * 64-byte block of a padded array, so the two threads do not write to the same cache line.
+ */
+public class SampleRingBuffer {
+
+    // Slots in indices, each side's block is 8 longs away from the other and from the array ends
+    private static final int WRITE = 8;
+    private static final int CACHED_READ = 9;
+    private static final int OVERRUNS = 10;
+    private static final int READ = 24;
+    private static final int CACHED_WRITE = 25;
+    private static final int UNDERRUNS = 26;
+
+    private final byte[] data;
+    private final int mask;
+    private final AtomicLongArray indices = new AtomicLongArray(40);
+
+    /**
+     * @param capacity samples, must be a power of two
+     */
+    public SampleRingBuffer(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        data = new byte[capacity * 2];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Producer side.
+     * @return false if the ring is full, the sample is dropped and counted as an overrun
+     */
+    public boolean offer(short sample) {
+        long write = indices.get(WRITE);
+        if (write - indices.get(CACHED_READ) > mask) {
+            indices.lazySet(CACHED_READ, indices.get(READ));
+            if (write - indices.get(CACHED_READ) > mask) {
+                indices.lazySet(OVERRUNS, indices.get(OVERRUNS) + 1);
+                return false;
+            }
+        }
+        int position = ((int) write & mask) << 1;
+        data[position] = (byte) (sample >> 8);
+        data[position + 1] = (byte) sample;
+        indices.lazySet(WRITE, write + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side. Copies up to length / 2 samples, fewer if not as many are ready.
+     * @return bytes copied, always even
+     */
+    public int read(byte[] buffer, int offset, int length) {
+        length >>= 1;
+        long read = indices.get(READ);
+        long available = indices.get(CACHED_WRITE) - read;
+        if (available < length) {
+            indices.lazySet(CACHED_WRITE, indices.get(WRITE));
+            available = indices.get(CACHED_WRITE) - read;
+            if (available == 0) {
+                return 0;
+            }
+        }
+        int count = (int) Math.min(available, length);
+        int start = ((int) read & mask) << 1;
+        int bytes = count << 1;
+        int first = Math.min(bytes, data.length - start);
+        System.arraycopy(data, start, buffer, offset, first);
+        System.arraycopy(data, 0, buffer, offset + first, bytes - first);
+        indices.lazySet(READ, read + count);
+        return bytes;
+    }
+
+    /**
+     * Consumer side. Counts an underrun, the ring being empty is not one by itself
+     * as the consumer may still have samples of its own to play.
+     */
+    public void countUnderrun() {
+        indices.lazySet(UNDERRUNS, indices.get(UNDERRUNS) + 1);
+    }
+
+    /**
+     * Consumer side. Drops every sample ready.
+     */
+    public void clear() {
+        long write = indices.get(WRITE);
+        indices.lazySet(CACHED_WRITE, write);
+        indices.lazySet(READ, write);
+    }
+
+    /**
+     * @return samples ready, may be stale when called from neither side
+     */
+    public int size() {
+        return (int) (indices.get(WRITE) - indices.get(READ));
+    }
+
+    /**
+     * @return samples
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return samples dropped because the ring was full
+     */
+    public long getOverruns() {
+        return indices.get(OVERRUNS);
+    }
+
+    /**
+     * @return underruns counted by the consumer
+     */
+    public long getUnderruns() {
+        return indices.get(UNDERRUNS);
+    }
+}
@@ -6,9 +6,27 @@ package me.charlesj.speaker;
  */
 public interface Speaker {
     /**
-     * @param level from 0 ~ 255
+     * Called every CPU cycle.
+     * @param level mixer output from 0 ~ 65535
      */
     void set(int level);
-    byte[] output();
+
+    /**
+     * Copies samples ready (16-bit signed big-endian) into buffer without blocking.
+     * Called by the audio thread.
+     * @return bytes copied, 0 if none is ready
+     */
+    int output(byte[] buffer, int offset, int length);
+
+    /**
+     * Drops samples not output yet.
+     */
     void reset();
+
+    /**
+     * Called by the audio thread when the sound card ran dry and no samples were ready,
+     * once until samples are output again.
+     */
+    default void underrun() {
+    }
 }
@@ -0,0 +1,301 @@
+package me.charlesj.state;
+
+import me.charlesj.Machine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-memory history of save states for stepping a machine backwards.
+ * A full keyframe is stored every few snapshots, the others are stored as the
+ * XOR against their keyframe with runs of zero bytes skipped.
+ * When the storage is full the oldest keyframe and its deltas are dropped.
+ * Nothing is allocated after construction.
+ */
+public class RewindBuffer {
+
+    private final int interval;
+    private final int keyframeInterval;
+
+    // Ring of encoded snapshots, entries are placed one after another and wrap to 0
+    private final byte[] storage;
+    private int writePosition = 0;
+
+    // Ring of entries, oldest at head
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] keyframes;  // entry index of the keyframe, itself for a keyframe
+    private final long[] frames;
+    private int head = 0;
+    private int count = 0;
+
+    private int currentKeyframe = -1;
+    private int sinceKeyframe = 0;
+    private int sinceRecord = 0;
+
+    private final byte[] state = new byte[Machine.MAX_STATE_SIZE];
+    private final byte[] encoded = new byte[Machine.MAX_STATE_SIZE];
+    private final ByteBuffer stateBuffer = ByteBuffer.wrap(state);
+
+    /**
+     * @param capacity bytes of storage
+     * @param interval record a snapshot every this many frames
+     * @param keyframeInterval store a full snapshot every this many snapshots
+     */
+    public RewindBuffer(int capacity, int interval, int keyframeInterval) {
+        if (capacity < Machine.MAX_STATE_SIZE) {
+            throw new IllegalArgumentException("capacity must hold at least one state");
+        }
+        if (interval <= 0 || keyframeInterval <= 0) {
+            throw new IllegalArgumentException("intervals must be positive");
+        }
+        this.interval = interval;
+        this.keyframeInterval = keyframeInterval;
+        this.storage = new byte[capacity];
+        // Deltas are rarely smaller, if they are the oldest ones are dropped earlier
+        int maxEntries = capacity / 256;
+        offsets = new int[maxEntries];
+        lengths = new int[maxEntries];
+        keyframes = new int[maxEntries];
+        frames = new long[maxEntries];
+    }
+
+    /**
+     * Records a snapshot every frame, keyframe once a second.
+     */
+    public RewindBuffer(int capacity) {
+        this(capacity, 1, 60);
+    }
+
+    /**
+     * Called at every frame boundary, records the machine if the interval is reached.
+     */
+    public void onFrame(Machine machine) {
+        if (++sinceRecord >= interval) {
+            sinceRecord = 0;
+            record(machine);
+        }
+    }
+
+    public void record(Machine machine) {
+        stateBuffer.clear();
+        machine.saveState(stateBuffer);
+        int length = stateBuffer.position();
+
+        if (currentKeyframe != -1 && sinceKeyframe < keyframeInterval && lengths[currentKeyframe] == length) {
+            int encodedLength = encode(state, storage, offsets[currentKeyframe], length, encoded);
+            if (encodedLength != -1) {
+                int keyframe = currentKeyframe;
+                int index = add(encoded, encodedLength, machine.getFrame());
+                if (currentKeyframe == keyframe) {
+                    keyframes[index] = keyframe;
+                    sinceKeyframe++;
+                    return;
+                }
+                // The keyframe was dropped to make room, store a keyframe instead
+                removeNewest();
+            }
+        }
+        int index = add(state, length, machine.getFrame());
+        keyframes[index] = index;
+        currentKeyframe = index;
+        sinceKeyframe = 1;
+    }
+
+    /**
+     * Drops the newest snapshot and restores the one before it.
+     * @return false if there is no older snapshot, the machine is untouched then
+     */
+    public boolean stepBack(Machine machine) {
+        if (count < 2) {
+            return false;
+        }
+        if (entry(count - 1) == currentKeyframe) {
+            currentKeyframe = -1;
+        }
+        removeNewest();
+        sinceKeyframe--;
+
+        int index = entry(count - 1);
+        int keyframe = keyframes[index];
+        int length = lengths[keyframe];
+        System.arraycopy(storage, offsets[keyframe], state, 0, length);
+        if (keyframe != index) {
+            decode(storage, offsets[index], lengths[index], state);
+        }
+        stateBuffer.clear();
+        stateBuffer.limit(length);
+        machine.loadState(stateBuffer);
+        return true;
+    }
+
+    public void clear() {
+        head = 0;
+        count = 0;
+        writePosition = 0;
+        currentKeyframe = -1;
+        sinceKeyframe = 0;
+        sinceRecord = 0;
+    }
+
+    /**
+     * @return snapshots held
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return frame of the newest snapshot, -1 if empty
+     */
+    public long getNewestFrame() {
+        return count == 0 ? -1 : frames[entry(count - 1)];
+    }
+
+    /**
+     * @return frame of the oldest snapshot, -1 if empty
+     */
+    public long getOldestFrame() {
+        return count == 0 ? -1 : frames[head];
+    }
+
+    /**
+     * @return bytes of storage in use
+     */
+    public int getUsedBytes() {
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            used += lengths[entry(i)];
+        }
+        return used;
+    }
+
+    private int entry(int i) {
+        return (head + i) % offsets.length;
+    }
+
+    /**
+     * Copies data into storage after the newest entry, dropping the oldest entries in the way.
+     * @return the new entry index
+     */
+    private int add(byte[] data, int length, long frame) {
+        if (writePosition + length > storage.length) {
+            // Entries at the tail of storage are dropped as well
+            while (count > 0 && offsets[head] >= writePosition) {
+                removeOldest();
+            }
+            writePosition = 0;
+        }
+        while (count > 0 && overlaps(head, writePosition, length)) {
+            removeOldest();
+        }
+        if (count == offsets.length) {
+            removeOldest();
+        }
+
+        int index = entry(count);
+        System.arraycopy(data, 0, storage, writePosition, length);
+        offsets[index] = writePosition;
+        lengths[index] = length;
+        frames[index] = frame;
+        count++;
+        writePosition += length;
+        return index;
+    }
+
+    private boolean overlaps(int index, int offset, int length) {
+        int start = offsets[index];
+        return start < offset + length && offset < start + lengths[index];
+    }
+
+    /**
+     * Drops the oldest keyframe and the deltas depending on it.
+     */
+    private void removeOldest() {
+        int keyframe = head;
+        do {
+            if (head == currentKeyframe) {
+                currentKeyframe = -1;
+            }
+            head = (head + 1) % offsets.length;
+            count--;
+        } while (count > 0 && keyframes[head] == keyframe);
+    }
+
+    private void removeNewest() {
+        count--;
+        writePosition = offsets[entry(count)];
+    }
+
+    /**
+     * Encodes data XOR base as pairs of (zero count, literal count) followed by the literal bytes.
+     * Counts are 7 bits per byte, low bits first.
+     * @return encoded length, -1 if not shorter than data
+     */
+    static int encode(byte[] data, byte[] base, int baseOffset, int length, byte[] out) {
+        int position = 0;
+        int i = 0;
+        while (i < length) {
+            int start = i;
+            while (i < length && data[i] == base[baseOffset + i]) {
+                i++;
+            }
+            int zeros = i - start;
+            start = i;
+            // A literal ends at two equal bytes in a row, a single one is cheaper to keep
+            while (i < length && (data[i] != base[baseOffset + i]
+                    || (i + 1 < length && data[i + 1] != base[baseOffset + i + 1]))) {
+                i++;
+            }
+            int literals = i - start;
+            if (position + 10 + literals >= length) {
+                return -1;
+            }
+            position = putCount(out, position, zeros);
+            position = putCount(out, position, literals);
+            for (int j = start; j < i; j++) {
+                out[position++] = (byte) (data[j] ^ base[baseOffset + j]);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Applies what encode() wrote onto data holding the base.
+     */
+    static void decode(byte[] in, int offset, int length, byte[] data) {
+        int position = offset;
+        int end = offset + length;
+        int i = 0;
+        while (position < end) {
+            int zeros = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = in[position++];
+                zeros |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            int literals = 0;
+            shift = 0;
+            do {
+                b = in[position++];
+                literals |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            i += zeros;
+            for (int j = 0; j < literals; j++) {
+                data[i++] ^= in[position++];
+            }
+        }
+    }
+
+    private static int putCount(byte[] out, int position, int value) {
+        while (value >= 0x80) {
+            out[position++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+}
@@ -0,0 +1,12 @@
+package me.charlesj.state;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Part of the machine that can be written to a save state.
+ * loadState reads exactly what saveState writes, in the same order.
+ */
+public interface Savable {
+    void saveState(ByteBuffer buffer);
+    void loadState(ByteBuffer buffer);
+}
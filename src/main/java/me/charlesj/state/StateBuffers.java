@@ -0,0 +1,19 @@
+package me.charlesj.state;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers for values ByteBuffer has no method for.
+ */
+public final class StateBuffers {
+
+    private StateBuffers() {}
+
+    public static void putBoolean(ByteBuffer buffer, boolean value) {
+        buffer.put((byte) (value ? 1 : 0));
+    }
+
+    public static boolean getBoolean(ByteBuffer buffer) {
+        return buffer.get() != 0;
+    }
+}
@@ -0,0 +1,47 @@
+package me.charlesj.test;
+
+import me.charlesj.BatchRunner;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs a generated game headless.
+ */
+public class BatchRunnerTest {
+
+    @Test
+    public void testRunInParallel() throws IOException, InterruptedException {
+        File rom = TestGames.buildCountingGame();
+        try {
+            List<BatchRunner.Result> results = new BatchRunner(2).run(Arrays.asList(
+                    new BatchRunner.Job(rom.getPath(), 10),
+                    new BatchRunner.Job(rom.getPath(), 10),
+                    new BatchRunner.Job(rom.getPath(), 20)
+            ));
+            Assert.assertEquals(3, results.size());
+            for (BatchRunner.Result result : results) {
+                Assert.assertTrue(String.valueOf(result.getError()), result.isSucceeded());
+                Assert.assertEquals(result.getJob().getFrames(), result.getFrames());
+            }
+            Assert.assertEquals(results.get(0).getFrameHash(), results.get(1).getFrameHash());
+            Assert.assertArrayEquals(results.get(0).getRam(), results.get(1).getRam());
+            // NMI handler counts frames at $00
+            Assert.assertTrue(results.get(2).getRam()[0] > results.get(0).getRam()[0]);
+        } finally {
+            rom.delete();
+        }
+    }
+
+    @Test
+    public void testMissingRom() throws InterruptedException {
+        List<BatchRunner.Result> results = new BatchRunner(1).run(Arrays.asList(
+                new BatchRunner.Job("not-exist.nes", 10)
+        ));
+        Assert.assertFalse(results.get(0).isSucceeded());
+    }
+}
@@ -0,0 +1,43 @@
+package me.charlesj.test;
+
+import me.charlesj.Emulator;
+import me.charlesj.speaker.BlipBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Sample count and step response of the resampler.
+ */
+public class BlipBufferTest {
+
+    private static final int BLOCK = 2048;
+
+    @Test
+    public void testSampleCount() {
+        BlipBuffer blip = new BlipBuffer(Emulator.CPU_CYCLE_PER_SECOND, 44100, BLOCK);
+        short[] samples = new short[blip.getMaxSamples(BLOCK)];
+        long total = 0;
+        long clocks = 0;
+        while (clocks + BLOCK <= (long) Emulator.CPU_CYCLE_PER_SECOND) {
+            total += blip.readSamples(samples, blip.endBlock(BLOCK));
+            clocks += BLOCK;
+        }
+        Assert.assertEquals(clocks * 44100 / Emulator.CPU_CYCLE_PER_SECOND, total, 1);
+    }
+
+    @Test
+    public void testStep() {
+        BlipBuffer blip = new BlipBuffer(Emulator.CPU_CYCLE_PER_SECOND, 48000, BLOCK);
+        short[] samples = new short[blip.getMaxSamples(BLOCK)];
+        blip.addDelta(100, 20000);
+        int count = blip.readSamples(samples, blip.endBlock(BLOCK));
+        Assert.assertTrue(count > 40);
+
+        Assert.assertEquals(0, samples[0]);
+        // Settles within the kernel, then only the high-pass decay is left
+        int step = 100 * 48000 / (int) Emulator.CPU_CYCLE_PER_SECOND;
+        Assert.assertEquals(20000, samples[step + 20], 600);
+        Assert.assertTrue(samples[count - 1] > 18000);
+        Assert.assertTrue(samples[count - 1] < samples[step + 20]);
+    }
+}
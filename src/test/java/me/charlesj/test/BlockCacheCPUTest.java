@@ -0,0 +1,62 @@
+package me.charlesj.test;
+
+import me.charlesj.cpu.CPU;
+import me.charlesj.cpu.SimpleCPU;
+import me.charlesj.memory.PagedMemory;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Runs the instruction tests with decoded blocks, and checks blocks are dropped when their code changes.
+ */
+public class BlockCacheCPUTest extends SimpleCPUTest {
+
+    @Override
+    protected CPU createCPU() {
+        CPU cpu = new SimpleCPU();
+        cpu.setBlockCache(true);
+        return cpu;
+    }
+
+    @Test
+    public void testSelfModifyingCode() {
+        CPU cpu = powerUpCPUWithCode(new int[] {
+                0xA9, 0xC8,         // LDA #$C8 (INY)
+                0x8D, 0x05, 0x80,   // STA $8005
+                0xE8,               // INX, replaced before it runs
+        }, null);
+        cpu.execute();
+        cpu.execute();
+        cpu.execute();
+        Assert.assertEquals(0, cpu.getRegister().getX());
+        Assert.assertEquals(1, cpu.getRegister().getY());
+    }
+
+    @Test
+    public void testRemappedBank() {
+        byte[] bank1 = {(byte) 0xE8, 0x4C, 0x00, (byte) 0x80};  // INX, JMP $8000
+        byte[] bank2 = {(byte) 0xC8, 0x4C, 0x00, (byte) 0x80};  // INY, JMP $8000
+        byte[] vectors = new byte[0x100];
+        vectors[0xFD] = (byte) 0x80;
+
+        CPU cpu = createCPU();
+        PagedMemory memory = new PagedMemory(0x10000);
+        memory.mapRead(0x8000, 0x100, padded(bank1), 0);
+        memory.mapRead(0xFF00, 0x100, vectors, 0);
+        cpu.setMemory(memory);
+        cpu.powerUp();
+
+        cpu.execute();
+        cpu.execute();
+        memory.mapRead(0x8000, 0x100, padded(bank2), 0);
+        cpu.execute();
+        Assert.assertEquals(1, cpu.getRegister().getX());
+        Assert.assertEquals(1, cpu.getRegister().getY());
+    }
+
+    private static byte[] padded(byte[] code) {
+        byte[] page = new byte[0x100];
+        System.arraycopy(code, 0, page, 0, code.length);
+        return page;
+    }
+}
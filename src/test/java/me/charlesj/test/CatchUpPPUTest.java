@@ -0,0 +1,167 @@
+package me.charlesj.test;
+
+import me.charlesj.Machine;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.nesloader.FileNesLoader;
+import me.charlesj.ppu.A12Listener;
+import me.charlesj.screen.HeadlessScreen;
+import me.charlesj.speaker.MuteSpeaker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Catch-up PPU must behave the same as clocking it dot by dot.
+ */
+public class CatchUpPPUTest {
+
+    @Test
+    public void testSameAsPerDot() throws IOException {
+        File rom = TestGames.buildCountingGame();
+        try {
+            assertSameAsPerDot(rom, 30);
+        } finally {
+            rom.delete();
+        }
+    }
+
+    @Test
+    public void testSprite0SameAsPerDot() throws IOException {
+        File rom = buildSprite0Game();
+        try {
+            Machine catchUp = assertSameAsPerDot(rom, 30);
+            // Sprite 0 hit in every frame
+            Assert.assertTrue(catchUp.getRam()[1] >= 29);
+        } finally {
+            rom.delete();
+        }
+    }
+
+    @Test
+    public void testA12SameAsPerDot() throws IOException {
+        File rom = TestGames.buildCountingGame();
+        try {
+            List<Long> perDotCycles = new ArrayList<Long>();
+            List<Long> catchUpCycles = new ArrayList<Long>();
+            Machine perDot = createRecordingA12(rom, false, perDotCycles);
+            Machine catchUp = createRecordingA12(rom, true, catchUpCycles);
+
+            for (int i = 0; i < 10; i++) {
+                perDot.runFrame(new HeadlessScreen(), new MuteSpeaker());
+                catchUp.runFrame(new HeadlessScreen(), new MuteSpeaker());
+            }
+            // Rendering is enabled in the first frame, then A12 rises on each visible and the pre-render line
+            Assert.assertTrue(perDotCycles.size() >= 9 * 241);
+            Assert.assertEquals(perDotCycles, catchUpCycles);
+        } finally {
+            rom.delete();
+        }
+    }
+
+    /**
+     * Runs the game with and without catch-up, comparing cycles, RAM and frames after each frame.
+     * @return the machine with catch-up
+     */
+    private static Machine assertSameAsPerDot(File rom, int frames) throws IOException {
+        Machine perDot = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+        perDot.setCatchUpPPU(false);
+        perDot.setRandomSeed(1);
+        Machine catchUp = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+        catchUp.setCatchUpPPU(true);
+        catchUp.setRandomSeed(1);
+        HeadlessScreen perDotScreen = new HeadlessScreen();
+        HeadlessScreen catchUpScreen = new HeadlessScreen();
+
+        for (int i = 0; i < frames; i++) {
+            perDot.runFrame(perDotScreen, new MuteSpeaker());
+            catchUp.runFrame(catchUpScreen, new MuteSpeaker());
+            Assert.assertEquals(perDot.getCPU().getCycle(), catchUp.getCPU().getCycle());
+            Assert.assertEquals(perDotScreen.hash(), catchUpScreen.hash());
+            Assert.assertArrayEquals(perDot.getRam(), catchUp.getRam());
+        }
+        return catchUp;
+    }
+
+    /**
+     * @param cycles CPU cycle at each A12 rising edge is added to
+     */
+    private static Machine createRecordingA12(File rom, boolean catchUp, final List<Long> cycles) throws IOException {
+        final Machine machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+        machine.setCatchUpPPU(catchUp);
+        machine.setRandomSeed(1);
+        machine.getPPU().addA12Listener(new A12Listener() {
+            public void a12Rising() {
+                cycles.add(machine.getCPU().getCycle());
+            }
+        });
+        return machine;
+    }
+
+    /**
+     * Puts sprite 0 over the background, spins on the sprite 0 hit flag, then changes the scroll
+     * and the mask in the middle of the frame. Counts frames at $00 and hits at $01.
+     * NMI handler copies OAM and resets the scroll and the mask.
+     */
+    private static File buildSprite0Game() throws IOException {
+        int[] code = {
+                0x78,             // SEI
+                0xA2, 0xFF,       // LDX #$FF
+                0x9A,             // TXS
+                0xA9, 0xFF,       // LDA #$FF
+                0xA2, 0x00,       // LDX #$00
+                0x9D, 0x00, 0x02, // STA $0200,X
+                0xE8,             // INX
+                0xD0, 0xFA,       // BNE $C008
+                0xA9, 0x40,       // LDA #$40
+                0x8D, 0x00, 0x02, // STA $0200
+                0xA9, 0x00,       // LDA #$00
+                0x8D, 0x01, 0x02, // STA $0201
+                0x8D, 0x02, 0x02, // STA $0202
+                0xA9, 0x80,       // LDA #$80
+                0x8D, 0x03, 0x02, // STA $0203
+                0xA9, 0x3F,       // LDA #$3F
+                0x8D, 0x06, 0x20, // STA $2006
+                0xA9, 0x00,       // LDA #$00
+                0x8D, 0x06, 0x20, // STA $2006
+                0xA9, 0x0F,       // LDA #$0F
+                0x8D, 0x07, 0x20, // STA $2007
+                0xA9, 0x16,       // LDA #$16
+                0x8D, 0x07, 0x20, // STA $2007
+                0xA9, 0x80,       // LDA #$80
+                0x8D, 0x00, 0x20, // STA $2000
+                0xA9, 0x1E,       // LDA #$1E
+                0x8D, 0x01, 0x20, // STA $2001
+                0x2C, 0x02, 0x20, // BIT $2002
+                0x70, 0xFB,       // BVS $C03E
+                0x2C, 0x02, 0x20, // BIT $2002
+                0x50, 0xFB,       // BVC $C043
+                0xE6, 0x01,       // INC $01
+                0xA5, 0x01,       // LDA $01
+                0x8D, 0x05, 0x20, // STA $2005
+                0x8D, 0x05, 0x20, // STA $2005
+                0x29, 0x01,       // AND #$01
+                0x09, 0x1E,       // ORA #$1E
+                0x8D, 0x01, 0x20, // STA $2001
+                0x4C, 0x3E, 0xC0, // JMP $C03E
+                0xE6, 0x00,       // NMI: INC $00
+                0xA9, 0x02,       // LDA #$02
+                0x8D, 0x14, 0x40, // STA $4014
+                0xA9, 0x1E,       // LDA #$1E
+                0x8D, 0x01, 0x20, // STA $2001
+                0xA9, 0x00,       // LDA #$00
+                0x8D, 0x05, 0x20, // STA $2005
+                0x8D, 0x05, 0x20, // STA $2005
+                0x40,             // RTI
+        };
+        // Left half of tile 0 is opaque, the background is all tile 0
+        byte[] chr = new byte[0x2000];
+        for (int i = 0; i < 8; i++) {
+            chr[i] = (byte) 0xF0;
+        }
+        return TestGames.build(0, code, 0xC05C, chr);
+    }
+}
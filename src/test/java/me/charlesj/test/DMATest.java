@@ -0,0 +1,62 @@
+package me.charlesj.test;
+
+import me.charlesj.Machine;
+import me.charlesj.cpu.CPU;
+import me.charlesj.cpu.DMA;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.memory.Memory;
+import me.charlesj.nesloader.FileNesLoader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * DMA copies CPU memory and halts the CPU for the cycles it takes.
+ */
+public class DMATest {
+
+    @Test
+    public void testSpriteTransfer() throws IOException {
+        File rom = TestGames.buildIdleGame();
+        try {
+            Machine machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+            CPU cpu = machine.getCPU();
+            Memory memory = cpu.getMemory();
+            for (int i = 0; i < 0x100; i++) {
+                memory.setByte(0x0200 + i, i ^ 0x5A);
+            }
+
+            // One more cycle to align when started on an odd cycle
+            for (int odd = 0; odd < 2; odd++) {
+                if ((cpu.getCycle() & 1) != odd) {
+                    cpu.increaseCycle(1);
+                }
+                long cycle = cpu.getCycle();
+                memory.setByte(0x4014, 0x02);
+                Assert.assertEquals(DMA.SPRITE_CYCLES + odd, cpu.getCycle() - cycle);
+            }
+            for (int i = 0; i < 0x100; i++) {
+                Assert.assertEquals(i ^ 0x5A, machine.getPPU().getSprRam().getByte(i));
+            }
+        } finally {
+            rom.delete();
+        }
+    }
+
+    @Test
+    public void testSampleFetch() throws IOException {
+        File rom = TestGames.buildIdleGame();
+        try {
+            Machine machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+            CPU cpu = machine.getCPU();
+            cpu.getMemory().setByte(0x0010, 0x99);
+            long cycle = cpu.getCycle();
+            Assert.assertEquals(0x99, cpu.getDMA().fetchSample(0x0010));
+            Assert.assertEquals(DMA.DMC_CYCLES, cpu.getCycle() - cycle);
+        } finally {
+            rom.delete();
+        }
+    }
+}
@@ -131,8 +131,8 @@ public class Debugger {
 
             }
 
-            public byte[] output() {
-                return new byte[0];
+            public int output(byte[] buffer, int offset, int length) {
+                return 0;
             }
 
             public void reset() {
@@ -201,7 +201,6 @@ public class Debugger {
                 int cycle = (int) (cpu.execute() - oldCycle);
                 oldCycle = cpu.getCycle();
                 for (int j = 0; j < cycle; j++) {
-                    mapper.cycle(cpu);
                     apu.cycle(speaker, cpu);
                     ppu.cycle(screen, cpu);
                     ppu.cycle(screen, cpu);
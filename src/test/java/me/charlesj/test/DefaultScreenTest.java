@@ -0,0 +1,45 @@
+package me.charlesj.test;
+
+import me.charlesj.screen.DefaultScreen;
+import me.charlesj.util.ColorConverter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The display sees whole finished frames only.
+ */
+public class DefaultScreenTest {
+
+    @Test
+    public void testSwap() {
+        DefaultScreen screen = new DefaultScreen();
+        byte[] line = new byte[256];
+        line[10] = 0x16;
+
+        screen.setLine(5, line, 0, 256);
+        Assert.assertEquals(color(0x3F), rgb(screen.show(), 10, 5));
+
+        screen.finishFrame();
+        BufferedImage first = screen.show();
+        Assert.assertEquals(color(0x16), rgb(first, 10, 5));
+        Assert.assertEquals(color(0), rgb(first, 11, 5));
+
+        // Drawing the next frame leaves the shown one alone
+        screen.set(10, 5, 0x20);
+        Assert.assertSame(first, screen.show());
+        Assert.assertEquals(color(0x16), rgb(first, 10, 5));
+
+        screen.finishFrame();
+        Assert.assertEquals(color(0x20), rgb(screen.show(), 10, 5));
+    }
+
+    private static int color(int index) {
+        return ColorConverter.COLOR_MAP[index] & 0xFFFFFF;
+    }
+
+    private static int rgb(BufferedImage image, int x, int y) {
+        return image.getRGB(x, y) & 0xFFFFFF;
+    }
+}
@@ -0,0 +1,99 @@
+package me.charlesj.test;
+
+import me.charlesj.apu.SimpleAPU;
+import me.charlesj.cpu.IRQLine;
+import me.charlesj.cpu.SimpleCPU;
+import me.charlesj.memory.DefaultMemory;
+import me.charlesj.speaker.Speaker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Event-driven channels must give the same levels and IRQs as clocking every cycle.
+ */
+public class EventDrivenAPUTest {
+
+    @Test
+    public void testSameAsEveryCycle() {
+        Random random = new Random(1);
+        byte[] samples = new byte[0x10000];
+        random.nextBytes(samples);
+        SimpleCPU cpu = new SimpleCPU();
+        cpu.setMemory(new DefaultMemory(samples));
+
+        SimpleAPU eventDriven = new SimpleAPU();
+        SimpleAPU everyCycle = new SimpleAPU();
+        everyCycle.setEventDriven(false);
+        IRQLine irqLine = new IRQLine();
+        eventDriven.setIRQLine(irqLine);
+        eventDriven.powerUp();
+        everyCycle.powerUp();
+        LevelSpeaker eventDrivenSpeaker = new LevelSpeaker();
+        LevelSpeaker everyCycleSpeaker = new LevelSpeaker();
+
+        int[] registers = {0x00, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x0A, 0x0B,
+                0x0C, 0x0E, 0x0F, 0x10, 0x11, 0x12, 0x13, 0x15, 0x17};
+        int changes = 0;
+        for (int cycle = 0; cycle < 1000000; cycle++) {
+            if (random.nextInt(300) == 0) {
+                int address = registers[random.nextInt(registers.length)];
+                int value = random.nextInt(0x100);
+                if (address == 0x15 && random.nextInt(4) != 0) {
+                    value |= 0x1F;
+                }
+                eventDriven.getRegister().setByte(address, value);
+                everyCycle.getRegister().setByte(address, value);
+            }
+            eventDriven.cycle(eventDrivenSpeaker, cpu);
+            everyCycle.cycle(everyCycleSpeaker, cpu);
+            Assert.assertEquals("cycle " + cycle, everyCycleSpeaker.level, eventDrivenSpeaker.level);
+            Assert.assertEquals("cycle " + cycle, everyCycle.getIRQLevel(), eventDriven.getIRQLevel());
+            Assert.assertEquals("cycle " + cycle, eventDriven.getIRQLevel(), irqLine.isAsserted());
+            if (eventDrivenSpeaker.level != eventDrivenSpeaker.lastLevel) {
+                changes++;
+            }
+        }
+        Assert.assertTrue(changes > 1000);
+    }
+
+    @Test
+    public void testFrameCounterIRQLine() {
+        SimpleCPU cpu = new SimpleCPU();
+        cpu.setMemory(new DefaultMemory(new byte[0x10000]));
+        SimpleAPU apu = new SimpleAPU();
+        apu.setIRQLine(cpu.getIRQLine());
+        apu.powerUp();
+        LevelSpeaker speaker = new LevelSpeaker();
+
+        // 4-step mode asserts at the end of each sequence
+        int cycle = 0;
+        while (!cpu.getIRQLine().isAsserted()) {
+            apu.cycle(speaker, cpu);
+            cycle++;
+            Assert.assertTrue(cycle < 4 * 7458 + 10);
+        }
+        Assert.assertEquals(IRQLine.FRAME_COUNTER, cpu.getIRQLine().getSources());
+
+        // Reading status acknowledges it
+        Assert.assertEquals(0x40, apu.getRegister().getByte(0x15) & 0x40);
+        Assert.assertFalse(cpu.getIRQLine().isAsserted());
+    }
+
+    private static class LevelSpeaker implements Speaker {
+        int level;
+        int lastLevel;
+
+        public void set(int level) {
+            this.lastLevel = this.level;
+            this.level = level;
+        }
+
+        public int output(byte[] buffer, int offset, int length) {
+            return 0;
+        }
+
+        public void reset() {}
+    }
+}
@@ -0,0 +1,56 @@
+package me.charlesj.test;
+
+import me.charlesj.pacing.FramePacer;
+import me.charlesj.pacing.FrameTimeHistogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Pacing modes and frame time histograms.
+ */
+public class FramePacerTest {
+
+    @Test
+    public void testRealTime() {
+        FramePacer pacer = new FramePacer();
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            pacer.frameFinished();
+        }
+        Assert.assertTrue(System.nanoTime() - start >= 6 * FramePacer.FRAME_NANOS);
+        Assert.assertEquals(6, pacer.getFrameTimes().getCount());
+        Assert.assertEquals(6, pacer.getEmulationTimes().getCount());
+    }
+
+    @Test
+    public void testFastForward() {
+        FramePacer pacer = new FramePacer();
+        pacer.setMode(FramePacer.FAST_FORWARD);
+        pacer.setFastForwardMultiplier(2);
+        long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            pacer.frameFinished();
+        }
+        Assert.assertTrue(System.nanoTime() - start >= 3 * FramePacer.FRAME_NANOS);
+    }
+
+    @Test
+    public void testHistogram() {
+        FrameTimeHistogram histogram = new FrameTimeHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(16600000);
+        }
+        histogram.record(1000000000);
+
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(99, histogram.getBucket(16600 / FrameTimeHistogram.BUCKET_MICROS));
+        Assert.assertEquals(1, histogram.getBucket(FrameTimeHistogram.BUCKET_COUNT - 1));
+        Assert.assertEquals(16.75, histogram.getPercentileMillis(50), 1e-9);
+        Assert.assertEquals(16.75, histogram.getPercentileMillis(99), 1e-9);
+        Assert.assertEquals(1000, histogram.getMaxMillis(), 1e-9);
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getPercentileMillis(50), 1e-9);
+    }
+}
@@ -0,0 +1,128 @@
+package me.charlesj.test;
+
+import me.charlesj.Machine;
+import me.charlesj.MoviePlayer;
+import me.charlesj.input.InputMovie;
+import me.charlesj.input.InputScript;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.nesloader.FileNesLoader;
+import me.charlesj.nesloader.NesLoader;
+import me.charlesj.screen.HeadlessScreen;
+import me.charlesj.speaker.MuteSpeaker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Movies replay exactly and keep their format.
+ */
+public class InputMovieTest {
+
+    @Test
+    public void testReadWrite() throws IOException {
+        InputMovie movie = new InputMovie(42);
+        for (int i = 0; i < 3000; i++) {
+            movie.addFrame(i & 0xFF, (i >> 8) & 0xFF, i * 31L);
+        }
+        InputMovie read = copy(movie);
+        Assert.assertEquals(42, read.getSeed());
+        Assert.assertEquals(3000, read.getFrameCount());
+        Assert.assertTrue(read.hasHashes());
+        Assert.assertEquals(0xFF, read.getButtons(255, 0));
+        Assert.assertEquals(11, read.getButtons(2999, 1));
+        Assert.assertEquals(2999 * 31L, read.getHash(2999));
+        Assert.assertEquals(0, read.getButtons(3000, 0));
+
+        read.truncate(10);
+        read.addFrame(1, 2);
+        Assert.assertEquals(11, read.getFrameCount());
+        Assert.assertFalse(read.hasHashes());
+        read = copy(read);
+        Assert.assertEquals(2, read.getButtons(10, 1));
+        Assert.assertFalse(read.hasHashes());
+    }
+
+    @Test
+    public void testTruncateAfterRewind() throws IOException {
+        InputMovie movie = new InputMovie(42);
+        for (int i = 0; i < 20; i++) {
+            movie.addFrame(i, 0, i * 31L);
+        }
+        // Recorded without hashes, then rewound to before those frames
+        movie.addFrame(1, 2);
+        movie.addFrame(3, 4, 5);
+        Assert.assertFalse(movie.hasHashes());
+        Assert.assertEquals(19 * 31L, movie.getHash(19));
+        movie.truncate(20);
+        Assert.assertTrue(movie.hasHashes());
+
+        movie.addFrame(6, 7, 8);
+        InputMovie read = copy(movie);
+        Assert.assertEquals(21, read.getFrameCount());
+        Assert.assertTrue(read.hasHashes());
+        Assert.assertEquals(8, read.getHash(20));
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        File rom = TestGames.buildCountingGame();
+        try {
+            NesLoader loader = new FileNesLoader(rom);
+            InputMovie movie = MoviePlayer.record(loader, new InputScript() {
+                public int getButtons(long frame, int controllerId) {
+                    return controllerId == 0 ? (int) (frame * 7) & 0xFF : 0;
+                }
+            }, 60, 1234);
+            Assert.assertEquals(60, movie.getFrameCount());
+            Assert.assertEquals(-1, MoviePlayer.verify(loader, movie));
+
+            InputMovie changed = new InputMovie(movie.getSeed());
+            for (int i = 0; i < movie.getFrameCount(); i++) {
+                changed.addFrame(movie.getButtons(i, 0), movie.getButtons(i, 1), i == 30 ? 0 : movie.getHash(i));
+            }
+            Assert.assertEquals(30, MoviePlayer.verify(loader, changed));
+        } finally {
+            rom.delete();
+        }
+    }
+
+    @Test
+    public void testSeedSavedWithState() throws IOException {
+        File rom = TestGames.buildCountingGame();
+        try {
+            Machine machine = new Machine(new FileNesLoader(rom), new StandardControllers());
+            machine.setRandomSeed(99);
+            HeadlessScreen screen = new HeadlessScreen();
+            for (int i = 0; i < 10; i++) {
+                machine.runFrame(screen, new MuteSpeaker());
+            }
+            byte[] state = machine.saveState();
+            for (int i = 0; i < 20; i++) {
+                machine.runFrame(screen, new MuteSpeaker());
+            }
+            long cycle = machine.getCPU().getCycle();
+            byte[] ram = machine.getRam();
+            byte[] end = machine.saveState();
+
+            machine.loadState(state);
+            for (int i = 0; i < 20; i++) {
+                machine.runFrame(screen, new MuteSpeaker());
+            }
+            Assert.assertEquals(cycle, machine.getCPU().getCycle());
+            Assert.assertArrayEquals(ram, machine.getRam());
+            Assert.assertArrayEquals(end, machine.saveState());
+        } finally {
+            rom.delete();
+        }
+    }
+
+    private static InputMovie copy(InputMovie movie) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        movie.write(out);
+        return InputMovie.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+}
@@ -0,0 +1,213 @@
+package me.charlesj.test;
+
+import me.charlesj.Machine;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.mapper.MMC3;
+import me.charlesj.memory.Memory;
+import me.charlesj.nesloader.FileNesLoader;
+import me.charlesj.ppu.SimplePPU;
+import me.charlesj.screen.HeadlessScreen;
+import me.charlesj.speaker.MuteSpeaker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * CPU and PPU address spaces as mapped by the mappers.
+ */
+public class MapperTest {
+
+    @Test
+    public void testExpansionAreaUnmapped() throws IOException {
+        File rom = TestGames.buildIdleGame();
+        try {
+            StandardControllers input = new StandardControllers();
+            Machine machine = new Machine(new FileNesLoader(rom.getPath()), input);
+            Memory memory = machine.getCPU().getMemory();
+
+            input.press(0, StandardControllers.KEY_A);
+            memory.setByte(0x4016, 1);
+            memory.setByte(0x4016, 0);
+            // Neither reads nor writes here reach the controllers
+            for (int address = 0x4020; address < 0x6000; address += 0x16) {
+                Assert.assertEquals(0, memory.getByte(address));
+                memory.setByte(address, 1);
+            }
+            Assert.assertEquals(1, memory.getByte(0x4016) & 1);
+            Assert.assertEquals(0, memory.getByte(0x4016) & 1);
+        } finally {
+            rom.delete();
+        }
+    }
+
+    @Test
+    public void testMMC3Banks() throws IOException {
+        File rom = TestGames.buildBankGame(4);
+        try {
+            Machine machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+            Memory memory = machine.getCPU().getMemory();
+            Memory chr = ((SimplePPU) machine.getPPU()).getMemory();
+            assertBanks(memory, 0, 0, 6, 7);
+            assertBanks(chr, 0, 1, 0, 1, 0, 0, 0, 0);
+
+            writeMMC3(memory, 6, 3);
+            assertBanks(memory, 3, 0, 6, 7);
+            writeMMC3(memory, 7, 5);
+            assertBanks(memory, 3, 5, 6, 7);
+            // The fixed second to last bank swaps with R6
+            memory.setByte(0x8000, 0x40);
+            assertBanks(memory, 6, 5, 3, 7);
+            memory.setByte(0x8000, 0);
+            assertBanks(memory, 3, 5, 6, 7);
+
+            // 2KB banks ignore the low bit
+            writeMMC3(memory, 0, 5);
+            assertBanks(chr, 4, 5, 0, 1, 0, 0, 0, 0);
+            writeMMC3(memory, 1, 10);
+            assertBanks(chr, 4, 5, 10, 11, 0, 0, 0, 0);
+            for (int i = 2; i < 6; i++) {
+                writeMMC3(memory, i, 20 + i);
+            }
+            assertBanks(chr, 4, 5, 10, 11, 22, 23, 24, 25);
+            // The 2KB and 1KB groups swap halves
+            memory.setByte(0x8000, 0x80);
+            assertBanks(chr, 22, 23, 24, 25, 4, 5, 10, 11);
+            writeMMC3(memory, 0x80, 16);
+            assertBanks(chr, 22, 23, 24, 25, 16, 17, 10, 11);
+            assertBanks(memory, 3, 5, 6, 7);
+
+            byte[] state = machine.saveState();
+            writeMMC3(memory, 0x46, 1);
+            writeMMC3(memory, 0x42, 0);
+            assertBanks(memory, 6, 5, 1, 7);
+            assertBanks(chr, 16, 17, 10, 11, 0, 23, 24, 25);
+            machine.loadState(state);
+            assertBanks(memory, 3, 5, 6, 7);
+            assertBanks(chr, 22, 23, 24, 25, 16, 17, 10, 11);
+        } finally {
+            rom.delete();
+        }
+    }
+
+    @Test
+    public void testMMC3IRQ() throws IOException {
+        // Reloaded on the pre-render line, then counted down on each visible line
+        Assert.assertEquals(0x1F, getMMC3IRQScanline(false, 0x1E));
+        Assert.assertEquals(0x1F, getMMC3IRQScanline(true, 0x1E));
+        // A12 never rises without rendering
+        Assert.assertEquals(-1, getMMC3IRQScanline(false, 0));
+        Assert.assertEquals(-1, getMMC3IRQScanline(true, 0));
+    }
+
+    /**
+     * Sets the counter to $20 in vertical blank with background at $0000 and sprites at $1000.
+     * @return scanline the IRQ is first seen on, -1 if not within two frames
+     */
+    private static int getMMC3IRQScanline(boolean catchUp, int mask) throws IOException {
+        File rom = TestGames.buildBankGame(4);
+        try {
+            Machine machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+            machine.setCatchUpPPU(catchUp);
+            machine.setRandomSeed(1);
+            Memory memory = machine.getCPU().getMemory();
+            SimplePPU ppu = (SimplePPU) machine.getPPU();
+            MMC3 mapper = (MMC3) machine.getMapper();
+            HeadlessScreen screen = new HeadlessScreen();
+            MuteSpeaker speaker = new MuteSpeaker();
+
+            memory.setByte(0x2000, 0x08);
+            memory.setByte(0x2001, mask);
+            machine.runFrame(screen, speaker);
+            memory.setByte(0xC000, 0x20);
+            memory.setByte(0xC001, 0);
+            memory.setByte(0xE001, 0);
+            int frames = 0;
+            while (frames < 2) {
+                if (machine.step(screen, speaker)) {
+                    frames++;
+                }
+                if (mapper.getIRQLevel()) {
+                    return ppu.getScanline();
+                }
+            }
+            return -1;
+        } finally {
+            rom.delete();
+        }
+    }
+
+    @Test
+    public void testVRC2Banks() throws IOException {
+        assertVRC2Banks(22);
+        assertVRC2Banks(23);
+    }
+
+    private void assertVRC2Banks(int mapper) throws IOException {
+        File rom = TestGames.buildBankGame(mapper);
+        try {
+            Machine machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+            Memory memory = machine.getCPU().getMemory();
+            Memory chr = ((SimplePPU) machine.getPPU()).getMemory();
+            assertBanks(memory, 0, 1, 6, 7);
+            assertBanks(chr, 0, 1, 2, 3, 4, 5, 6, 7);
+
+            memory.setByte(0x8000, 5);
+            assertBanks(memory, 5, 1, 6, 7);
+            memory.setByte(0xA000, 2);
+            assertBanks(memory, 5, 2, 6, 7);
+
+            int[] banks = {0, 1, 2, 3, 4, 5, 6, 7};
+            for (int i = 0; i < 8; i++) {
+                banks[i] = 31 - i;
+                writeVRC2(memory, mapper, i, banks[i]);
+                assertBanks(chr, banks);
+            }
+
+            byte[] state = machine.saveState();
+            memory.setByte(0x8000, 0);
+            writeVRC2(memory, mapper, 7, 0);
+            assertBanks(memory, 0, 2, 6, 7);
+            assertBanks(chr, 31, 30, 29, 28, 27, 26, 25, 0);
+            machine.loadState(state);
+            assertBanks(memory, 5, 2, 6, 7);
+            assertBanks(chr, banks);
+        } finally {
+            rom.delete();
+        }
+    }
+
+    private static void writeMMC3(Memory memory, int select, int value) {
+        memory.setByte(0x8000, select);
+        memory.setByte(0x8001, value);
+    }
+
+    /**
+     * Writes a 1KB CHR bank in two nibbles, VRC2a has the two low address lines swapped and drops the low bit.
+     */
+    private static void writeVRC2(Memory memory, int mapper, int index, int bank) {
+        int address = 0xB000 + 0x1000 * (index >> 1);
+        int value = bank;
+        if (mapper == 22) {
+            address += index & 1;
+            memory.setByte(address, (bank << 1) & 0xF);
+            memory.setByte(address + 2, (bank << 1) >> 4);
+        } else {
+            address += (index & 1) << 1;
+            memory.setByte(address, bank & 0xF);
+            memory.setByte(address + 1, bank >> 4);
+        }
+    }
+
+    /**
+     * Checks the bank numbers read at the middle of each bank, 8KB banks from $8000 or 1KB banks from $0000.
+     */
+    private static void assertBanks(Memory memory, int... banks) {
+        int base = banks.length == 4 ? 0x8000 : 0;
+        int size = banks.length == 4 ? 0x2000 : 0x400;
+        for (int i = 0; i < banks.length; i++) {
+            Assert.assertEquals("bank " + i, banks[i], memory.getByte(base + size * i + size / 2));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package me.charlesj.test;
+
+import me.charlesj.Machine;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.metrics.Metrics;
+import me.charlesj.metrics.MetricsSnapshot;
+import me.charlesj.nesloader.FileNesLoader;
+import me.charlesj.screen.HeadlessScreen;
+import me.charlesj.speaker.MuteSpeaker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counting must not change what the machine does.
+ */
+public class MetricsTest {
+
+    @Test
+    public void testCounters() throws IOException, JMException {
+        File rom = TestGames.buildCountingGame();
+        try {
+            Machine plain = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+            Machine counted = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+            plain.setRandomSeed(1);
+            counted.setRandomSeed(1);
+            Metrics metrics = new Metrics();
+            counted.setMetrics(metrics);
+            HeadlessScreen plainScreen = new HeadlessScreen();
+            HeadlessScreen countedScreen = new HeadlessScreen();
+
+            for (int i = 0; i < 10; i++) {
+                plain.runFrame(plainScreen, new MuteSpeaker());
+                counted.runFrame(countedScreen, new MuteSpeaker());
+            }
+            Assert.assertEquals(plain.getCPU().getCycle(), counted.getCPU().getCycle());
+            Assert.assertEquals(plainScreen.hash(), countedScreen.hash());
+
+            MetricsSnapshot snapshot = metrics.getSnapshot();
+            Assert.assertEquals(10, snapshot.getFrames());
+            Assert.assertEquals(counted.getCPU().getCycle(), snapshot.getCpuCycles());
+            Assert.assertTrue(snapshot.getInstructions() > 0);
+            // $2000 and $2001 written once, NMI every frame but the first
+            Assert.assertEquals(2, snapshot.getPpuRegisterWrites());
+            Assert.assertEquals(9, snapshot.getNmis());
+            Assert.assertEquals(0, snapshot.getBankSwitches());
+            Assert.assertTrue(snapshot.getPpuNanos() > 0);
+
+            metrics.register("test");
+            try {
+                ObjectName name = new ObjectName("me.charlesj:type=Metrics,name=\"test\"");
+                Assert.assertEquals(10L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Frames"));
+            } finally {
+                metrics.unregister();
+            }
+        } finally {
+            rom.delete();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package me.charlesj.test;
+
+import me.charlesj.memory.DefaultMemory;
+import me.charlesj.memory.MirrorMemory;
+import me.charlesj.memory.PagedMemory;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the page table memory used by CPU.
+ */
+public class PagedMemoryTest {
+
+    @Test
+    public void testMirroredRam() {
+        PagedMemory memory = new PagedMemory(0x10000);
+        byte[] ram = new byte[0x800];
+        for (int i = 0; i < 0x2000; i += 0x800) {
+            memory.mapBytes(i, 0x800, ram, 0);
+        }
+        memory.setByte(0x1805, 0x42);
+        Assert.assertEquals(0x42, ram[5]);
+        Assert.assertEquals(0x42, memory.getByte(0x0005));
+        Assert.assertEquals(0x42, memory.getByte(0x0805));
+    }
+
+    @Test
+    public void testSeparateReadAndWrite() {
+        PagedMemory memory = new PagedMemory(0x10000);
+        byte[] rom = new byte[0x4000];
+        rom[0x2001] = 0x12;
+        DefaultMemory register = new DefaultMemory(0x8000);
+        memory.mapRead(0x8000, 0x2000, rom, 0x2000);
+        memory.mapWriteHandler(0x8000, 0x8000, register);
+
+        Assert.assertEquals(0x12, memory.getByte(0x8001));
+        memory.setByte(0xA003, 0x34);
+        Assert.assertEquals(0x34, register.getByte(0x2003));
+        Assert.assertEquals(0, rom[3]);
+    }
+
+    @Test
+    public void testBankSwitch() {
+        PagedMemory memory = new PagedMemory(0x10000);
+        byte[] bank0 = new byte[0x2000];
+        byte[] bank1 = new byte[0x2000];
+        bank0[0x10] = 1;
+        bank1[0x10] = 2;
+        memory.mapRead(0x8000, 0x2000, bank0, 0);
+        Assert.assertEquals(1, memory.getByte(0x8010));
+        memory.mapRead(0x8000, 0x2000, bank1, 0);
+        Assert.assertEquals(2, memory.getByte(0x8010));
+    }
+
+    @Test
+    public void testHandler() {
+        PagedMemory memory = new PagedMemory(0x10000);
+        DefaultMemory registers = new DefaultMemory(8);
+        memory.mapHandler(0x2000, 0x2000, new MirrorMemory(registers, 0x2000));
+        memory.setByte(0x3FFE, 0x56);
+        Assert.assertEquals(0x56, registers.getByte(6));
+        Assert.assertEquals(0x56, memory.getByte(0x2006));
+    }
+
+    @Test
+    public void testUnmapped() {
+        PagedMemory memory = new PagedMemory(0x10000);
+        memory.setByte(0x5000, 0x78);
+        Assert.assertEquals(0, memory.getByte(0x5000));
+    }
+
+    @Test
+    public void testBulkCopy() {
+        PagedMemory memory = new PagedMemory(0x10000);
+        byte[] ram = new byte[0x800];
+        DefaultMemory registers = new DefaultMemory(0x100);
+        memory.mapBytes(0x0700, 0x100, ram, 0x80);
+        memory.mapHandler(0x0800, 0x100, registers);
+
+        byte[] buffer = new byte[0x100];
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = (byte) i;
+        }
+        // Crosses from the byte page to the handler page
+        memory.setBytes(0x0780, buffer, 0, 0x100);
+        Assert.assertEquals(0x7F, ram[0x80 + 0xFF]);
+        Assert.assertEquals(0x80, registers.getByte(0));
+        Assert.assertEquals(0xFF, registers.getByte(0x7F));
+
+        byte[] read = new byte[0x100];
+        memory.getBytes(0x0780, read, 0, 0x100);
+        Assert.assertArrayEquals(buffer, read);
+    }
+
+    @Test
+    public void testBulkWriteToCode() {
+        PagedMemory memory = new PagedMemory(0x10000);
+        byte[] ram = new byte[0x800];
+        memory.mapBytes(0, 0x800, ram, 0);
+        memory.watchCode(3);
+        int version = memory.getCodeVersion(3);
+        memory.setBytes(0x0300, new byte[4], 0, 4);
+        Assert.assertNotEquals(version, memory.getCodeVersion(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnalignedMapping() {
+        new PagedMemory(0x10000).mapBytes(0x2008, 0x100, new byte[0x100], 0);
+    }
+}
@@ -0,0 +1,76 @@
+package me.charlesj.test;
+
+import me.charlesj.Machine;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.nesloader.FileNesLoader;
+import me.charlesj.screen.HeadlessScreen;
+import me.charlesj.speaker.MuteSpeaker;
+import me.charlesj.state.RewindBuffer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stepping back through recorded frames.
+ */
+public class RewindBufferTest {
+
+    private File rom;
+    private Machine machine;
+    private HeadlessScreen screen = new HeadlessScreen();
+    private MuteSpeaker speaker = new MuteSpeaker();
+
+    @Before
+    public void setUp() throws IOException {
+        rom = TestGames.buildBusyGame(4);
+        machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+        machine.setRandomSeed(1);
+    }
+
+    @After
+    public void tearDown() {
+        rom.delete();
+    }
+
+    @Test
+    public void testStepBack() {
+        RewindBuffer rewind = new RewindBuffer(1 << 20, 1, 8);
+        List<byte[]> states = new ArrayList<byte[]>();
+        for (int i = 0; i < 30; i++) {
+            machine.runFrame(screen, speaker);
+            rewind.onFrame(machine);
+            states.add(machine.saveState());
+        }
+        Assert.assertEquals(30, rewind.getCount());
+
+        for (int i = 28; i >= 0; i--) {
+            Assert.assertTrue(rewind.stepBack(machine));
+            Assert.assertArrayEquals(states.get(i), machine.saveState());
+        }
+        Assert.assertFalse(rewind.stepBack(machine));
+    }
+
+    @Test
+    public void testDropOldest() {
+        RewindBuffer rewind = new RewindBuffer(Machine.MAX_STATE_SIZE * 2, 1, 4);
+        for (int i = 0; i < 100; i++) {
+            machine.runFrame(screen, speaker);
+            rewind.onFrame(machine);
+        }
+        Assert.assertEquals(100, rewind.getNewestFrame());
+        Assert.assertTrue(rewind.getOldestFrame() > 1);
+        Assert.assertTrue(rewind.getUsedBytes() <= Machine.MAX_STATE_SIZE * 2);
+
+        long oldest = rewind.getOldestFrame();
+        while (rewind.stepBack(machine)) {
+            // continue
+        }
+        Assert.assertEquals(oldest, machine.getFrame());
+    }
+}
@@ -0,0 +1,71 @@
+package me.charlesj.test;
+
+import me.charlesj.Machine;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.memory.Memory;
+import me.charlesj.nesloader.FileNesLoader;
+import me.charlesj.nesloader.NesLoader;
+import me.charlesj.nesloader.RomCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Machines of the same game share one loader and never change it.
+ */
+public class RomCacheTest {
+
+    @Test
+    public void testShared() throws IOException {
+        File rom = TestGames.buildCountingGame();
+        File copy = File.createTempFile("game", ".nes");
+        try {
+            Files.copy(rom.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            RomCache cache = new RomCache();
+            NesLoader loader = cache.load(rom);
+            Assert.assertSame(loader, cache.load(rom.getPath()));
+            Assert.assertSame(loader, cache.load(copy));
+            Assert.assertEquals(1, cache.size());
+
+            NesLoader fileLoader = new FileNesLoader(rom);
+            Assert.assertEquals(fileLoader.getMapper(), loader.getMapper());
+            Assert.assertArrayEquals(fileLoader.getPRGPage(0), loader.getPRGPage(0));
+            Assert.assertArrayEquals(fileLoader.getCHRPage(0), loader.getCHRPage(0));
+
+            // Other content is another game
+            RandomAccessFile file = new RandomAccessFile(copy, "rw");
+            try {
+                file.seek(16);
+                file.write(0xEA);
+            } finally {
+                file.close();
+            }
+            Assert.assertNotSame(loader, cache.load(copy));
+            Assert.assertEquals(2, cache.size());
+        } finally {
+            rom.delete();
+            copy.delete();
+        }
+    }
+
+    @Test
+    public void testChrRomNotWritten() throws IOException {
+        File rom = TestGames.buildCountingGame();
+        try {
+            NesLoader loader = new RomCache().load(rom);
+            Machine machine = new Machine(loader, new StandardControllers());
+            Memory memory = machine.getCPU().getMemory();
+            memory.setByte(0x2006, 0);
+            memory.setByte(0x2006, 0);
+            memory.setByte(0x2007, 0xAA);
+            Assert.assertEquals(0, loader.getCHRPage(0)[0]);
+        } finally {
+            rom.delete();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package me.charlesj.test;
+
+import me.charlesj.GameRunner;
+import me.charlesj.Machine;
+import me.charlesj.input.InputMovie;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.nesloader.FileNesLoader;
+import me.charlesj.pacing.FramePacer;
+import me.charlesj.screen.HeadlessScreen;
+import me.charlesj.speaker.MuteSpeaker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Run-ahead shows later frames without advancing the game.
+ */
+public class RunAheadTest {
+
+    private static final int FRAMES = 8;
+    private static final int RUN_AHEAD = 2;
+    private static final long SEED = 1;
+
+    @Test
+    public void testShowsFramesAhead() throws Exception {
+        File rom = buildBackdropGame();
+        try {
+            HeadlessScreen referenceScreen = new HeadlessScreen();
+            Machine machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+            machine.setRandomSeed(SEED);
+            int[] expected = new int[FRAMES + RUN_AHEAD];
+            for (int i = 0; i < expected.length; i++) {
+                machine.runFrame(referenceScreen, new MuteSpeaker());
+                expected[i] = referenceScreen.getColorBuffer()[0];
+            }
+
+            final HeadlessScreen screen = new HeadlessScreen();
+            final int[] shown = new int[FRAMES];
+            final int[] count = new int[1];
+            final GameRunner[] runner = new GameRunner[1];
+            runner[0] = new GameRunner(rom.getPath(), new StandardControllers(), screen, new MuteSpeaker(), new Runnable() {
+                public void run() {
+                    shown[count[0]++] = screen.getColorBuffer()[0];
+                    if (count[0] == FRAMES) {
+                        runner[0].stop();
+                    }
+                }
+            });
+            runner[0].getPacer().setMode(FramePacer.UNTHROTTLED);
+            runner[0].setRunAhead(RUN_AHEAD);
+            // A movie is the only way to seed the runner's machine
+            runner[0].setMovie(new InputMovie(SEED), true);
+            Thread thread = new Thread(runner[0]);
+            thread.start();
+            thread.join(10000);
+
+            Assert.assertEquals(FRAMES, count[0]);
+            for (int i = 0; i < FRAMES; i++) {
+                Assert.assertEquals("Frame " + i, expected[i + RUN_AHEAD], shown[i]);
+            }
+        } finally {
+            rom.delete();
+        }
+    }
+
+    /**
+     * Counts frames at $00 in NMI handler and sets the backdrop color to the count.
+     */
+    private static File buildBackdropGame() throws IOException {
+        int[] code = {
+                0x78,             // SEI
+                0xA9, 0x80,       // LDA #$80
+                0x8D, 0x00, 0x20, // STA $2000
+                0xA9, 0x0A,       // LDA #$0A
+                0x8D, 0x01, 0x20, // STA $2001
+                0x4C, 0x0B, 0xC0, // JMP $C00B
+                0xE6, 0x00,       // NMI: INC $00
+                0xA9, 0x3F,       // LDA #$3F
+                0x8D, 0x06, 0x20, // STA $2006
+                0xA9, 0x00,       // LDA #$00
+                0x8D, 0x06, 0x20, // STA $2006
+                0xA5, 0x00,       // LDA $00
+                0x29, 0x3F,       // AND #$3F
+                0x8D, 0x07, 0x20, // STA $2007
+                0x40,             // RTI
+        };
+        return TestGames.build(0, code, 0xC00E, new byte[0x2000]);
+    }
+}
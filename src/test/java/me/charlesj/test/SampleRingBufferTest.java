@@ -0,0 +1,82 @@
+package me.charlesj.test;
+
+import me.charlesj.speaker.SampleRingBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Wrapping, counters and ordering across threads.
+ */
+public class SampleRingBufferTest {
+
+    @Test
+    public void testWrapAndCounters() {
+        SampleRingBuffer ring = new SampleRingBuffer(8);
+        byte[] buffer = new byte[16];
+        // Only the consumer knows when it ran dry
+        Assert.assertEquals(0, ring.read(buffer, 0, 16));
+        Assert.assertEquals(0, ring.getUnderruns());
+        ring.countUnderrun();
+        Assert.assertEquals(1, ring.getUnderruns());
+
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 6; i++) {
+                Assert.assertTrue(ring.offer((short) (round * 0x1000 + i)));
+            }
+            Assert.assertEquals(8, ring.read(buffer, 0, 8));
+            Assert.assertEquals(4, ring.read(buffer, 8, 16 - 8));
+            for (int i = 0; i < 6; i++) {
+                Assert.assertEquals(round * 0x1000 + i, sample(buffer, i));
+            }
+        }
+
+        for (int i = 0; i < 10; i++) {
+            ring.offer((short) -i);
+        }
+        Assert.assertEquals(2, ring.getOverruns());
+        Assert.assertEquals(16, ring.read(buffer, 0, 16));
+        // The newest samples are dropped
+        Assert.assertEquals(-7, sample(buffer, 7));
+        Assert.assertEquals(1, ring.getUnderruns());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityPowerOfTwo() {
+        new SampleRingBuffer(100);
+    }
+
+    @Test
+    public void testProducerConsumer() throws InterruptedException {
+        final SampleRingBuffer ring = new SampleRingBuffer(64);
+        final int total = 1000000;
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < total; i++) {
+                    while (!ring.offer((short) i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+
+        byte[] buffer = new byte[96];
+        int received = 0;
+        while (received < total) {
+            int length = ring.read(buffer, 0, buffer.length) / 2;
+            for (int i = 0; i < length; i++) {
+                Assert.assertEquals((short) (received + i), sample(buffer, i));
+            }
+            received += length;
+            if (length == 0) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+        Assert.assertEquals(0, ring.size());
+    }
+
+    private static short sample(byte[] buffer, int index) {
+        return (short) ((buffer[index * 2] << 8) | (buffer[index * 2 + 1] & 0xFF));
+    }
+}
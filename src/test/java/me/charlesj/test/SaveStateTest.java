@@ -0,0 +1,124 @@
+package me.charlesj.test;
+
+import me.charlesj.Machine;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.nesloader.FileNesLoader;
+import me.charlesj.screen.HeadlessScreen;
+import me.charlesj.speaker.MuteSpeaker;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Save and restore the whole machine.
+ */
+public class SaveStateTest {
+
+    private File rom;
+    private Machine machine;
+    private HeadlessScreen screen = new HeadlessScreen();
+    private MuteSpeaker speaker = new MuteSpeaker();
+
+    @Before
+    public void setUp() throws IOException {
+        rom = TestGames.buildCountingGame();
+        machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+        machine.setRandomSeed(1);
+    }
+
+    @After
+    public void tearDown() {
+        rom.delete();
+    }
+
+    @Test
+    public void testRestore() {
+        assertRestores();
+    }
+
+    @Test
+    public void testRestoreUxROM() throws IOException {
+        // With CHR RAM
+        useGame(TestGames.buildBusyGame(2));
+        assertRestores();
+        Assert.assertTrue("IRQs taken", machine.getRam()[1] != 0);
+    }
+
+    @Test
+    public void testRestoreMMC3() throws IOException {
+        useGame(TestGames.buildBusyGame(4));
+        assertRestores();
+        Assert.assertTrue("IRQs taken", machine.getRam()[1] != 0);
+    }
+
+    @Test
+    public void testRestoreVRC2() throws IOException {
+        useGame(TestGames.buildBusyGame(23));
+        assertRestores();
+        Assert.assertTrue("IRQs taken", machine.getRam()[1] != 0);
+    }
+
+    @Test
+    public void testReuseDirectBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Machine.MAX_STATE_SIZE);
+        runFrames(2);
+        machine.saveState(buffer);
+        int size = buffer.position();
+        byte[] ram = machine.getRam();
+
+        runFrames(3);
+        buffer.flip();
+        machine.loadState(buffer);
+        Assert.assertEquals(size, buffer.position());
+        Assert.assertArrayEquals(ram, machine.getRam());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotAState() {
+        machine.loadState(new byte[64]);
+    }
+
+    /**
+     * Saves at frame 5, runs to frame 15, then loads and runs to frame 15 again.
+     */
+    private void assertRestores() {
+        runFrames(5);
+        byte[] state = machine.saveState();
+        // Only games with both CHR RAM and PRG RAM take more
+        Assert.assertTrue(state.length < 20 * 1024);
+
+        runFrames(10);
+        long frame = machine.getFrame();
+        long cycle = machine.getCPU().getCycle();
+        long hash = screen.hash();
+        byte[] ram = machine.getRam();
+        byte[] endState = machine.saveState();
+
+        machine.loadState(state);
+        Assert.assertEquals(5, machine.getFrame());
+        runFrames(10);
+        Assert.assertEquals(frame, machine.getFrame());
+        Assert.assertEquals(cycle, machine.getCPU().getCycle());
+        Assert.assertEquals(hash, screen.hash());
+        Assert.assertArrayEquals(ram, machine.getRam());
+        Assert.assertArrayEquals(endState, machine.saveState());
+    }
+
+    private void useGame(File game) throws IOException {
+        rom.delete();
+        rom = game;
+        machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+        machine.setRandomSeed(1);
+    }
+
+    private void runFrames(int count) {
+        for (int i = 0; i < count; i++) {
+            machine.runFrame(screen, speaker);
+        }
+    }
+}
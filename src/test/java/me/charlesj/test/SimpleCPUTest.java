@@ -3,7 +3,7 @@ package me.charlesj.test;
 import me.charlesj.cpu.CPURegister;
 import me.charlesj.cpu.SimpleCPU;
 import me.charlesj.cpu.CPU;
-import me.charlesj.memory.DefaultMemory;
+import me.charlesj.memory.PagedMemory;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -22,7 +22,7 @@ public class SimpleCPUTest {
     //////////////////////////////////////////////////////////////////
     @Test
     public void testPowerUp() {
-        CPU cpu = new SimpleCPU();
+        CPU cpu = createCPU();
         TempMemory memory = initMemory(cpu);
         CPURegister register = cpu.getRegister();
 
@@ -203,6 +203,28 @@ public class SimpleCPUTest {
         Assert.assertEquals(0xFD, register.getSp());
     }
 
+    @Test
+    public void testPhpAfterBit() {
+        TempMemory[] mem = new TempMemory[1];
+        CPU cpu = powerUpCPUWithCode(new int[] {
+                0xA9, 0x01,       // LDA #1
+                0x2C, 0x06, 0x80, // BIT 8006
+                0x08,             // PHP
+                0x80
+        }, mem);
+
+        cpu.execute();
+        cpu.execute();
+        cpu.execute();
+
+        // Negative from memory, zero from A & memory
+        CPURegister register = cpu.getRegister();
+        Assert.assertTrue(register.isNegative());
+        Assert.assertTrue(register.isZero());
+        Assert.assertEquals(0xB6, register.getFlags());
+        Assert.assertEquals(0xB6, mem[0].getByte(0x1FD));
+    }
+
     @Test
     public void testBvc() {
         testBranch(0x50, new RegisterRunnable() {
@@ -1034,6 +1056,99 @@ public class SimpleCPUTest {
         Assert.assertEquals(value, cpu.getRegister().getA());
     }
 
+    //////////////////////////////////////////////////////////////////
+    // Timing tests
+    //////////////////////////////////////////////////////////////////
+
+    // Cycles of each official opcode without page crossing, 0 for unofficial ones
+    private static final int[] CYCLES = {
+            7, 6, 0, 0, 0, 3, 5, 0, 3, 2, 2, 0, 0, 4, 6, 0,
+            2, 5, 0, 0, 0, 4, 6, 0, 2, 4, 0, 0, 0, 4, 7, 0,
+            6, 6, 0, 0, 3, 3, 5, 0, 4, 2, 2, 0, 4, 4, 6, 0,
+            2, 5, 0, 0, 0, 4, 6, 0, 2, 4, 0, 0, 0, 4, 7, 0,
+            6, 6, 0, 0, 0, 3, 5, 0, 3, 2, 2, 0, 3, 4, 6, 0,
+            2, 5, 0, 0, 0, 4, 6, 0, 2, 4, 0, 0, 0, 4, 7, 0,
+            6, 6, 0, 0, 0, 3, 5, 0, 4, 2, 2, 0, 5, 4, 6, 0,
+            2, 5, 0, 0, 0, 4, 6, 0, 2, 4, 0, 0, 0, 4, 7, 0,
+            0, 6, 0, 0, 3, 3, 3, 0, 2, 0, 2, 0, 4, 4, 4, 0,
+            2, 6, 0, 0, 4, 4, 4, 0, 2, 5, 2, 0, 0, 5, 0, 0,
+            2, 6, 2, 0, 3, 3, 3, 0, 2, 2, 2, 0, 4, 4, 4, 0,
+            2, 5, 0, 0, 4, 4, 4, 0, 2, 4, 2, 0, 4, 4, 4, 0,
+            2, 6, 0, 0, 3, 3, 5, 0, 2, 2, 2, 0, 4, 4, 6, 0,
+            2, 5, 0, 0, 0, 4, 6, 0, 2, 4, 0, 0, 0, 4, 7, 0,
+            2, 6, 0, 0, 3, 3, 5, 0, 2, 2, 2, 0, 4, 4, 6, 0,
+            2, 5, 0, 0, 0, 4, 6, 0, 2, 4, 0, 0, 0, 4, 7, 0,
+    };
+
+    // Reads taking one more cycle when the indexed address crosses a page
+    private static final int[] PAGE_CROSSING = {
+            0x11, 0x19, 0x1D, 0x31, 0x39, 0x3D, 0x51, 0x59, 0x5D, 0x71, 0x79, 0x7D,
+            0xB1, 0xB9, 0xBC, 0xBD, 0xBE, 0xD1, 0xD9, 0xDD, 0xF1, 0xF9, 0xFD,
+    };
+
+    @Test
+    public void testOpcodeTiming() {
+        for (int opcode = 0; opcode < 0x100; opcode++) {
+            if (CYCLES[opcode] == 0) {
+                continue;
+            }
+            CPU cpu = powerUpCPUWithCode(new int[] {
+                    opcode, 0x10, 0x10
+            }, null);
+            long cycle = cpu.getCycle();
+            cpu.execute();
+
+            String message = "Opcode " + Integer.toHexString(opcode);
+            int cycles = CYCLES[opcode];
+            int pc = 0x8000 + getLength(opcode);
+            if ((opcode & 0x1F) == 0x10) {
+                // Branches are taken by flags 0x34 when the tested flag is clear
+                if ((opcode & 0x20) == 0) {
+                    cycles++;
+                    pc += 0x10;
+                }
+            } else if (opcode == 0x20 || opcode == 0x4C) {
+                pc = 0x1010;
+            } else if (opcode == 0x00 || opcode == 0x40 || opcode == 0x60 || opcode == 0x6C) {
+                pc = cpu.getRegister().getPc();
+            }
+            Assert.assertEquals(message, cycles, cpu.getCycle() - cycle);
+            Assert.assertEquals(message, pc, cpu.getRegister().getPc());
+        }
+    }
+
+    @Test
+    public void testPageCrossingTiming() {
+        for (int opcode : PAGE_CROSSING) {
+            TempMemory[] mem = new TempMemory[1];
+            CPU cpu = powerUpCPUWithCode(new int[] {
+                    0xA2, 0x20,        // LDX #$20
+                    0xA0, 0x20,        // LDY #$20
+                    opcode, 0xF0, 0x03 // $03F0 + $20, or ($F0) + $20
+            }, mem);
+            mem[0].setBytes(0xF0, new int[]{ 0xF0, 0x03 });
+            cpu.execute();
+            cpu.execute();
+            long cycle = cpu.getCycle();
+            cpu.execute();
+            Assert.assertEquals("Opcode " + Integer.toHexString(opcode), CYCLES[opcode] + 1, cpu.getCycle() - cycle);
+        }
+    }
+
+    private static int getLength(int opcode) {
+        int column = opcode & 0x0F;
+        if (column == 0x00) {
+            return opcode == 0x20 ? 3 : (opcode & 0x9F) == 0 ? 1 : 2;
+        } else if (column == 0x08 || column == 0x0A) {
+            return 1;
+        } else if (column == 0x09) {
+            return (opcode & 0x10) == 0 ? 2 : 3;
+        } else if (column >= 0x0C) {
+            return 3;
+        }
+        return 2;
+    }
+
     //////////////////////////////////////////////////////////////////
     // Utilities
     //////////////////////////////////////////////////////////////////
@@ -1056,14 +1171,18 @@ public class SimpleCPUTest {
         }
     }
 
-    private TempMemory initMemory(CPU cpu) {
+    protected CPU createCPU() {
+        return new SimpleCPU();
+    }
+
+    protected TempMemory initMemory(CPU cpu) {
         TempMemory memory = new TempMemory(0x10000);
         cpu.setMemory(memory);
         return memory;
     }
 
-    private CPU powerUpCPUWithCode(int[] code, TempMemory[] memoryList) {
-        CPU cpu = new SimpleCPU();
+    protected CPU powerUpCPUWithCode(int[] code, TempMemory[] memoryList) {
+        CPU cpu = createCPU();
         TempMemory memory = initMemory(cpu);
         memory.setBytes(0xFFFC, new int[]{0x00, 0x80});
         memory.setBytes(0x8000, code);
@@ -1074,9 +1193,10 @@ public class SimpleCPUTest {
         return cpu;
     }
 
-    class TempMemory extends DefaultMemory {
+    class TempMemory extends PagedMemory {
         public TempMemory(int size) {
             super(size);
+            mapBytes(0, size, new byte[size], 0);
         }
         public void setBytes(int address, int[] data) {
             for (int i=0; i<data.length; i++) {
@@ -0,0 +1,177 @@
+package me.charlesj.test;
+
+import me.charlesj.Machine;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.memory.Memory;
+import me.charlesj.nesloader.FileNesLoader;
+import me.charlesj.ppu.PPU;
+import me.charlesj.screen.HeadlessScreen;
+import me.charlesj.speaker.MuteSpeaker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * At most 8 sprites are drawn on a line, more set sprite overflow.
+ */
+public class SpriteEvaluationTest {
+
+    @Test
+    public void testEightSpritesPerLine() throws IOException {
+        File rom = TestGames.buildIdleGame();
+        try {
+            Machine machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+            machine.setRandomSeed(1);
+            Memory memory = machine.getCPU().getMemory();
+            HeadlessScreen screen = new HeadlessScreen();
+
+            memory.setByte(0x2006, 0x3F);
+            memory.setByte(0x2006, 0x00);
+            memory.setByte(0x2007, 0x0F);
+            memory.setByte(0x2006, 0x3F);
+            memory.setByte(0x2006, 0x11);
+            memory.setByte(0x2007, 0x16);
+            writeSolidTile(memory);
+
+            // Sprites 0 ~ 8 on lines 100 ~ 107
+            writeSprites(memory, 99);
+            Assert.assertEquals(0x20, run(machine, memory, screen) & 0x20);
+            for (int i = 0; i < 8; i++) {
+                Assert.assertEquals(0x16, pixel(screen, 8 + 16 * i, 100));
+            }
+            Assert.assertEquals(0x0F, pixel(screen, 8 + 16 * 8, 100));
+
+            // Sprite 8 moves to lines 150 ~ 157
+            writeSprites(memory, 149);
+            Assert.assertEquals(0, run(machine, memory, screen) & 0x20);
+            Assert.assertEquals(0x16, pixel(screen, 8 + 16 * 8, 150));
+        } finally {
+            rom.delete();
+        }
+    }
+
+    @Test
+    public void testSkippedRendering() throws IOException {
+        File rom = TestGames.buildIdleGame();
+        try {
+            Machine machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+            machine.setRandomSeed(1);
+            Memory memory = machine.getCPU().getMemory();
+            HeadlessScreen screen = new HeadlessScreen();
+            writeSolidTile(memory);
+            // Background tile behind sprite 0
+            memory.setByte(0x2006, 0x21);
+            memory.setByte(0x2006, 0x81);
+            memory.setByte(0x2007, 1);
+            writeSprites(memory, 99);
+
+            machine.setSkipRendering(true);
+            int status = run(machine, memory, screen);
+            Assert.assertEquals("Sprite 0 hit", 0x40, status & 0x40);
+            Assert.assertEquals("Sprite overflow", 0x20, status & 0x20);
+            Assert.assertEquals("Screen untouched", new HeadlessScreen().hash(), screen.hash());
+        } finally {
+            rom.delete();
+        }
+    }
+
+    @Test
+    public void testRenderingOffAtDot257() throws IOException {
+        File rom = TestGames.buildIdleGame();
+        try {
+            for (boolean catchUp : new boolean[] {false, true}) {
+                Machine machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+                machine.setCatchUpPPU(catchUp);
+                machine.setRandomSeed(1);
+                Memory memory = machine.getCPU().getMemory();
+                HeadlessScreen screen = new HeadlessScreen();
+                memory.setByte(0x2006, 0x3F);
+                memory.setByte(0x2006, 0x00);
+                memory.setByte(0x2007, 0x0F);
+                memory.setByte(0x2006, 0x3F);
+                memory.setByte(0x2006, 0x11);
+                memory.setByte(0x2007, 0x16);
+                writeSolidTile(memory);
+
+                // Sprite 0 on lines 96 ~ 103, sprite 1 on lines 150 ~ 157
+                memory.setByte(0x2003, 0);
+                for (int i = 0; i < 64; i++) {
+                    memory.setByte(0x2004, i == 0 ? 95 : i == 1 ? 149 : 0xFF);
+                    memory.setByte(0x2004, 1);
+                    memory.setByte(0x2004, 0);
+                    memory.setByte(0x2004, 8);
+                }
+                run(machine, memory, screen);
+                Assert.assertEquals(0x16, pixel(screen, 8, 103));
+                Assert.assertEquals(0x0F, pixel(screen, 8, 104));
+                Assert.assertEquals(0x16, pixel(screen, 8, 150));
+
+                // Sprite 1 moves to lines 170 ~ 177
+                memory.setByte(0x2001, 0);
+                memory.setByte(0x2003, 4);
+                memory.setByte(0x2004, 169);
+                memory.setByte(0x2001, 0x1E);
+
+                // Rendering is off across dot 257 of line 103, nothing is fetched for line 104
+                PPU ppu = machine.getPPU();
+                while (ppu.getScanline() != 103 || ppu.getCycle() < 200) {
+                    machine.step(screen, new MuteSpeaker());
+                }
+                memory.setByte(0x2001, 0);
+                while (ppu.getScanline() != 104) {
+                    machine.step(screen, new MuteSpeaker());
+                }
+                memory.setByte(0x2001, 0x1E);
+                while (!machine.step(screen, new MuteSpeaker())) {
+                    // continue
+                }
+                Assert.assertEquals(0x0F, pixel(screen, 8, 104));
+                Assert.assertEquals(0x0F, pixel(screen, 8, 150));
+                Assert.assertEquals(0x16, pixel(screen, 8, 170));
+            }
+        } finally {
+            rom.delete();
+        }
+    }
+
+    /**
+     * Tile 1 is solid colour 1.
+     */
+    private static void writeSolidTile(Memory memory) {
+        memory.setByte(0x2006, 0x00);
+        memory.setByte(0x2006, 0x10);
+        for (int i = 0; i < 8; i++) {
+            memory.setByte(0x2007, 0xFF);
+        }
+    }
+
+    private static void writeSprites(Memory memory, int lastY) {
+        memory.setByte(0x2001, 0);
+        memory.setByte(0x2003, 0);
+        for (int i = 0; i < 64; i++) {
+            memory.setByte(0x2004, i < 8 ? 99 : i == 8 ? lastY : 0xFF);
+            memory.setByte(0x2004, 1);
+            memory.setByte(0x2004, 0);
+            memory.setByte(0x2004, 8 + 16 * i);
+        }
+    }
+
+    /**
+     * @return PPU status at the end of the second frame
+     */
+    private static int run(Machine machine, Memory memory, HeadlessScreen screen) {
+        memory.setByte(0x2006, 0);
+        memory.setByte(0x2006, 0);
+        memory.setByte(0x2001, 0x1E);
+        for (int i = 0; i < 2; i++) {
+            machine.runFrame(screen, new MuteSpeaker());
+        }
+        return memory.getByte(0x2002);
+    }
+
+    private static int pixel(HeadlessScreen screen, int x, int y) {
+        return screen.getColorBuffer()[PPU.SCREEN_WIDTH * y + x];
+    }
+}
@@ -0,0 +1,302 @@
+package me.charlesj.test;
+
+import me.charlesj.util.NesBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Generated games shared by the tests, written to temporary files the caller deletes.
+ */
+final class TestGames {
+
+    private TestGames() {
+    }
+
+    /**
+     * One PRG page with the program at $C000, IRQs go to the NMI handler.
+     * @param chr CHR ROM page, null for CHR RAM
+     */
+    static File build(int mapper, int[] code, int nmi, byte[] chr) throws IOException {
+        return build(mapper, code, 0xC000, nmi, nmi, new byte[][] {new byte[0x4000]},
+                chr == null ? new byte[0][] : new byte[][] {chr});
+    }
+
+    /**
+     * Puts the program and the vectors into the last PRG page.
+     * @param reset address of the program, $C000 or above
+     * @param prg 16KB PRG pages
+     * @param chr 8KB CHR pages, none for CHR RAM
+     */
+    static File build(int mapper, int[] code, int reset, int nmi, int irq, byte[][] prg, byte[][] chr)
+            throws IOException {
+        byte[] last = prg[prg.length - 1];
+        for (int i = 0; i < code.length; i++) {
+            last[reset - 0xC000 + i] = (byte) code[i];
+        }
+        int[] vectors = {nmi, reset, irq};
+        for (int i = 0; i < vectors.length; i++) {
+            last[0x3FFA + i * 2] = (byte) vectors[i];
+            last[0x3FFB + i * 2] = (byte) (vectors[i] >> 8);
+        }
+
+        NesBuilder builder = new NesBuilder()
+                .setPrgPageCount(prg.length)
+                .setChrPageCount(chr.length)
+                .setMapper(mapper);
+        for (int i = 0; i < prg.length; i++) {
+            builder.setPrgRomPage(i, prg[i]);
+        }
+        for (int i = 0; i < chr.length; i++) {
+            builder.setChrRomPage(i, chr[i]);
+        }
+        File file = File.createTempFile("game", ".nes");
+        builder.build(file.getPath());
+        return file;
+    }
+
+    /**
+     * Enables NMI and increases $00 in NMI handler.
+     */
+    static File buildCountingGame() throws IOException {
+        int[] code = {
+                0x78,             // SEI
+                0xA9, 0x80,       // LDA #$80
+                0x8D, 0x00, 0x20, // STA $2000
+                0xA9, 0x1E,       // LDA #$1E
+                0x8D, 0x01, 0x20, // STA $2001
+                0x4C, 0x0B, 0xC0, // JMP $C00B
+                0xE6, 0x00,       // NMI: INC $00
+                0x40,             // RTI
+        };
+        return build(0, code, 0xC00E, new byte[0x2000]);
+    }
+
+    /**
+     * Loops forever with CHR RAM.
+     */
+    static File buildIdleGame() throws IOException {
+        int[] code = {
+                0x4C, 0x00, 0xC0, // JMP $C000
+                0x40,             // NMI: RTI
+        };
+        return build(0, code, 0xC003, null);
+    }
+
+    /**
+     * Loops forever at $E000 in the last PRG bank.
+     * Each 8KB PRG bank and each 1KB CHR bank is filled with its number.
+     * @param mapper 4, 22 or 23, with 4 PRG pages and 4 CHR pages
+     */
+    static File buildBankGame(int mapper) throws IOException {
+        int[] code = {
+                0x4C, 0x00, 0xE0, // JMP $E000
+                0x40,             // NMI, IRQ: RTI
+        };
+        byte[][] prg = new byte[4][0x4000];
+        for (int i = 0; i < 8; i++) {
+            Arrays.fill(prg[i >> 1], (i & 1) * 0x2000, (i & 1) * 0x2000 + 0x2000, (byte) i);
+        }
+        byte[][] chr = new byte[4][0x2000];
+        for (int i = 0; i < 32; i++) {
+            Arrays.fill(chr[i >> 3], (i & 7) * 0x400, (i & 7) * 0x400 + 0x400, (byte) i);
+        }
+        return build(mapper, code, 0xE000, 0xE003, 0xE003, prg, chr);
+    }
+
+    /**
+     * Keeps every unit busy: sprites copied by OAM DMA and scrolling in NMI handler, all APU channels
+     * playing with the frame IRQ on, and PRG and CHR banks switched over and over in the main loop.
+     * MMC3 also raises IRQs from its scanline counter.
+     * $00 counts NMIs, $01 counts IRQs and $11 keeps the first byte of the PRG bank at $8000.
+     * @param mapper 2 with CHR RAM, 4 or 23 with CHR ROM
+     */
+    static File buildBusyGame(int mapper) throws IOException {
+        int[] code = {
+                0x78,             // SEI
+                0xD8,             // CLD
+                0xA2, 0xFF,       // LDX #$FF
+                0x9A,             // TXS
+                0xE8,             // INX
+                0x8A,             // TXA
+                0x9D, 0x00, 0x02, // STA $0200,X
+                0xE8,             // INX
+                0xD0, 0xF9,       // BNE $E006
+                0xA9, 0x00,       // LDA #$00
+                0x8D, 0x06, 0x20, // STA $2006
+                0x8D, 0x06, 0x20, // STA $2006
+                0x8E, 0x07, 0x20, // STX $2007
+                0xE8,             // INX
+                0xD0, 0xFA,       // BNE $E015
+                0xA9, 0x10,       // LDA #$10
+                0x8D, 0x06, 0x20, // STA $2006
+                0xA9, 0x00,       // LDA #$00
+                0x8D, 0x06, 0x20, // STA $2006
+                0x8E, 0x07, 0x20, // STX $2007
+                0xE8,             // INX
+                0xD0, 0xFA,       // BNE $E025
+                0xA9, 0x20,       // LDA #$20
+                0x8D, 0x06, 0x20, // STA $2006
+                0xA9, 0x00,       // LDA #$00
+                0x8D, 0x06, 0x20, // STA $2006
+                0x8E, 0x07, 0x20, // STX $2007
+                0xE8,             // INX
+                0xD0, 0xFA,       // BNE $E035
+                0xA9, 0x3F,       // LDA #$3F
+                0x8D, 0x06, 0x20, // STA $2006
+                0xA9, 0x00,       // LDA #$00
+                0x8D, 0x06, 0x20, // STA $2006
+                0x8A,             // TXA
+                0x8D, 0x07, 0x20, // STA $2007
+                0xE8,             // INX
+                0xE0, 0x20,       // CPX #$20
+                0xD0, 0xF7,       // BNE $E045
+                0xA9, 0xBF,       // LDA #$BF
+                0x8D, 0x00, 0x40, // STA $4000
+                0xA9, 0x80,       // LDA #$80
+                0x8D, 0x02, 0x40, // STA $4002
+                0xA9, 0x01,       // LDA #$01
+                0x8D, 0x03, 0x40, // STA $4003
+                0xA9, 0xFF,       // LDA #$FF
+                0x8D, 0x08, 0x40, // STA $4008
+                0xA9, 0x40,       // LDA #$40
+                0x8D, 0x0A, 0x40, // STA $400A
+                0xA9, 0x01,       // LDA #$01
+                0x8D, 0x0B, 0x40, // STA $400B
+                0xA9, 0x3F,       // LDA #$3F
+                0x8D, 0x0C, 0x40, // STA $400C
+                0xA9, 0x05,       // LDA #$05
+                0x8D, 0x0E, 0x40, // STA $400E
+                0xA9, 0x08,       // LDA #$08
+                0x8D, 0x0F, 0x40, // STA $400F
+                0xA9, 0x0F,       // LDA #$0F
+                0x8D, 0x10, 0x40, // STA $4010
+                0xA9, 0x00,       // LDA #$00
+                0x8D, 0x12, 0x40, // STA $4012
+                0xA9, 0x10,       // LDA #$10
+                0x8D, 0x13, 0x40, // STA $4013
+                0xA9, 0x1F,       // LDA #$1F
+                0x8D, 0x15, 0x40, // STA $4015
+                0xA9, 0x00,       // LDA #$00
+                0x8D, 0x17, 0x40, // STA $4017
+                0x20, 0x40, 0xE2, // JSR $E240
+                0xA9, 0x88,       // LDA #$88
+                0x8D, 0x00, 0x20, // STA $2000
+                0xA9, 0x1E,       // LDA #$1E
+                0x8D, 0x01, 0x20, // STA $2001
+                0x58,             // CLI
+                0xE6, 0x10,       // INC $10
+                0xA5, 0x10,       // LDA $10
+                0x29, 0x03,       // AND #$03
+                0x20, 0x00, 0xE2, // JSR $E200
+                0xAD, 0x00, 0x80, // LDA $8000
+                0x85, 0x11,       // STA $11
+                0xA5, 0x00,       // LDA $00
+                0x29, 0x07,       // AND #$07
+                0x20, 0x20, 0xE2, // JSR $E220
+                0x4C, 0xA2, 0xE0, // JMP $E0A2
+                0x48,             // NMI: PHA
+                0xE6, 0x00,       // INC $00
+                0xA9, 0x02,       // LDA #$02
+                0x8D, 0x14, 0x40, // STA $4014
+                0xA5, 0x00,       // LDA $00
+                0x8D, 0x05, 0x20, // STA $2005
+                0x8D, 0x05, 0x20, // STA $2005
+                0x8D, 0x02, 0x40, // STA $4002
+                0xA9, 0x1F,       // LDA #$1F
+                0x8D, 0x15, 0x40, // STA $4015
+                0x68,             // PLA
+                0x40,             // RTI
+                0x48,             // IRQ: PHA
+                0xAD, 0x15, 0x40, // LDA $4015
+                0x85, 0x12,       // STA $12
+                0xE6, 0x01,       // INC $01
+                0x20, 0x60, 0xE2, // JSR $E260
+                0x68,             // PLA
+                0x40,             // RTI
+        };
+        // Mapper routines: $E200 maps 8KB (16KB for UxROM) PRG bank A at $8000, $E220 maps 1KB CHR bank A
+        // at $1000, $E240 sets the mapper up and $E260 acknowledges its IRQ
+        int[][] routines = new int[4][];
+        Arrays.fill(routines, new int[] { 0x60 }); // RTS
+        if (mapper == 2) {
+            routines[0] = new int[] {
+                    0x8D, 0x00, 0x80, // STA $8000
+                    0x60,             // RTS
+            };
+        } else if (mapper == 4) {
+            routines[0] = new int[] {
+                    0x48,             // PHA
+                    0xA9, 0x06,       // LDA #$06
+                    0x8D, 0x00, 0x80, // STA $8000
+                    0x68,             // PLA
+                    0x8D, 0x01, 0x80, // STA $8001
+                    0x60,             // RTS
+            };
+            routines[1] = new int[] {
+                    0x48,             // PHA
+                    0xA9, 0x02,       // LDA #$02
+                    0x8D, 0x00, 0x80, // STA $8000
+                    0x68,             // PLA
+                    0x8D, 0x01, 0x80, // STA $8001
+                    0x60,             // RTS
+            };
+            routines[2] = new int[] {
+                    0xA9, 0x01,       // LDA #$01
+                    0x8D, 0x00, 0xA0, // STA $A000
+                    0xA9, 0x40,       // LDA #$40
+                    0x8D, 0x00, 0xC0, // STA $C000
+                    0x8D, 0x01, 0xC0, // STA $C001
+                    0x8D, 0x01, 0xE0, // STA $E001
+                    0x60,             // RTS
+            };
+            routines[3] = new int[] {
+                    0x8D, 0x00, 0xE0, // STA $E000
+                    0x8D, 0x01, 0xE0, // STA $E001
+                    0x60,             // RTS
+            };
+        } else {
+            routines[0] = new int[] {
+                    0x8D, 0x00, 0x80, // STA $8000
+                    0x60,             // RTS
+            };
+            routines[1] = new int[] {
+                    0x8D, 0x00, 0xD0, // STA $D000
+                    0x4A,             // LSR A
+                    0x4A,             // LSR A
+                    0x4A,             // LSR A
+                    0x4A,             // LSR A
+                    0x8D, 0x01, 0xD0, // STA $D001
+                    0x60,             // RTS
+            };
+            routines[2] = new int[] {
+                    0xA9, 0x01,       // LDA #$01
+                    0x8D, 0x00, 0x90, // STA $9000
+                    0x60,             // RTS
+            };
+        }
+
+        // Each 8KB PRG bank is filled with its number, the routines follow the program in the last one
+        byte[][] prg = new byte[4][0x4000];
+        for (int i = 0; i < 8; i++) {
+            Arrays.fill(prg[i >> 1], (i & 1) * 0x2000, (i & 1) * 0x2000 + 0x2000, (byte) i);
+        }
+        for (int i = 0; i < routines.length; i++) {
+            for (int j = 0; j < routines[i].length; j++) {
+                prg[3][0x2200 + 0x20 * i + j] = (byte) routines[i][j];
+            }
+        }
+        byte[][] chr = new byte[0][];
+        if (mapper != 2) {
+            // Tiles differ from one 1KB bank to another
+            chr = new byte[2][0x2000];
+            for (int i = 0; i < 2; i++) {
+                for (int j = 0; j < 0x2000; j++) {
+                    chr[i][j] = (byte) (((i << 3) | (j >> 10)) * 0x11 + j);
+                }
+            }
+        }
+        return build(mapper, code, 0xE000, 0xE0BA, 0xE0D4, prg, chr);
+    }
+}
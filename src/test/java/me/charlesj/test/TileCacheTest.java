@@ -0,0 +1,87 @@
+package me.charlesj.test;
+
+import me.charlesj.Machine;
+import me.charlesj.input.StandardControllers;
+import me.charlesj.memory.Memory;
+import me.charlesj.nesloader.FileNesLoader;
+import me.charlesj.ppu.PPU;
+import me.charlesj.screen.HeadlessScreen;
+import me.charlesj.speaker.MuteSpeaker;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Decoded tiles must follow writes to CHR RAM.
+ */
+public class TileCacheTest {
+
+    @Test
+    public void testChrRamWrite() throws IOException {
+        File rom = TestGames.buildIdleGame();
+        try {
+            Machine machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+            machine.setRandomSeed(1);
+            Memory memory = machine.getCPU().getMemory();
+            HeadlessScreen screen = new HeadlessScreen();
+
+            writeVRam(memory, 0x3F00, 0x0F, 0x16);
+            writeVRam(memory, 0x0000, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF);
+            showBackground(machine, memory, screen);
+            Assert.assertEquals(0x16, screen.getColorBuffer()[PPU.SCREEN_WIDTH * 100 + 100]);
+
+            // Tile 0 becomes transparent
+            writeVRam(memory, 0x0000, 0, 0, 0, 0, 0, 0, 0, 0);
+            showBackground(machine, memory, screen);
+            Assert.assertEquals(0x0F, screen.getColorBuffer()[PPU.SCREEN_WIDTH * 100 + 100]);
+        } finally {
+            rom.delete();
+        }
+    }
+
+    @Test
+    public void testChrBankSwitch() throws IOException {
+        File rom = TestGames.buildBankGame(4);
+        try {
+            Machine machine = new Machine(new FileNesLoader(rom.getPath()), new StandardControllers());
+            machine.setRandomSeed(1);
+            Memory memory = machine.getCPU().getMemory();
+            HeadlessScreen screen = new HeadlessScreen();
+
+            writeVRam(memory, 0x3F00, 0x0F, 0x16, 0x27, 0x30);
+            // R0: 1KB banks 0 and 1 at $0000, tile 0 is transparent
+            memory.setByte(0x8000, 0);
+            memory.setByte(0x8001, 0);
+            showBackground(machine, memory, screen);
+            Assert.assertEquals(0x0F, screen.getColorBuffer()[PPU.SCREEN_WIDTH * 100 + 100]);
+
+            // Banks 14 and 15, rows of tile 0 are $0E in both planes
+            memory.setByte(0x8001, 14);
+            showBackground(machine, memory, screen);
+            Assert.assertEquals(0x30, screen.getColorBuffer()[PPU.SCREEN_WIDTH * 100 + 100]);
+            Assert.assertEquals(0x0F, screen.getColorBuffer()[PPU.SCREEN_WIDTH * 100 + 103]);
+        } finally {
+            rom.delete();
+        }
+    }
+
+    private static void writeVRam(Memory memory, int address, int... values) {
+        memory.setByte(0x2001, 0);
+        memory.setByte(0x2006, address >> 8);
+        memory.setByte(0x2006, address & 0xFF);
+        for (int value : values) {
+            memory.setByte(0x2007, value);
+        }
+    }
+
+    private static void showBackground(Machine machine, Memory memory, HeadlessScreen screen) {
+        memory.setByte(0x2006, 0);
+        memory.setByte(0x2006, 0);
+        memory.setByte(0x2001, 0x0A);
+        for (int i = 0; i < 2; i++) {
+            machine.runFrame(screen, new MuteSpeaker());
+        }
+    }
+}